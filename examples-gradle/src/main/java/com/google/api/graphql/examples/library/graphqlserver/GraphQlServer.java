@@ -56,9 +56,8 @@ public class GraphQlServer {
                     serve("/graphql").with(GraphQlServlet.class);
                   }
                 },
-                new DataLoaderModule(),
                 new SchemaProviderModule(), // Part of Rejoiner framework (Provides `@Schema
-                // GraphQLSchema`)
+                // GraphQLSchema` and `@Schema DataLoaderRegistry`)
                 new ClientModule(), // Installs all of the client modules
                 new SchemaModule() // Installs all of the schema modules
                 );
@@ -14,7 +14,9 @@
 
 package com.google.api.graphql.examples.library.graphqlserver;
 
+import com.google.api.graphql.execution.DeadlineSupport;
 import com.google.api.graphql.execution.GuavaListenableFutureSupport;
+import com.google.api.graphql.rejoiner.DataLoaderStatistics;
 import com.google.api.graphql.rejoiner.Schema;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
@@ -39,6 +41,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -54,7 +57,8 @@ final class GraphQlServlet extends HttpServlet {
 
   private static final Logger logger = Logger.getLogger(GraphQlServlet.class.getName());
   @Inject @Schema GraphQLSchema schema;
-  @Inject Provider<DataLoaderRegistry> registryProvider;
+  @Inject @Schema Provider<DataLoaderRegistry> registryProvider;
+  @Inject DataLoaderStatistics dataLoaderStatistics;
 
   @Override
   protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -64,6 +68,7 @@ final class GraphQlServlet extends HttpServlet {
         new ChainedInstrumentation(
             Arrays.asList(
                 GuavaListenableFutureSupport.listenableFutureInstrumentation(),
+                DeadlineSupport.deadlineInstrumentation(Duration.ofSeconds(10)),
                 new TracingInstrumentation()));
     GraphQL graphql = GraphQL.newGraphQL(schema).instrumentation(instrumentation).build();
 
@@ -82,13 +87,12 @@ final class GraphQlServlet extends HttpServlet {
             .operationName(operationName)
             .variables(variables)
             .dataLoaderRegistry(dataLoaderRegistry)
-            .context(dataLoaderRegistry)
             .build();
     ExecutionResult executionResult = graphql.execute(executionInput);
     resp.setContentType("application/json");
     resp.setStatus(HttpServletResponse.SC_OK);
     GSON.toJson(executionResult.toSpecification(), resp.getWriter());
-    logger.info("stats: " + dataLoaderRegistry.getStatistics());
+    logger.info("stats: " + dataLoaderStatistics.snapshot());
   }
 
   private static Map<String, Object> getVariables(Object variables) {
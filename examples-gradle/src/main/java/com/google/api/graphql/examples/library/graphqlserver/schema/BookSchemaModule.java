@@ -14,15 +14,16 @@
 
 package com.google.api.graphql.examples.library.graphqlserver.schema;
 
+import com.google.api.graphql.rejoiner.BatchLookup;
+import com.google.api.graphql.rejoiner.Loader;
 import com.google.api.graphql.rejoiner.Mutation;
 import com.google.api.graphql.rejoiner.Query;
 import com.google.api.graphql.rejoiner.RelayNode;
 import com.google.api.graphql.rejoiner.SchemaModule;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.example.library.book.v1.*;
-import graphql.schema.DataFetchingEnvironment;
 import net.javacrumbs.futureconverter.java8guava.FutureConverter;
-import org.dataloader.DataLoaderRegistry;
+import org.dataloader.DataLoader;
 
 /** A GraphQL {@link SchemaModule} backed by a gRPC service. */
 final class BookSchemaModule extends SchemaModule {
@@ -30,12 +31,8 @@ final class BookSchemaModule extends SchemaModule {
   @Query("getBook")
   @RelayNode
   ListenableFuture<Book> getBook(
-      GetBookRequest request, DataFetchingEnvironment dataFetchingEnvironment) {
-    return FutureConverter.toListenableFuture(
-        dataFetchingEnvironment
-            .<DataLoaderRegistry>getContext()
-            .<String, Book>getDataLoader("books")
-            .load(request.getId()));
+      GetBookRequest request, @Loader("books") DataLoader<String, Book> books) {
+    return FutureConverter.toListenableFuture(books.load(request.getId()));
   }
 
   @Query("listBooks")
@@ -44,6 +41,12 @@ final class BookSchemaModule extends SchemaModule {
     return client.listBooks(request);
   }
 
+  @BatchLookup(value = "books", requestKeyField = "ids", responseKeyField = "books.id")
+  ListenableFuture<ListBooksResponse> listBooksById(
+      ListBooksRequest request, BookServiceGrpc.BookServiceFutureStub client) {
+    return client.listBooks(request.toBuilder().setPageSize(request.getIdsCount()).build());
+  }
+
   @Mutation("createBook")
   ListenableFuture<Book> createBook(
       CreateBookRequest request, BookServiceGrpc.BookServiceFutureStub client) {
@@ -15,6 +15,7 @@
 package com.google.api.graphql.examples.library.graphqlserver.schema;
 
 import com.google.api.graphql.rejoiner.Arg;
+import com.google.api.graphql.rejoiner.Loader;
 import com.google.api.graphql.rejoiner.Mutation;
 import com.google.api.graphql.rejoiner.SchemaModification;
 import com.google.api.graphql.rejoiner.SchemaModule;
@@ -25,9 +26,8 @@ import com.google.example.library.book.v1.CreateBookRequest;
 import com.google.example.library.shelf.v1.GetShelfRequest;
 import com.google.example.library.shelf.v1.Shelf;
 import com.google.example.library.shelf.v1.ShelfServiceGrpc;
-import graphql.schema.DataFetchingEnvironment;
 import net.javacrumbs.futureconverter.java8guava.FutureConverter;
-import org.dataloader.DataLoaderRegistry;
+import org.dataloader.DataLoader;
 
 import java.util.List;
 
@@ -47,12 +47,9 @@ final class LibrarySchemaModule extends SchemaModule {
     return book;
   }
 
-  @SchemaModification(addField = "books", onType = Shelf.class)
-  ListenableFuture<List<Book>> shelfToBooks(Shelf shelf, DataFetchingEnvironment environment) {
-    return FutureConverter.toListenableFuture(
-        environment
-            .<DataLoaderRegistry>getContext()
-            .<String, Book>getDataLoader("books")
-            .loadMany(shelf.getBookIdsList()));
+  @SchemaModification(addField = "books", onType = Shelf.class, sourceFields = "book_ids")
+  ListenableFuture<List<Book>> shelfToBooks(
+      Shelf shelf, @Loader("books") DataLoader<String, Book> books) {
+    return FutureConverter.toListenableFuture(books.loadMany(shelf.getBookIdsList()));
   }
 }
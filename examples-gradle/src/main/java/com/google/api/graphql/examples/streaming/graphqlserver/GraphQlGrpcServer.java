@@ -14,6 +14,7 @@
 
 package com.google.api.graphql.examples.streaming.graphqlserver;
 
+import com.google.api.graphql.execution.DeadlineSupport;
 import com.google.api.graphql.execution.GuavaListenableFutureSupport;
 import com.google.api.graphql.grpc.QueryResponseToProto;
 import com.google.api.graphql.grpc.RejoinerStreamingContext;
@@ -53,7 +54,9 @@ public class GraphQlGrpcServer {
 
   private static final Instrumentation instrumentation =
       new ChainedInstrumentation(
-          java.util.Arrays.asList(GuavaListenableFutureSupport.listenableFutureInstrumentation()));
+          java.util.Arrays.asList(
+              GuavaListenableFutureSupport.listenableFutureInstrumentation(),
+              DeadlineSupport.deadlineInstrumentation()));
 
   private static final GraphQL GRAPHQL =
       GraphQL.newGraphQL(SCHEMA).instrumentation(instrumentation).build();
@@ -124,15 +127,15 @@ public class GraphQlGrpcServer {
       }
       responseObserver.onNext(graphQlResponse);
 
-      try {
-        logger.info("Waiting for streams");
-        context.awaitStreams();
-        logger.info("Done waiting for streams");
-      } catch (InterruptedException e) {
-        responseObserver.onError(e);
-      } finally {
-        responseObserver.onCompleted();
-      }
+      context
+          .whenStreamsComplete()
+          .whenComplete(
+              (ignored, error) -> {
+                if (error == null) {
+                  logger.info("Done waiting for streams");
+                  responseObserver.onCompleted();
+                }
+              });
     }
   }
 }
@@ -14,7 +14,9 @@
 
 package com.google.api.graphql.schema;
 
+import com.google.api.graphql.execution.DeadlineSupport;
 import com.google.api.graphql.execution.GuavaListenableFutureSupport;
+import com.google.api.graphql.grpc.DeferredResults;
 import com.google.api.graphql.rejoiner.Schema;
 import com.google.api.graphql.rejoiner.SchemaProviderModule;
 import com.google.api.graphql.schema.cloud.container.ContainerClientModule;
@@ -37,20 +39,20 @@ import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.execution.instrumentation.Instrumentation;
 import graphql.execution.instrumentation.tracing.TracingInstrumentation;
 import graphql.schema.GraphQLSchema;
-import org.dataloader.DataLoaderRegistry;
-
-import javax.inject.Inject;
-import javax.inject.Provider;
-import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.dataloader.DataLoaderRegistry;
 
 @WebServlet(urlPatterns = "graphql")
 public final class GraphQlServlet extends HttpServlet {
@@ -59,11 +61,13 @@ public final class GraphQlServlet extends HttpServlet {
   private static final Gson GSON = new GsonBuilder().serializeNulls().create();
   private static final TypeToken<Map<String, Object>> MAP_TYPE_TOKEN =
       new TypeToken<Map<String, Object>>() {};
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
   private static final Instrumentation INSTRUMENTATION =
       new ChainedInstrumentation(
           Arrays.asList(
               FuturesConverter.apiFutureInstrumentation(),
               GuavaListenableFutureSupport.listenableFutureInstrumentation(),
+              DeadlineSupport.deadlineInstrumentation(REQUEST_TIMEOUT),
               new TracingInstrumentation()));
 
   @Inject @Schema GraphQLSchema schema;
@@ -104,9 +108,17 @@ public final class GraphQlServlet extends HttpServlet {
             .dataLoaderRegistry(dataLoaderRegistry)
             .build();
     ExecutionResult executionResult = graphql.execute(executionInput);
-    resp.setContentType("application/json");
     resp.setStatus(HttpServletResponse.SC_OK);
-    GSON.toJson(executionResult.toSpecification(), resp.getWriter());
+    String accept = req.getHeader("Accept");
+    if (accept != null && accept.contains("multipart/mixed")) {
+      // Sends deferred fields as they complete.
+      resp.setContentType(MultipartResponseWriter.CONTENT_TYPE);
+      MultipartResponseWriter.write(executionResult, resp.getWriter()).join();
+    } else {
+      resp.setContentType("application/json");
+      GSON.toJson(
+          DeferredResults.merge(executionResult).join().toSpecification(), resp.getWriter());
+    }
     logger.info("stats: " + dataLoaderRegistry.getStatistics());
   }
 
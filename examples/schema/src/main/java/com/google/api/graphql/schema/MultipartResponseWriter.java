@@ -0,0 +1,147 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.schema;
+
+import com.google.api.graphql.grpc.DeferredResults;
+import com.google.api.graphql.grpc.StructWriter;
+import com.google.common.collect.ImmutableList;
+import graphql.DeferredExecutionResult;
+import graphql.ExecutionResult;
+import graphql.GraphQLError;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Writes an execution result as a chunked {@code multipart/mixed} HTTP response.
+ *
+ * <p>The initial result is written and flushed right away, followed by a part for each field
+ * deferred with {@code @defer} as it completes. Every part is a JSON object with {@code hasNext},
+ * patches also have the {@code path} of the object their {@code data} is merged into, see {@link
+ * DeferredResults}. The next deferred result is only requested once a part has been written.
+ */
+final class MultipartResponseWriter {
+
+  /** Content type of the response. */
+  public static final String CONTENT_TYPE = "multipart/mixed; boundary=\"-\"";
+
+  private static final String DELIMITER =
+      "\r\n---\r\nContent-Type: application/json; charset=utf-8\r\n\r\n";
+  private static final String CLOSE_DELIMITER = "\r\n-----\r\n";
+
+  private MultipartResponseWriter() {}
+
+  /** Writes the result, returning a future that completes once the last part is written. */
+  public static CompletableFuture<Void> write(ExecutionResult executionResult, Writer writer) {
+    Publisher<DeferredExecutionResult> deferredResults = DeferredResults.get(executionResult);
+    CompletableFuture<Void> written = new CompletableFuture<>();
+    try {
+      Map<String, Object> specification = executionResult.toSpecification();
+      Map<String, Object> initial = new LinkedHashMap<>();
+      if (specification.containsKey("data")) {
+        initial.put("data", specification.get("data"));
+      }
+      putErrors(initial, executionResult.getErrors());
+      Map<Object, Object> extensions =
+          DeferredResults.extensionsWithoutDeferredResults(executionResult);
+      if (extensions != null) {
+        initial.put("extensions", extensions);
+      }
+      initial.put("hasNext", deferredResults != null);
+      writePart(initial, writer);
+      if (deferredResults == null) {
+        close(writer);
+        written.complete(null);
+        return written;
+      }
+    } catch (IOException e) {
+      written.completeExceptionally(e);
+      return written;
+    }
+    deferredResults.subscribe(
+        new Subscriber<DeferredExecutionResult>() {
+          private Subscription subscription;
+
+          @Override
+          public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+          }
+
+          @Override
+          public void onNext(DeferredExecutionResult result) {
+            Map<String, Object> patch = new LinkedHashMap<>();
+            patch.put("data", DeferredResults.patchData(result));
+            patch.put("path", DeferredResults.patchPath(result));
+            putErrors(patch, result.getErrors());
+            patch.put("hasNext", true);
+            try {
+              writePart(patch, writer);
+            } catch (IOException e) {
+              subscription.cancel();
+              written.completeExceptionally(e);
+              return;
+            }
+            subscription.request(1);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            written.completeExceptionally(t);
+          }
+
+          @Override
+          public void onComplete() {
+            Map<String, Object> last = new LinkedHashMap<>();
+            last.put("hasNext", false);
+            try {
+              writePart(last, writer);
+              close(writer);
+              written.complete(null);
+            } catch (IOException e) {
+              written.completeExceptionally(e);
+            }
+          }
+        });
+    return written;
+  }
+
+  private static void putErrors(Map<String, Object> part, List<GraphQLError> errors) {
+    if (!errors.isEmpty()) {
+      part.put(
+          "errors",
+          errors.stream()
+              .map(GraphQLError::toSpecification)
+              .collect(ImmutableList.toImmutableList()));
+    }
+  }
+
+  private static void writePart(Map<String, Object> part, Writer writer) throws IOException {
+    writer.write(DELIMITER);
+    StructWriter.writeJson(part, writer);
+    writer.flush();
+  }
+
+  private static void close(Writer writer) throws IOException {
+    writer.write(CLOSE_DELIMITER);
+    writer.flush();
+  }
+}
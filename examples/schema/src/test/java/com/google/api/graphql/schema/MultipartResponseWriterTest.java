@@ -0,0 +1,82 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.schema;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import graphql.Directives;
+import graphql.GraphQL;
+import graphql.Scalars;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MultipartResponseWriter}. */
+@RunWith(JUnit4.class)
+public final class MultipartResponseWriterTest {
+
+  private static final String PART_HEADER =
+      "\r\n---\r\nContent-Type: application/json; charset=utf-8\r\n\r\n";
+
+  private static final GraphQL GRAPHQL =
+      GraphQL.newGraphQL(
+              GraphQLSchema.newSchema()
+                  .query(
+                      GraphQLObjectType.newObject()
+                          .name("Query")
+                          .field(
+                              GraphQLFieldDefinition.newFieldDefinition()
+                                  .name("hello")
+                                  .type(Scalars.GraphQLString)
+                                  .dataFetcher(env -> "world"))
+                          .field(
+                              GraphQLFieldDefinition.newFieldDefinition()
+                                  .name("slow")
+                                  .type(Scalars.GraphQLString)
+                                  .dataFetcher(env -> "later")))
+                  .additionalDirective(Directives.DeferDirective)
+                  .build())
+          .build();
+
+  @Test
+  public void writeShouldWriteSinglePartWithoutDeferredFields() {
+    StringWriter writer = new StringWriter();
+
+    MultipartResponseWriter.write(GRAPHQL.execute("{ hello }"), writer).join();
+
+    assertThat(writer.toString())
+        .isEqualTo(PART_HEADER + "{\"data\":{\"hello\":\"world\"},\"hasNext\":false}\r\n-----\r\n");
+  }
+
+  @Test
+  public void writeShouldWritePatchForDeferredField() {
+    StringWriter writer = new StringWriter();
+
+    MultipartResponseWriter.write(GRAPHQL.execute("{ hello slow @defer }"), writer).join();
+
+    assertThat(writer.toString())
+        .isEqualTo(
+            PART_HEADER
+                + "{\"data\":{\"hello\":\"world\",\"slow\":null},\"hasNext\":true}"
+                + PART_HEADER
+                + "{\"data\":{\"slow\":\"later\"},\"path\":[],\"hasNext\":true}"
+                + PART_HEADER
+                + "{\"hasNext\":false}\r\n-----\r\n");
+  }
+}
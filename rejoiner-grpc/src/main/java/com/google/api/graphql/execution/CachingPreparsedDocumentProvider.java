@@ -0,0 +1,45 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import java.util.function.Function;
+
+/**
+ * Caches parsed and validated documents by query, so repeated queries skip parsing and
+ * validation.
+ */
+public final class CachingPreparsedDocumentProvider implements PreparsedDocumentProvider {
+
+  private final Cache<String, PreparsedDocumentEntry> cache;
+
+  public CachingPreparsedDocumentProvider(long maximumSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+  }
+
+  @Override
+  public PreparsedDocumentEntry getDocument(
+      ExecutionInput executionInput,
+      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+    return cache
+        .asMap()
+        .computeIfAbsent(
+            executionInput.getQuery(), query -> parseAndValidateFunction.apply(executionInput));
+  }
+}
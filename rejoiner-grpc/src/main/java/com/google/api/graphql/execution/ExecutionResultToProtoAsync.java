@@ -16,9 +16,12 @@ package com.google.api.graphql.execution;
 
 import com.google.api.graphql.GraphqlError;
 import com.google.api.graphql.SourceLocation;
+import com.google.api.graphql.grpc.ProtoWireEncoder;
 import com.google.api.graphql.grpc.QueryResponseToProto;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Message;
 import graphql.ErrorType;
 import graphql.ExecutionResult;
@@ -51,6 +54,19 @@ public final class ExecutionResultToProtoAsync {
             QueryResponseToProto.buildMessage(message, executionResult.toSpecification()));
   }
 
+  /**
+   * Transforms an async ExecutionResult into the wire format of a proto Message.
+   *
+   * <p>Equivalent to serializing the result of {@link #toProtoMessage}, but the bytes are written
+   * directly without building the Message.
+   */
+  public static CompletableFuture<ByteString> toProtoBytes(
+      Descriptor descriptor, CompletableFuture<ExecutionResult> executionResultCompletableFuture) {
+    ProtoWireEncoder encoder = ProtoWireEncoder.forDescriptor(descriptor);
+    return executionResultCompletableFuture.thenApply(
+        executionResult -> encoder.encode(executionResult.toSpecification()));
+  }
+
   private static final ImmutableMap<ErrorType, com.google.api.graphql.ErrorType> ERROR_TYPE_MAP =
       ImmutableMap.of(
           ErrorType.DataFetchingException,
@@ -60,7 +76,8 @@ public final class ExecutionResultToProtoAsync {
           ErrorType.ValidationError,
           com.google.api.graphql.ErrorType.VALIDATION_ERROR);
 
-  private static ImmutableList<GraphqlError> errorsToProto(List<GraphQLError> errors) {
+  /** Transforms GraphQL errors into GraphqlError protos. */
+  public static ImmutableList<GraphqlError> errorsToProto(List<GraphQLError> errors) {
     return errors
         .stream()
         .map(
@@ -0,0 +1,142 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.collect.Iterables;
+import graphql.DeferredExecutionResult;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Reads the results of fields deferred with {@code @defer}.
+ *
+ * <p>graphql-java returns the initial result with the deferred fields set to null, and publishes
+ * each deferred field as it completes. A patch is sent as an object holding the field, to be merged
+ * into the object at the patch path.
+ */
+public final class DeferredResults {
+
+  private DeferredResults() {}
+
+  /** Returns the deferred results of an execution, or null if no field was deferred. */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public static Publisher<DeferredExecutionResult> get(ExecutionResult executionResult) {
+    Map<Object, Object> extensions = executionResult.getExtensions();
+    Object deferredResults = extensions == null ? null : extensions.get(GraphQL.DEFERRED_RESULTS);
+    return deferredResults instanceof Publisher
+        ? (Publisher<DeferredExecutionResult>) deferredResults
+        : null;
+  }
+
+  /** Returns the extensions of an execution without the deferred results, or null if empty. */
+  @Nullable
+  public static Map<Object, Object> extensionsWithoutDeferredResults(
+      ExecutionResult executionResult) {
+    Map<Object, Object> extensions = executionResult.getExtensions();
+    if (extensions == null || !extensions.containsKey(GraphQL.DEFERRED_RESULTS)) {
+      return extensions;
+    }
+    Map<Object, Object> remaining = new LinkedHashMap<>(extensions);
+    remaining.remove(GraphQL.DEFERRED_RESULTS);
+    return remaining.isEmpty() ? null : remaining;
+  }
+
+  /** Returns the data of a deferred result as an object holding the deferred field. */
+  public static Map<String, Object> patchData(DeferredExecutionResult result) {
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put(String.valueOf(Iterables.getLast(result.getPath())), result.getData());
+    return data;
+  }
+
+  /** Returns the path of the object that the patch data is merged into. */
+  public static List<Object> patchPath(DeferredExecutionResult result) {
+    List<Object> path = result.getPath();
+    return path.subList(0, path.size() - 1);
+  }
+
+  /**
+   * Waits for the deferred results and merges them into the initial result, for transports that
+   * can only send a single response.
+   */
+  public static CompletableFuture<ExecutionResult> merge(ExecutionResult executionResult) {
+    Publisher<DeferredExecutionResult> deferredResults = get(executionResult);
+    if (deferredResults == null) {
+      return CompletableFuture.completedFuture(executionResult);
+    }
+    CompletableFuture<ExecutionResult> merged = new CompletableFuture<>();
+    deferredResults.subscribe(
+        new Subscriber<DeferredExecutionResult>() {
+          private Object data = executionResult.getData();
+          private final List<GraphQLError> errors = new ArrayList<>(executionResult.getErrors());
+
+          @Override
+          public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+          }
+
+          @Override
+          public void onNext(DeferredExecutionResult result) {
+            data = withValue(data, result.getPath(), 0, result.getData());
+            errors.addAll(result.getErrors());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            merged.completeExceptionally(t);
+          }
+
+          @Override
+          public void onComplete() {
+            merged.complete(
+                new ExecutionResultImpl(
+                    data, errors, extensionsWithoutDeferredResults(executionResult)));
+          }
+        });
+    return merged;
+  }
+
+  /** Returns a copy of the data with the value set at the path, leaving the data unchanged. */
+  private static Object withValue(Object data, List<Object> path, int index, Object value) {
+    if (index == path.size()) {
+      return value;
+    }
+    Object segment = path.get(index);
+    if (data instanceof Map) {
+      Map<Object, Object> copy = new LinkedHashMap<>((Map<?, ?>) data);
+      copy.put(segment, withValue(copy.get(segment), path, index + 1, value));
+      return copy;
+    }
+    if (data instanceof List && segment instanceof Integer) {
+      List<Object> copy = new ArrayList<>((List<?>) data);
+      int item = (Integer) segment;
+      copy.set(item, withValue(copy.get(item), path, index + 1, value));
+      return copy;
+    }
+    // The parent of the deferred field resolved to null.
+    return data;
+  }
+}
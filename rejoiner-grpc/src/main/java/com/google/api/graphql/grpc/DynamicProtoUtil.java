@@ -14,20 +14,62 @@
 
 package com.google.api.graphql.grpc;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.protobuf.AnyProto;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
 import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.DescriptorValidationException;
 import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DurationProto;
 import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.EmptyProto;
+import com.google.protobuf.FieldMaskProto;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
+import com.google.protobuf.StructProto;
+import com.google.protobuf.TimestampProto;
+import com.google.protobuf.WrappersProto;
 import graphql.ExecutionResult;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
-/** Utility to encode and decode data dynamically using a Proto Descriptor. */
+/**
+ * Utility to encode and decode data dynamically using a Proto Descriptor.
+ *
+ * <p>Descriptors built from a FileDescriptorSet are cached by the set, so a set is only validated
+ * and built the first time it is seen. A set that is passed again, such as the set of a persisted
+ * operation, is found by its memoized hash code without being serialized.
+ */
 public final class DynamicProtoUtil {
 
+  private static final int MAX_CACHED_DESCRIPTOR_SETS = 100;
+
+  /** Files that may be referenced without being included in the FileDescriptorSet. */
+  private static final ImmutableMap<String, FileDescriptor> WELL_KNOWN_FILES =
+      ImmutableMap.<String, FileDescriptor>builder()
+          .put(AnyProto.getDescriptor().getName(), AnyProto.getDescriptor())
+          .put(DurationProto.getDescriptor().getName(), DurationProto.getDescriptor())
+          .put(EmptyProto.getDescriptor().getName(), EmptyProto.getDescriptor())
+          .put(FieldMaskProto.getDescriptor().getName(), FieldMaskProto.getDescriptor())
+          .put(StructProto.getDescriptor().getName(), StructProto.getDescriptor())
+          .put(TimestampProto.getDescriptor().getName(), TimestampProto.getDescriptor())
+          .put(WrappersProto.getDescriptor().getName(), WrappersProto.getDescriptor())
+          .put(DescriptorProtos.getDescriptor().getName(), DescriptorProtos.getDescriptor())
+          .build();
+
+  private static final Cache<FileDescriptorSet, CompiledDescriptorSet> DESCRIPTOR_SETS =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_DESCRIPTOR_SETS).build();
+
   private DynamicProtoUtil() {}
 
   /**
@@ -38,21 +80,8 @@ public final class DynamicProtoUtil {
    */
   public static ByteString encodeResponse(
       String operationName, FileDescriptorSet fileDescriptorSet, ExecutionResult executionResult) {
-    try {
-      // TODO: Support multiple FileDescriptors in FileDescriptorSet
-      FileDescriptor fileDescriptor =
-          FileDescriptor.buildFrom(fileDescriptorSet.getFileList().get(0), new FileDescriptor[] {});
-
-      Descriptor messageType = fileDescriptor.findMessageTypeByName(operationName + "Response");
-
-      Message message = DynamicMessage.parseFrom(messageType, ByteString.EMPTY);
-      Message responseData = QueryResponseToProto.buildMessage(message, executionResult.getData());
-
-      return responseData.toByteString();
-    } catch (DescriptorValidationException | InvalidProtocolBufferException e) {
-      e.printStackTrace();
-      throw new RuntimeException(e);
-    }
+    Descriptor messageType = getResponseDescriptor(operationName, fileDescriptorSet);
+    return ProtoWireEncoder.forDescriptor(messageType).encode(executionResult.getData());
   }
 
   /**
@@ -64,16 +93,100 @@ public final class DynamicProtoUtil {
    */
   public static Map<String, Object> decodeVariables(
       String operationName, FileDescriptorSet fileDescriptorSet, ByteString encodedRequest) {
+    Descriptor messageType = getRequestDescriptor(operationName, fileDescriptorSet);
     try {
-      // TODO: Support multiple FileDescriptors in FileDescriptorSet
-      FileDescriptor fileDescriptor =
-          FileDescriptor.buildFrom(fileDescriptorSet.getFileList().get(0), new FileDescriptor[] {});
-      Descriptor messageType = fileDescriptor.findMessageTypeByName(operationName + "Request");
       Message message = DynamicMessage.parseFrom(messageType, encodedRequest);
       return ProtoToMap.messageToMap(message);
-    } catch (DescriptorValidationException | InvalidProtocolBufferException e) {
-      e.printStackTrace();
+    } catch (InvalidProtocolBufferException e) {
       throw new RuntimeException(e);
     }
   }
+
+  /** Returns the "{operationName}Request" message type of the FileDescriptorSet. */
+  public static Descriptor getRequestDescriptor(
+      String operationName, FileDescriptorSet fileDescriptorSet) {
+    return compile(fileDescriptorSet).findMessageType(operationName + "Request");
+  }
+
+  /** Returns the "{operationName}Response" message type of the FileDescriptorSet. */
+  public static Descriptor getResponseDescriptor(
+      String operationName, FileDescriptorSet fileDescriptorSet) {
+    return compile(fileDescriptorSet).findMessageType(operationName + "Response");
+  }
+
+  private static CompiledDescriptorSet compile(FileDescriptorSet fileDescriptorSet) {
+    try {
+      return DESCRIPTOR_SETS.get(
+          fileDescriptorSet, () -> new CompiledDescriptorSet(fileDescriptorSet));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /** The files of a FileDescriptorSet built with their dependencies resolved. */
+  private static final class CompiledDescriptorSet {
+    private final ImmutableMap<String, FileDescriptor> files;
+    private final ConcurrentMap<String, Descriptor> messageTypes = new ConcurrentHashMap<>();
+
+    CompiledDescriptorSet(FileDescriptorSet fileDescriptorSet)
+        throws DescriptorValidationException {
+      Map<String, FileDescriptorProto> protos = new LinkedHashMap<>();
+      for (FileDescriptorProto proto : fileDescriptorSet.getFileList()) {
+        protos.put(proto.getName(), proto);
+      }
+      Map<String, FileDescriptor> built = new LinkedHashMap<>();
+      for (String name : protos.keySet()) {
+        build(name, protos, built);
+      }
+      this.files = ImmutableMap.copyOf(built);
+    }
+
+    private static FileDescriptor build(
+        String name, Map<String, FileDescriptorProto> protos, Map<String, FileDescriptor> built)
+        throws DescriptorValidationException {
+      if (built.containsKey(name)) {
+        FileDescriptor file = built.get(name);
+        if (file == null) {
+          throw new IllegalArgumentException("Cyclic dependency on " + name);
+        }
+        return file;
+      }
+      FileDescriptorProto proto = protos.get(name);
+      if (proto == null) {
+        FileDescriptor file = WELL_KNOWN_FILES.get(name);
+        if (file == null) {
+          throw new IllegalArgumentException("FileDescriptorSet is missing dependency " + name);
+        }
+        return file;
+      }
+      // Marks the file as being built, so dependency cycles fail instead of recursing.
+      built.put(name, null);
+      FileDescriptor[] dependencies = new FileDescriptor[proto.getDependencyCount()];
+      for (int i = 0; i < dependencies.length; i++) {
+        dependencies[i] = build(proto.getDependency(i), protos, built);
+      }
+      FileDescriptor file = FileDescriptor.buildFrom(proto, dependencies);
+      built.put(name, file);
+      return file;
+    }
+
+    Descriptor findMessageType(String name) {
+      Descriptor messageType = messageTypes.computeIfAbsent(name, this::lookUpMessageType);
+      if (messageType == null) {
+        throw new IllegalArgumentException("FileDescriptorSet does not contain message " + name);
+      }
+      return messageType;
+    }
+
+    private Descriptor lookUpMessageType(String name) {
+      for (FileDescriptor file : files.values()) {
+        Descriptor messageType = file.findMessageTypeByName(name);
+        if (messageType != null) {
+          return messageType;
+        }
+      }
+      return null;
+    }
+  }
 }
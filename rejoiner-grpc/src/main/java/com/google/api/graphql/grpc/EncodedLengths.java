@@ -0,0 +1,67 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Lengths of length-delimited values in the order they are encountered while encoding.
+ *
+ * <p>Encoders compute all lengths in a sizing pass before writing. The sizing pass reserves a
+ * slot before descending into a value, so the writing pass reads the slots back in the same order.
+ * A slot can also hold the value converted for the sizing pass, so it isn't converted again.
+ */
+final class EncodedLengths {
+  private int[] lengths = new int[8];
+  @Nullable private Object[] values;
+  private int count;
+  private int position;
+
+  int reserve() {
+    if (count == lengths.length) {
+      lengths = Arrays.copyOf(lengths, count * 2);
+    }
+    return count++;
+  }
+
+  void set(int slot, int length) {
+    lengths[slot] = length;
+  }
+
+  /** Sets the length of the slot and the value it was computed for. */
+  void set(int slot, int length, Object value) {
+    lengths[slot] = length;
+    if (values == null) {
+      values = new Object[lengths.length];
+    } else if (values.length < lengths.length) {
+      values = Arrays.copyOf(values, lengths.length);
+    }
+    values[slot] = value;
+  }
+
+  int next() {
+    return lengths[position++];
+  }
+
+  /** Returns the value of the slot last read by {@link #next}. */
+  Object value() {
+    return values[position - 1];
+  }
+
+  void rewind() {
+    position = 0;
+  }
+}
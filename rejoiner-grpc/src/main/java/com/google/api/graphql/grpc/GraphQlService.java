@@ -0,0 +1,379 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.api.graphql.GraphqlRequest;
+import com.google.api.graphql.GraphqlResponse;
+import com.google.api.graphql.execution.CachingPreparsedDocumentProvider;
+import graphql.DeferredExecutionResult;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.schema.GraphQLSchema;
+import io.grpc.BindableService;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Serves a GraphQL schema over gRPC as the {@code google.api.graphql.GraphqlService}.
+ *
+ * <p>A single {@link GraphQL} instance is shared by all calls, and parsed and validated documents
+ * are cached by query. Variables are read from the request's Struct, or decoded from
+ * encoded_variables when the request has a descriptor set, in which case data is returned as the
+ * encoded "{operation_name}Response" message. Responses are written to the wire directly, without
+ * building a GraphqlResponse.
+ *
+ * <p>The streaming method passes a {@link RejoinerStreamingContext} as the execution context, so
+ * fields can stream results with a {@link GraphQlStreamObserver} producing GraphqlResponses. The
+ * call completes without blocking once the last stream completes, streams are paused while the
+ * client isn't ready, and cancelling the call cancels the streams. Subscriptions are executed by
+ * graphql-java and each event is sent as a response, requested as the client is ready for it.
+ *
+ * <p>Fields deferred with {@code @defer} are sent as patches after the initial response by the
+ * streaming method, and merged into the response by the unary method.
+ */
+public final class GraphQlService implements BindableService {
+
+  public static final String SERVICE_NAME = "google.api.graphql.GraphqlService";
+
+  /** Executes a query or mutation. */
+  public static final MethodDescriptor<GraphqlRequest, GraphqlResponse> EXECUTE_METHOD =
+      MethodDescriptor.<GraphqlRequest, GraphqlResponse>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "Execute"))
+          .setRequestMarshaller(ProtoUtils.marshaller(GraphqlRequest.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(GraphqlResponse.getDefaultInstance()))
+          .build();
+
+  /** Executes a request, followed by a response for each streamed result. */
+  public static final MethodDescriptor<GraphqlRequest, GraphqlResponse>
+      EXECUTE_STREAMING_METHOD =
+          EXECUTE_METHOD
+              .toBuilder()
+              .setType(MethodDescriptor.MethodType.SERVER_STREAMING)
+              .setFullMethodName(
+                  MethodDescriptor.generateFullMethodName(SERVICE_NAME, "ExecuteStreaming"))
+              .build();
+
+  private static final long DEFAULT_PREPARSED_DOCUMENT_CACHE_SIZE = 1000;
+
+  /**
+   * Writes responses prepared by the service. Responses parsed with the server's method
+   * descriptors, such as by in-process clients, are GraphqlResponses wrapped as they are.
+   */
+  private static final MethodDescriptor.Marshaller<PreparedEncoding> RESPONSE_MARSHALLER =
+      new MethodDescriptor.Marshaller<PreparedEncoding>() {
+        @Override
+        public InputStream stream(PreparedEncoding value) {
+          return new PreparedEncodingInputStream(value);
+        }
+
+        @Override
+        public PreparedEncoding parse(InputStream stream) {
+          return GraphqlResponseEncoding.of(EXECUTE_METHOD.getResponseMarshaller().parse(stream));
+        }
+      };
+
+  private final GraphQL graphQL;
+
+  private GraphQlService(GraphQL graphQL) {
+    this.graphQL = graphQL;
+  }
+
+  /** Returns a service for the schema, without instrumentation. */
+  public static GraphQlService create(GraphQLSchema schema) {
+    return create(schema, new SimpleInstrumentation());
+  }
+
+  /**
+   * Returns a service for the schema.
+   *
+   * <p>Schemas with ListenableFuture fetchers should pass the instrumentation from {@code
+   * GuavaListenableFutureSupport}. The instrumentation from {@code DeadlineSupport} applies the
+   * deadline and cancellation of each call to the backend calls made while executing it.
+   */
+  public static GraphQlService create(GraphQLSchema schema, Instrumentation instrumentation) {
+    return create(schema, instrumentation, DEFAULT_PREPARSED_DOCUMENT_CACHE_SIZE);
+  }
+
+  /** Returns a service for the schema, caching at most the given number of documents. */
+  public static GraphQlService create(
+      GraphQLSchema schema, Instrumentation instrumentation, long preparsedDocumentCacheSize) {
+    return new GraphQlService(
+        GraphQL.newGraphQL(schema)
+            .instrumentation(instrumentation)
+            .preparsedDocumentProvider(
+                new CachingPreparsedDocumentProvider(preparsedDocumentCacheSize))
+            .build());
+  }
+
+  @Override
+  public ServerServiceDefinition bindService() {
+    return ServerServiceDefinition.builder(SERVICE_NAME)
+        .addMethod(serverMethod(EXECUTE_METHOD), ServerCalls.asyncUnaryCall(this::execute))
+        .addMethod(
+            serverMethod(EXECUTE_STREAMING_METHOD),
+            ServerCalls.asyncServerStreamingCall(this::executeStreaming))
+        .build();
+  }
+
+  private static MethodDescriptor<GraphqlRequest, PreparedEncoding> serverMethod(
+      MethodDescriptor<GraphqlRequest, GraphqlResponse> method) {
+    return method.toBuilder(method.getRequestMarshaller(), RESPONSE_MARSHALLER).build();
+  }
+
+  private void execute(GraphqlRequest request, StreamObserver<PreparedEncoding> responseObserver) {
+    ResponseStream responses = new ResponseStream(responseObserver);
+    ExecutionInput.Builder executionInput;
+    ProtoWireEncoder dataEncoder;
+    try {
+      executionInput = createExecutionInput(request);
+      dataEncoder = getDataEncoder(request);
+    } catch (RuntimeException e) {
+      responses.onError(invalidRequest(e));
+      return;
+    }
+    graphQL
+        .executeAsync(executionInput)
+        .thenCompose(DeferredResults::merge)
+        .whenComplete(
+            (executionResult, error) -> {
+              if (error != null) {
+                responses.onError(Status.fromThrowable(error).asRuntimeException());
+                return;
+              }
+              responses.send(GraphqlResponseEncoding.create(executionResult, dataEncoder));
+              responses.onCompleted();
+            });
+  }
+
+  @SuppressWarnings("unchecked")
+  private void executeStreaming(
+      GraphqlRequest request, StreamObserver<PreparedEncoding> responseObserver) {
+    ResponseStream responses = new ResponseStream(responseObserver);
+    ExecutionInput.Builder executionInput;
+    ProtoWireEncoder dataEncoder;
+    try {
+      executionInput = createExecutionInput(request);
+      dataEncoder = getDataEncoder(request);
+    } catch (RuntimeException e) {
+      responses.onError(invalidRequest(e));
+      return;
+    }
+    RejoinerStreamingContext<GraphqlResponse> context = RejoinerStreamingContext.create(responses);
+    context.bind((ServerCallStreamObserver<PreparedEncoding>) responseObserver);
+    graphQL
+        .executeAsync(executionInput.context(context))
+        .whenComplete(
+            (executionResult, error) -> {
+              if (error != null) {
+                responses.onError(Status.fromThrowable(error).asRuntimeException());
+                return;
+              }
+              Object data = executionResult.getData();
+              if (data instanceof Publisher) {
+                @SuppressWarnings("unchecked")
+                Publisher<ExecutionResult> results = (Publisher<ExecutionResult>) data;
+                results.subscribe(
+                    new PublisherStream<>(
+                        responses,
+                        context,
+                        result -> GraphqlResponseEncoding.create(result, dataEncoder),
+                        responses::onCompleted));
+                return;
+              }
+              Publisher<DeferredExecutionResult> deferredResults =
+                  DeferredResults.get(executionResult);
+              responses.send(GraphqlResponseEncoding.create(executionResult, dataEncoder));
+              if (deferredResults == null) {
+                completeAfterStreams(responses, context);
+                return;
+              }
+              deferredResults.subscribe(
+                  new PublisherStream<>(
+                      responses,
+                      context,
+                      GraphqlResponseEncoding::patch,
+                      () -> completeAfterStreams(responses, context)));
+            });
+  }
+
+  private static void completeAfterStreams(
+      ResponseStream responses, RejoinerStreamingContext<?> context) {
+    context
+        .whenStreamsComplete()
+        .whenComplete(
+            (ignored, streamError) -> {
+              if (streamError == null) {
+                responses.onCompleted();
+              }
+            });
+  }
+
+  private static ExecutionInput.Builder createExecutionInput(GraphqlRequest request) {
+    Map<String, Object> variables =
+        request.hasDescriptorSet()
+            ? DynamicProtoUtil.decodeVariables(
+                request.getOperationName(),
+                request.getDescriptorSet(),
+                request.getEncodedVariables())
+            : StructUtil.asMap(request.getVariables());
+    return ExecutionInput.newExecutionInput()
+        .query(request.getQuery())
+        .operationName(request.getOperationName().isEmpty() ? null : request.getOperationName())
+        .variables(variables);
+  }
+
+  private static StatusRuntimeException invalidRequest(RuntimeException e) {
+    return Status.INVALID_ARGUMENT
+        .withDescription(e.getMessage())
+        .withCause(e)
+        .asRuntimeException();
+  }
+
+  @Nullable
+  private static ProtoWireEncoder getDataEncoder(GraphqlRequest request) {
+    return request.hasDescriptorSet()
+        ? ProtoWireEncoder.forDescriptor(
+            DynamicProtoUtil.getResponseDescriptor(
+                request.getOperationName(), request.getDescriptorSet()))
+        : null;
+  }
+
+  /**
+   * Sends each published result, such as subscription events or deferred fields, requesting the
+   * next one while the call is ready.
+   */
+  private static final class PublisherStream<T> implements Subscriber<T> {
+    private final ResponseStream responses;
+    private final RejoinerStreamingContext<?> context;
+    private final Function<T, PreparedEncoding> encoding;
+    private final Runnable onComplete;
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final Runnable onReady = this::resume;
+    private volatile Subscription subscription;
+
+    PublisherStream(
+        ResponseStream responses,
+        RejoinerStreamingContext<?> context,
+        Function<T, PreparedEncoding> encoding,
+        Runnable onComplete) {
+      this.responses = responses;
+      this.context = context;
+      this.encoding = encoding;
+      this.onComplete = onComplete;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      context.addCancellationListener(subscription::cancel);
+      context.addOnReadyListener(onReady);
+      requestNext();
+    }
+
+    @Override
+    public void onNext(T result) {
+      responses.send(encoding.apply(result));
+      requestNext();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      context.removeOnReadyListener(onReady);
+      responses.onError(Status.fromThrowable(t).asRuntimeException());
+    }
+
+    @Override
+    public void onComplete() {
+      context.removeOnReadyListener(onReady);
+      onComplete.run();
+    }
+
+    private void requestNext() {
+      if (context.isReady()) {
+        subscription.request(1);
+        return;
+      }
+      paused.set(true);
+      // The call may have become ready before the pause was visible to resume().
+      if (context.isReady()) {
+        resume();
+      }
+    }
+
+    private void resume() {
+      if (paused.compareAndSet(true, false)) {
+        subscription.request(1);
+      }
+    }
+  }
+
+  /**
+   * Serializes the responses of a call, which are sent from the execution and from streaming
+   * fields on different threads, and drops them once the call is closed.
+   */
+  private static final class ResponseStream implements StreamObserver<GraphqlResponse> {
+    private final StreamObserver<PreparedEncoding> responseObserver;
+    private boolean closed;
+
+    ResponseStream(StreamObserver<PreparedEncoding> responseObserver) {
+      this.responseObserver = responseObserver;
+    }
+
+    synchronized void send(PreparedEncoding response) {
+      if (!closed) {
+        responseObserver.onNext(response);
+      }
+    }
+
+    @Override
+    public void onNext(GraphqlResponse response) {
+      send(GraphqlResponseEncoding.of(response));
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      if (!closed) {
+        closed = true;
+        responseObserver.onError(t);
+      }
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      if (!closed) {
+        closed = true;
+        responseObserver.onCompleted();
+      }
+    }
+  }
+}
@@ -15,32 +15,47 @@
 package com.google.api.graphql.grpc;
 
 import com.google.common.collect.ImmutableList;
-import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.ListValue;
 import com.google.protobuf.Message;
 import com.google.protobuf.Value;
-import com.google.protobuf.util.JsonFormat;
 import graphql.schema.DataFetchingEnvironment;
-import io.grpc.stub.StreamObserver;
-import java.util.List;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
+/**
+ * Streams the responses of an upstream gRPC call as GraphQL responses.
+ *
+ * <p>When used as the response observer of a streaming call, cancelling the GraphQL call also
+ * cancels the upstream call, and upstream messages are requested one at a time while the GraphQL
+ * response stream is ready, so a fast upstream can't fill the response buffer.
+ *
+ * <p>Responses of high-rate streams can be coalesced into fewer responses with a {@link
+ * StreamCoalescer}.
+ */
 public abstract class GraphQlStreamObserver<T extends Message, R extends Message>
-    implements StreamObserver<T> {
+    implements ClientResponseObserver<Object, T> {
 
   private final RejoinerStreamingContext rejoinerStreamingContext;
-  private final DataFetchingEnvironment dataFetchingEnvironment;
+  private final ImmutableList<Value> pathPrefix;
   private final AtomicInteger pathIndex = new AtomicInteger();
+  private final AtomicBoolean paused = new AtomicBoolean();
+  private final Runnable onReady = this::resume;
+  private final Runnable cancelUpstream = this::cancel;
+  @Nullable private final StreamCoalescer.Buffer<R> coalescingBuffer;
+  private ClientCallStreamObserver<Object> requestStream;
 
   public GraphQlStreamObserver(DataFetchingEnvironment dataFetchingEnvironment) {
-    this.dataFetchingEnvironment = dataFetchingEnvironment;
-    rejoinerStreamingContext = dataFetchingEnvironment.getContext();
-    rejoinerStreamingContext.startStream();
+    this(dataFetchingEnvironment, null);
   }
 
-  @Override
-  public void onNext(T value) {
-    List<Value> path =
+  /** Coalesces the responses with the given coalescer, unless it's null. */
+  @SuppressWarnings("unchecked")
+  public GraphQlStreamObserver(
+      DataFetchingEnvironment dataFetchingEnvironment, @Nullable StreamCoalescer<R> coalescer) {
+    pathPrefix =
         dataFetchingEnvironment
             .getExecutionStepInfo()
             .getPath()
@@ -50,38 +65,93 @@ public abstract class GraphQlStreamObserver<T extends Message, R extends Message
                 p ->
                     p instanceof Number
                         ? Value.newBuilder()
-                            .setNumberValue(Double.parseDouble(p.toString()))
+                            .setNumberValue(((Number) p).doubleValue())
                             .build()
                         : Value.newBuilder().setStringValue(p.toString()).build())
             .collect(ImmutableList.toImmutableList());
+    rejoinerStreamingContext = dataFetchingEnvironment.getContext();
+    coalescingBuffer =
+        coalescer == null
+            ? null
+            : coalescer.newBuffer(rejoinerStreamingContext.responseStreamObserver());
+    rejoinerStreamingContext.startStream();
+  }
 
-    ListValue pathListVale =
+  @Override
+  public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+    this.requestStream = requestStream;
+    requestStream.disableAutoInboundFlowControl();
+    rejoinerStreamingContext.addOnReadyListener(onReady);
+    rejoinerStreamingContext.addCancellationListener(cancelUpstream);
+  }
+
+  @Override
+  public void onNext(T value) {
+    ListValue path =
         ListValue.newBuilder()
-            .addAllValues(path)
+            .addAllValues(pathPrefix)
             .addValues(Value.newBuilder().setNumberValue(pathIndex.incrementAndGet()))
             .build();
+    R response = getData(value, path);
+    if (coalescingBuffer == null) {
+      rejoinerStreamingContext.responseStreamObserver().onNext(response);
+    } else {
+      coalescingBuffer.add(response);
+    }
+    if (requestStream != null) {
+      requestNext();
+    }
+  }
 
-    R graphQlResponse = getData(value, pathListVale);
+  /** Requests the next upstream message, or pauses until the response stream is ready. */
+  private void requestNext() {
+    if (rejoinerStreamingContext.isReady()) {
+      requestStream.request(1);
+      return;
+    }
+    paused.set(true);
+    // The response stream may have become ready before the pause was visible to resume().
+    if (rejoinerStreamingContext.isReady()) {
+      resume();
+    }
+  }
 
-    rejoinerStreamingContext.responseStreamObserver().onNext(graphQlResponse);
+  private void cancel() {
+    requestStream.cancel("GraphQL call was cancelled", null);
+  }
 
-    try {
-      System.out.println(
-          "Streaming response as Json: " + JsonFormat.printer().print(graphQlResponse));
-    } catch (InvalidProtocolBufferException e) {
-      throw new RuntimeException(e);
+  private void resume() {
+    if (paused.compareAndSet(true, false)) {
+      requestStream.request(1);
     }
   }
 
   protected abstract R getData(T value, ListValue path);
 
+  /**
+   * Fails the GraphQL call with the upstream error, and cancels the other streams of the call,
+   * which can no longer be sent.
+   */
   @Override
   public void onError(Throwable t) {
+    rejoinerStreamingContext.removeOnReadyListener(onReady);
+    rejoinerStreamingContext.removeCancellationListener(cancelUpstream);
+    flush();
     rejoinerStreamingContext.responseStreamObserver().onError(t);
+    rejoinerStreamingContext.cancel();
   }
 
   @Override
   public void onCompleted() {
+    rejoinerStreamingContext.removeOnReadyListener(onReady);
+    rejoinerStreamingContext.removeCancellationListener(cancelUpstream);
+    flush();
     rejoinerStreamingContext.completeStream();
   }
+
+  private void flush() {
+    if (coalescingBuffer != null) {
+      coalescingBuffer.flush();
+    }
+  }
 }
@@ -0,0 +1,140 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.api.graphql.GraphqlError;
+import com.google.api.graphql.GraphqlResponse;
+import com.google.api.graphql.execution.ExecutionResultToProtoAsync;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Value;
+import com.google.protobuf.WireFormat;
+import graphql.DeferredExecutionResult;
+import graphql.ExecutionResult;
+import java.io.IOException;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes an ExecutionResult as a {@link GraphqlResponse} without building the response.
+ *
+ * <p>The data is written by {@link StructWriter}, or by a {@link ProtoWireEncoder} when the client
+ * asked for binary data.
+ */
+final class GraphqlResponseEncoding extends PreparedEncoding {
+
+  @Nullable private final PreparedEncoding data;
+  private final int dataFieldNumber;
+  private final ImmutableList<GraphqlError> errors;
+  @Nullable private final ListValue path;
+  private final int size;
+
+  private GraphqlResponseEncoding(
+      @Nullable PreparedEncoding data,
+      int dataFieldNumber,
+      ImmutableList<GraphqlError> errors,
+      @Nullable ListValue path) {
+    this.data = data;
+    this.dataFieldNumber = dataFieldNumber;
+    this.errors = errors;
+    this.path = path;
+    int size = 0;
+    if (data != null) {
+      size +=
+          CodedOutputStream.computeTagSize(dataFieldNumber)
+              + CodedOutputStream.computeUInt32SizeNoTag(data.size())
+              + data.size();
+    }
+    for (GraphqlError error : errors) {
+      size += CodedOutputStream.computeMessageSize(GraphqlResponse.ERRORS_FIELD_NUMBER, error);
+    }
+    if (path != null) {
+      size += CodedOutputStream.computeMessageSize(GraphqlResponse.PATH_FIELD_NUMBER, path);
+    }
+    this.size = size;
+  }
+
+  /** Encodes the result, with binary data if a data encoder is given. */
+  static PreparedEncoding create(
+      ExecutionResult executionResult, @Nullable ProtoWireEncoder dataEncoder) {
+    Map<String, Object> data = executionResult.getData();
+    ImmutableList<GraphqlError> errors =
+        ExecutionResultToProtoAsync.errorsToProto(executionResult.getErrors());
+    if (data == null) {
+      return new GraphqlResponseEncoding(null, 0, errors, null);
+    }
+    return dataEncoder == null
+        ? new GraphqlResponseEncoding(
+            StructWriter.prepare(data), GraphqlResponse.DATA_FIELD_NUMBER, errors, null)
+        : new GraphqlResponseEncoding(
+            dataEncoder.prepare(data), GraphqlResponse.ENCODED_DATA_FIELD_NUMBER, errors, null);
+  }
+
+  /**
+   * Encodes a deferred field as a patch, with the path of the object that the data is merged
+   * into. Patches always have Struct data, since they don't match the operation's response proto.
+   */
+  static PreparedEncoding patch(DeferredExecutionResult result) {
+    ListValue.Builder path = ListValue.newBuilder();
+    for (Object segment : DeferredResults.patchPath(result)) {
+      path.addValues(
+          segment instanceof Number
+              ? Value.newBuilder().setNumberValue(((Number) segment).doubleValue())
+              : Value.newBuilder().setStringValue(segment.toString()));
+    }
+    return new GraphqlResponseEncoding(
+        StructWriter.prepare(DeferredResults.patchData(result)),
+        GraphqlResponse.DATA_FIELD_NUMBER,
+        ExecutionResultToProtoAsync.errorsToProto(result.getErrors()),
+        path.build());
+  }
+
+  /** Wraps an already built message. */
+  static PreparedEncoding of(MessageLite message) {
+    return new PreparedEncoding() {
+      @Override
+      int size() {
+        return message.getSerializedSize();
+      }
+
+      @Override
+      void writeTo(CodedOutputStream output) throws IOException {
+        message.writeTo(output);
+      }
+    };
+  }
+
+  @Override
+  int size() {
+    return size;
+  }
+
+  @Override
+  void writeTo(CodedOutputStream output) throws IOException {
+    if (data != null) {
+      output.writeTag(dataFieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      output.writeUInt32NoTag(data.size());
+      data.writeTo(output);
+    }
+    for (GraphqlError error : errors) {
+      output.writeMessage(GraphqlResponse.ERRORS_FIELD_NUMBER, error);
+    }
+    if (path != null) {
+      output.writeMessage(GraphqlResponse.PATH_FIELD_NUMBER, path);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.protobuf.CodedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/** A value whose serialized size is known, ready to be written. */
+abstract class PreparedEncoding {
+
+  /** Returns the size of the serialized value in bytes. */
+  abstract int size();
+
+  abstract void writeTo(CodedOutputStream output) throws IOException;
+
+  void writeTo(OutputStream output) throws IOException {
+    CodedOutputStream codedOutput =
+        CodedOutputStream.newInstance(
+            output, Math.min(size(), CodedOutputStream.DEFAULT_BUFFER_SIZE));
+    writeTo(codedOutput);
+    codedOutput.flush();
+  }
+
+  void writeTo(byte[] buffer, int offset) {
+    CodedOutputStream output = CodedOutputStream.newInstance(buffer, offset, size());
+    try {
+      writeTo(output);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    output.checkNoSpaceLeft();
+  }
+
+  byte[] toByteArray() {
+    byte[] bytes = new byte[size()];
+    writeTo(bytes, 0);
+    return bytes;
+  }
+}
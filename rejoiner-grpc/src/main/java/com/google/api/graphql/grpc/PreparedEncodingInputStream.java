@@ -0,0 +1,90 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Streams a {@link PreparedEncoding}, encoding on demand.
+ *
+ * <p>gRPC drains the stream, which writes the encoding directly into the transport's buffer.
+ */
+final class PreparedEncodingInputStream extends InputStream implements Drainable, KnownLength {
+  @Nullable private PreparedEncoding encoding;
+  @Nullable private ByteArrayInputStream partial;
+
+  PreparedEncodingInputStream(PreparedEncoding encoding) {
+    this.encoding = encoding;
+  }
+
+  @Override
+  public int drainTo(OutputStream target) throws IOException {
+    if (encoding != null) {
+      int size = encoding.size();
+      encoding.writeTo(target);
+      encoding = null;
+      return size;
+    }
+    if (partial != null) {
+      int size = (int) ByteStreams.copy(partial, target);
+      partial = null;
+      return size;
+    }
+    return 0;
+  }
+
+  @Override
+  public int read() {
+    if (encoding != null) {
+      partial = new ByteArrayInputStream(encoding.toByteArray());
+      encoding = null;
+    }
+    return partial != null ? partial.read() : -1;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) {
+    if (encoding != null) {
+      int size = encoding.size();
+      if (size == 0) {
+        encoding = null;
+        return -1;
+      }
+      if (length >= size) {
+        encoding.writeTo(buffer, offset);
+        encoding = null;
+        return size;
+      }
+      partial = new ByteArrayInputStream(encoding.toByteArray());
+      encoding = null;
+    }
+    return partial != null ? partial.read(buffer, offset, length) : -1;
+  }
+
+  @Override
+  public int available() {
+    if (encoding != null) {
+      return encoding.size();
+    }
+    return partial != null ? partial.available() : 0;
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Struct;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Marshals query response data as a serialized message or Struct without building it first.
+ *
+ * <p>The stream returned by {@link #stream} is {@link Drainable}, so gRPC writes the encoded
+ * response directly into its transport buffers.
+ */
+public final class ProtoResponseMarshaller
+    implements MethodDescriptor.Marshaller<Map<String, Object>> {
+
+  private final Function<Map<String, Object>, PreparedEncoding> encoder;
+  private final Parser parser;
+
+  private ProtoResponseMarshaller(
+      Function<Map<String, Object>, PreparedEncoding> encoder, Parser parser) {
+    this.encoder = encoder;
+    this.parser = parser;
+  }
+
+  /** Returns a marshaller encoding response data as the given message type. */
+  public static ProtoResponseMarshaller forDescriptor(Descriptor descriptor) {
+    ProtoWireEncoder encoder = ProtoWireEncoder.forDescriptor(descriptor);
+    return new ProtoResponseMarshaller(
+        encoder::prepare,
+        stream -> ProtoToMap.messageToMap(DynamicMessage.parseFrom(descriptor, stream)));
+  }
+
+  /** Returns a marshaller encoding response data as a {@code google.protobuf.Struct}. */
+  public static ProtoResponseMarshaller forStruct() {
+    return new ProtoResponseMarshaller(
+        StructWriter::prepare, stream -> StructUtil.asMap(Struct.parseFrom(stream)));
+  }
+
+  @Override
+  public InputStream stream(Map<String, Object> data) {
+    return new PreparedEncodingInputStream(encoder.apply(data));
+  }
+
+  @Override
+  public Map<String, Object> parse(InputStream stream) {
+    try {
+      return parser.parse(stream);
+    } catch (IOException e) {
+      throw Status.INTERNAL
+          .withDescription("Invalid protobuf byte sequence")
+          .withCause(e)
+          .asRuntimeException();
+    }
+  }
+
+  private interface Parser {
+    Map<String, Object> parse(InputStream stream) throws IOException;
+  }
+}
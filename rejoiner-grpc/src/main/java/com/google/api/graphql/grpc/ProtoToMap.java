@@ -16,51 +16,78 @@ package com.google.api.graphql.grpc;
 
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Converter;
-import com.google.common.collect.ImmutableList;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
 import java.util.List;
 import java.util.Map;
 
-/** Creates a Map based on a Message, while maintaining the field name case. */
+/**
+ * Creates a Map based on a Message, while maintaining the field name case.
+ *
+ * <p>The returned maps are read-only views backed by the message: values are converted when they
+ * are read, so unread fields are never copied. Enum values are represented by their name, and map
+ * fields by a list of entries with "key" and "value" keys, like their GraphQL types.
+ */
 public final class ProtoToMap {
 
   private static final Converter<String, String> UNDERSCORE_TO_CAMEL =
       CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL);
 
+  private static final int MAX_CACHED_MESSAGE_TYPES = 10_000;
+
+  /** Fields of each message type keyed by their GraphQL input field names, in a bounded cache. */
+  private static final LoadingCache<Descriptor, ImmutableMap<String, FieldDescriptor>>
+      FIELDS_BY_KEY =
+          CacheBuilder.newBuilder()
+              .maximumSize(MAX_CACHED_MESSAGE_TYPES)
+              .build(CacheLoader.from(ProtoToMap::fieldsByKey));
+
+  private ProtoToMap() {}
+
   public static Map<String, Object> messageToMap(Message message) {
-    ImmutableMap.Builder<String, Object> variablesBuilder = new ImmutableMap.Builder<>();
-    message
-        .getAllFields()
-        .forEach(
-            (field, value) ->
-                variablesBuilder.put(
-                    UNDERSCORE_TO_CAMEL.convert(field.getName()), mapValues(field, value)));
-    return variablesBuilder.build();
+    return Maps.transformValues(
+        Maps.filterValues(
+            FIELDS_BY_KEY.getUnchecked(message.getDescriptorForType()),
+            field -> isSet(message, field)),
+        field -> mapValues(field, message.getField(field)));
+  }
+
+  private static ImmutableMap<String, FieldDescriptor> fieldsByKey(Descriptor descriptor) {
+    ImmutableMap.Builder<String, FieldDescriptor> fields = ImmutableMap.builder();
+    for (FieldDescriptor field : descriptor.getFields()) {
+      String fieldName = field.getName();
+      fields.put(
+          fieldName.contains("_") ? UNDERSCORE_TO_CAMEL.convert(fieldName) : fieldName, field);
+    }
+    return fields.build();
+  }
+
+  private static boolean isSet(Message message, FieldDescriptor field) {
+    return field.isRepeated() ? message.getRepeatedFieldCount(field) > 0 : message.hasField(field);
   }
 
   private static Object mapValues(FieldDescriptor field, Object maybeValues) {
     if (field.isRepeated()) {
-      List<?> values = (List<?>) maybeValues;
-      return values
-          .stream()
-          .map(value -> mapValue(field, value))
-          .collect(ImmutableList.toImmutableList());
+      return Lists.transform((List<?>) maybeValues, ProtoToMap::mapValue);
     }
-    return mapValue(field, maybeValues);
+    return mapValue(maybeValues);
   }
 
-  private static Object mapValue(FieldDescriptor field, Object value) {
+  private static Object mapValue(Object value) {
     if (value instanceof Message) {
-      Message message = (Message) value;
-      return messageToMap(message);
-    } else if (field.isMapField()) {
-      // TODO: add support and test for maps
-      return value;
+      // Also covers map fields, whose values are lists of entry messages.
+      return messageToMap((Message) value);
+    } else if (value instanceof EnumValueDescriptor) {
+      return ((EnumValueDescriptor) value).getName();
     }
-    // TODO: add support and tests for enums
-
     return value;
   }
 }
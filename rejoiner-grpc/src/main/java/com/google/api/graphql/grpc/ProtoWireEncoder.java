@@ -0,0 +1,436 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes query response data straight to the protobuf wire format of a message type.
+ *
+ * <p>Produces the same bytes as serializing the message built by {@link QueryResponseToProto}
+ * (up to field order), without building the message first. Encoding is done in two passes over
+ * the response: the first converts every scalar value and computes the length of every value,
+ * nested message and packed field, the second writes the converted values.
+ */
+public final class ProtoWireEncoder {
+
+  private static final int MAX_CACHED_ENCODERS = 10_000;
+
+  /** Bounded, since each encoder holds on to the descriptor it is keyed by. */
+  private static final LoadingCache<Descriptor, ProtoWireEncoder> ENCODERS =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_ENCODERS)
+          .build(CacheLoader.from(ProtoWireEncoder::new));
+
+  private final Descriptor descriptor;
+  private final ImmutableMap<String, FieldEncoder> fieldsByResultKey;
+
+  private ProtoWireEncoder(Descriptor descriptor) {
+    this.descriptor = descriptor;
+    this.fieldsByResultKey =
+        ImmutableMap.copyOf(
+            Maps.transformValues(
+                QueryResponseToProto.fieldsByResultKey(descriptor), FieldEncoder::new));
+  }
+
+  /** Returns the encoder for the given message type. */
+  public static ProtoWireEncoder forDescriptor(Descriptor descriptor) {
+    return ENCODERS.getUnchecked(descriptor);
+  }
+
+  public Descriptor getDescriptor() {
+    return descriptor;
+  }
+
+  /** Encodes the response data as a serialized message. */
+  public ByteString encode(Map<String, Object> data) {
+    return UnsafeByteOperations.unsafeWrap(prepare(data).toByteArray());
+  }
+
+  /** Writes the response data as a serialized message to the output stream. */
+  public void writeTo(Map<String, Object> data, OutputStream output) throws IOException {
+    prepare(data).writeTo(output);
+  }
+
+  /** Computes the lengths needed to encode the response data. */
+  PreparedEncoding prepare(Map<String, Object> data) {
+    EncodedLengths lengths = new EncodedLengths();
+    int size = data == null ? 0 : computeSize(data, lengths);
+    return new Encoding(data, lengths, size);
+  }
+
+  private int computeSize(Map<String, Object> fields, EncodedLengths lengths) {
+    int size = 0;
+    for (Map.Entry<String, Object> entry : fields.entrySet()) {
+      FieldEncoder field = entry.getValue() == null ? null : fieldsByResultKey.get(entry.getKey());
+      if (field != null) {
+        size += field.computeSize(entry.getValue(), lengths);
+      }
+    }
+    return size;
+  }
+
+  private void write(Map<String, Object> fields, EncodedLengths lengths, CodedOutputStream output)
+      throws IOException {
+    for (Map.Entry<String, Object> entry : fields.entrySet()) {
+      FieldEncoder field = entry.getValue() == null ? null : fieldsByResultKey.get(entry.getKey());
+      if (field != null) {
+        field.write(entry.getValue(), lengths, output);
+      }
+    }
+  }
+
+  /** Response data together with the lengths computed for it, ready to be written. */
+  private final class Encoding extends PreparedEncoding {
+    private final Map<String, Object> data;
+    private final EncodedLengths lengths;
+    private final int size;
+
+    private Encoding(Map<String, Object> data, EncodedLengths lengths, int size) {
+      this.data = data;
+      this.lengths = lengths;
+      this.size = size;
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    void writeTo(CodedOutputStream output) throws IOException {
+      if (data != null) {
+        lengths.rewind();
+        write(data, lengths, output);
+      }
+    }
+  }
+
+  /** Converts and encodes the values of a single field. */
+  private static final class FieldEncoder {
+    private final FieldDescriptor field;
+    private final int number;
+    private final int tagSize;
+    private final boolean skipDefault;
+    private final Object defaultValue;
+    private final ImmutableMap<String, Integer> enumNumbersByName;
+
+    FieldEncoder(FieldDescriptor field) {
+      this.field = field;
+      this.number = field.getNumber();
+      this.tagSize = CodedOutputStream.computeTagSize(number);
+      // Proto3 fields without presence are not serialized when they hold the default value.
+      this.skipDefault =
+          field.getFile().getSyntax() == FileDescriptor.Syntax.PROTO3
+              && !field.isRepeated()
+              && field.getContainingOneof() == null
+              && field.getJavaType() != FieldDescriptor.JavaType.MESSAGE;
+      if (field.getJavaType() == FieldDescriptor.JavaType.ENUM) {
+        ImmutableMap.Builder<String, Integer> numbers = ImmutableMap.builder();
+        for (EnumValueDescriptor value : field.getEnumType().getValues()) {
+          numbers.put(value.getName(), value.getNumber());
+        }
+        this.enumNumbersByName = numbers.build();
+      } else {
+        this.enumNumbersByName = ImmutableMap.of();
+      }
+      // The default of a repeated field is an empty list, only singular defaults are skipped.
+      if (!skipDefault) {
+        this.defaultValue = null;
+      } else if (field.getJavaType() == FieldDescriptor.JavaType.ENUM) {
+        this.defaultValue = ((EnumValueDescriptor) field.getDefaultValue()).getNumber();
+      } else {
+        this.defaultValue = field.getDefaultValue();
+      }
+    }
+
+    int computeSize(Object value, EncodedLengths lengths) {
+      if (!(value instanceof List<?>)) {
+        if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+          return computeMessageSize(value, lengths);
+        }
+        Object converted = convert(value);
+        if (skipDefault && converted.equals(defaultValue)) {
+          lengths.set(lengths.reserve(), 0);
+          return 0;
+        }
+        return tagSize + computeScalarSize(converted, lengths);
+      }
+      List<?> values = (List<?>) value;
+      if (field.isPacked()) {
+        int slot = lengths.reserve();
+        int length = 0;
+        for (Object element : values) {
+          if (element != null) {
+            length += computeScalarSize(convert(element), lengths);
+          }
+        }
+        lengths.set(slot, length);
+        return length == 0
+            ? 0
+            : tagSize + CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+      }
+      int size = 0;
+      for (Object element : values) {
+        if (element != null) {
+          size +=
+              field.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+                  ? computeMessageSize(element, lengths)
+                  : tagSize + computeScalarSize(convert(element), lengths);
+        }
+      }
+      return size;
+    }
+
+    void write(Object value, EncodedLengths lengths, CodedOutputStream output) throws IOException {
+      if (!(value instanceof List<?>)) {
+        if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+          writeMessage(value, lengths, output);
+          return;
+        }
+        // Values skipped as defaults have no length, any other value takes at least a byte.
+        if (lengths.next() > 0) {
+          output.writeTag(number, field.getLiteType().getWireType());
+          writeNoTag(lengths.value(), output);
+        }
+        return;
+      }
+      List<?> values = (List<?>) value;
+      if (field.isPacked()) {
+        int length = lengths.next();
+        if (length > 0) {
+          output.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+          output.writeUInt32NoTag(length);
+          for (Object element : values) {
+            if (element != null) {
+              lengths.next();
+              writeNoTag(lengths.value(), output);
+            }
+          }
+        }
+        return;
+      }
+      for (Object element : values) {
+        if (element == null) {
+          continue;
+        }
+        if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+          writeMessage(element, lengths, output);
+        } else {
+          output.writeTag(number, field.getLiteType().getWireType());
+          lengths.next();
+          writeNoTag(lengths.value(), output);
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int computeMessageSize(Object value, EncodedLengths lengths) {
+      int length;
+      if (value instanceof Message) {
+        length = ((Message) value).getSerializedSize();
+      } else {
+        int slot = lengths.reserve();
+        length =
+            forDescriptor(field.getMessageType())
+                .computeSize((Map<String, Object>) value, lengths);
+        lengths.set(slot, length);
+      }
+      return tagSize + CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeMessage(Object value, EncodedLengths lengths, CodedOutputStream output)
+        throws IOException {
+      output.writeTag(number, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      if (value instanceof Message) {
+        Message message = (Message) value;
+        output.writeUInt32NoTag(message.getSerializedSize());
+        message.writeTo(output);
+      } else {
+        output.writeUInt32NoTag(lengths.next());
+        forDescriptor(field.getMessageType()).write((Map<String, Object>) value, lengths, output);
+      }
+    }
+
+    /** Computes the size of a converted value, keeping it in a slot for the writing pass. */
+    private int computeScalarSize(Object converted, EncodedLengths lengths) {
+      int size = computeSizeNoTag(converted);
+      lengths.set(lengths.reserve(), size, converted);
+      return size;
+    }
+
+    /** Converts a GraphQL result value to the Java type of the field, enums to their number. */
+    private Object convert(Object value) {
+      switch (field.getJavaType()) {
+        case INT:
+          return value instanceof Number
+              ? ((Number) value).intValue()
+              : Integer.valueOf(value.toString());
+        case LONG:
+          return value instanceof Number
+              ? ((Number) value).longValue()
+              : Long.valueOf(value.toString());
+        case FLOAT:
+          return value instanceof Number
+              ? ((Number) value).floatValue()
+              : Float.valueOf(value.toString());
+        case DOUBLE:
+          return value instanceof Number
+              ? ((Number) value).doubleValue()
+              : Double.valueOf(value.toString());
+        case BOOLEAN:
+          return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+        case STRING:
+          return value.toString();
+        case BYTE_STRING:
+          return value instanceof ByteString
+              ? value
+              : ByteString.copyFromUtf8(value.toString());
+        case ENUM:
+          return toEnumNumber(value);
+        default:
+          throw new IllegalArgumentException("Unsupported field " + field.getFullName());
+      }
+    }
+
+    private Integer toEnumNumber(Object value) {
+      if (value instanceof EnumValueDescriptor) {
+        return ((EnumValueDescriptor) value).getNumber();
+      }
+      if (value instanceof Number) {
+        return ((Number) value).intValue();
+      }
+      Integer enumNumber = enumNumbersByName.get(value.toString());
+      if (enumNumber == null) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Unknown value %s for enum %s", value, field.getEnumType().getFullName()));
+      }
+      return enumNumber;
+    }
+
+    private int computeSizeNoTag(Object value) {
+      switch (field.getType()) {
+        case DOUBLE:
+          return CodedOutputStream.computeDoubleSizeNoTag((Double) value);
+        case FLOAT:
+          return CodedOutputStream.computeFloatSizeNoTag((Float) value);
+        case INT64:
+          return CodedOutputStream.computeInt64SizeNoTag((Long) value);
+        case UINT64:
+          return CodedOutputStream.computeUInt64SizeNoTag((Long) value);
+        case SINT64:
+          return CodedOutputStream.computeSInt64SizeNoTag((Long) value);
+        case FIXED64:
+          return CodedOutputStream.computeFixed64SizeNoTag((Long) value);
+        case SFIXED64:
+          return CodedOutputStream.computeSFixed64SizeNoTag((Long) value);
+        case INT32:
+          return CodedOutputStream.computeInt32SizeNoTag((Integer) value);
+        case UINT32:
+          return CodedOutputStream.computeUInt32SizeNoTag((Integer) value);
+        case SINT32:
+          return CodedOutputStream.computeSInt32SizeNoTag((Integer) value);
+        case FIXED32:
+          return CodedOutputStream.computeFixed32SizeNoTag((Integer) value);
+        case SFIXED32:
+          return CodedOutputStream.computeSFixed32SizeNoTag((Integer) value);
+        case BOOL:
+          return CodedOutputStream.computeBoolSizeNoTag((Boolean) value);
+        case STRING:
+          return CodedOutputStream.computeStringSizeNoTag((String) value);
+        case BYTES:
+          return CodedOutputStream.computeBytesSizeNoTag((ByteString) value);
+        case ENUM:
+          return CodedOutputStream.computeEnumSizeNoTag((Integer) value);
+        default:
+          throw new IllegalArgumentException("Unsupported field " + field.getFullName());
+      }
+    }
+
+    private void writeNoTag(Object value, CodedOutputStream output) throws IOException {
+      switch (field.getType()) {
+        case DOUBLE:
+          output.writeDoubleNoTag((Double) value);
+          break;
+        case FLOAT:
+          output.writeFloatNoTag((Float) value);
+          break;
+        case INT64:
+          output.writeInt64NoTag((Long) value);
+          break;
+        case UINT64:
+          output.writeUInt64NoTag((Long) value);
+          break;
+        case SINT64:
+          output.writeSInt64NoTag((Long) value);
+          break;
+        case FIXED64:
+          output.writeFixed64NoTag((Long) value);
+          break;
+        case SFIXED64:
+          output.writeSFixed64NoTag((Long) value);
+          break;
+        case INT32:
+          output.writeInt32NoTag((Integer) value);
+          break;
+        case UINT32:
+          output.writeUInt32NoTag((Integer) value);
+          break;
+        case SINT32:
+          output.writeSInt32NoTag((Integer) value);
+          break;
+        case FIXED32:
+          output.writeFixed32NoTag((Integer) value);
+          break;
+        case SFIXED32:
+          output.writeSFixed32NoTag((Integer) value);
+          break;
+        case BOOL:
+          output.writeBoolNoTag((Boolean) value);
+          break;
+        case STRING:
+          output.writeStringNoTag((String) value);
+          break;
+        case BYTES:
+          output.writeBytesNoTag((ByteString) value);
+          break;
+        case ENUM:
+          output.writeEnumNoTag((Integer) value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported field " + field.getFullName());
+      }
+    }
+  }
+}
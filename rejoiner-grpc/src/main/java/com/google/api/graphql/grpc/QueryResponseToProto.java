@@ -16,16 +16,43 @@ package com.google.api.graphql.grpc;
 
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Converter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumDescriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Message;
 import com.google.protobuf.Message.Builder;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-/** Fills proto with query response data. */
+/**
+ * Fills proto with query response data.
+ *
+ * <p>The field lookups and value conversions for a message type are computed once and cached by
+ * {@link Descriptor}, so converting a response only does map lookups keyed by the result key.
+ */
 public final class QueryResponseToProto {
 
+  private static final Converter<String, String> UNDERSCORE_TO_CAMEL =
+      CaseFormat.LOWER_UNDERSCORE.converterTo(CaseFormat.LOWER_CAMEL);
+
+  private static final int MAX_CACHED_PLANS = 10_000;
+
+  /**
+   * Plans by message type. A plan references its descriptor, so the cache is bounded to keep the
+   * descriptors of dynamic schemas from piling up.
+   */
+  private static final LoadingCache<Descriptor, MessagePlan> PLANS =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_PLANS)
+          .build(CacheLoader.from(MessagePlan::new));
+
   private QueryResponseToProto() {}
 
   public static <T extends Message> T buildMessage(T message, Map<String, Object> fields) {
@@ -34,56 +61,127 @@ public final class QueryResponseToProto {
     return populatedMessage;
   }
 
-  @SuppressWarnings("unchecked")
-  private static Object buildMessage(Builder builder, Map<String, Object> fields) {
+  /**
+   * Returns the fields of a message type keyed by the names they have in a GraphQL result: the
+   * json name, and the camel-cased field name used before json names were used for GraphQL fields.
+   */
+  static ImmutableMap<String, FieldDescriptor> fieldsByResultKey(Descriptor descriptor) {
+    Map<String, FieldDescriptor> fields = new LinkedHashMap<>();
+    for (FieldDescriptor field : descriptor.getFields()) {
+      fields.put(field.getJsonName(), field);
+    }
+    for (FieldDescriptor field : descriptor.getFields()) {
+      fields.putIfAbsent(UNDERSCORE_TO_CAMEL.convert(field.getName()), field);
+    }
+    return ImmutableMap.copyOf(fields);
+  }
+
+  private static Message buildMessage(Builder builder, Map<String, Object> fields) {
     if (fields == null) {
       return builder.build();
     }
-    Descriptor descriptor = builder.getDescriptorForType();
-    for (Map.Entry<String, Object> entry : fields.entrySet()) {
-      if (entry.getValue() == null) {
-        continue;
-      }
-      FieldDescriptor field = getField(descriptor, entry.getKey());
-      if (entry.getValue() instanceof List<?>) {
-        List<Object> values = (List<Object>) entry.getValue();
-        for (Object value : values) {
-          builder.addRepeatedField(field, buildValue(builder, field, value));
-        }
+    PLANS.getUnchecked(builder.getDescriptorForType()).populate(builder, fields);
+    return builder.build();
+  }
+
+  /** Maps the result keys of a message type to the fields they populate. */
+  private static final class MessagePlan {
+    private final ImmutableMap<String, FieldPlan> fieldsByResultKey;
 
-      } else {
-        builder.setField(field, buildValue(builder, field, entry.getValue()));
+    MessagePlan(Descriptor descriptor) {
+      this.fieldsByResultKey =
+          ImmutableMap.copyOf(Maps.transformValues(fieldsByResultKey(descriptor), FieldPlan::new));
+    }
+
+    @SuppressWarnings("unchecked")
+    void populate(Builder builder, Map<String, Object> fields) {
+      for (Map.Entry<String, Object> entry : fields.entrySet()) {
+        Object value = entry.getValue();
+        if (value == null) {
+          continue;
+        }
+        FieldPlan field = fieldsByResultKey.get(entry.getKey());
+        if (field == null) {
+          // Fields added by schema modifications have no counterpart in the proto.
+          continue;
+        }
+        if (value instanceof List<?>) {
+          for (Object element : (List<Object>) value) {
+            if (element != null) {
+              builder.addRepeatedField(field.field, field.convert(builder, element));
+            }
+          }
+        } else {
+          builder.setField(field.field, field.convert(builder, value));
+        }
       }
     }
-    return builder.build();
   }
 
-  @SuppressWarnings("unchecked")
-  private static Object buildValue(
-      Message.Builder parentBuilder, FieldDescriptor field, Object value) {
-    if (field == null) {
-      return value;
+  /** Converts GraphQL result values to the Java type expected by a single proto field. */
+  private static final class FieldPlan {
+    private final FieldDescriptor field;
+    private final FieldDescriptor.JavaType javaType;
+    private final ImmutableMap<String, EnumValueDescriptor> enumValuesByName;
+
+    FieldPlan(FieldDescriptor field) {
+      this.field = field;
+      this.javaType = field.getJavaType();
+      this.enumValuesByName =
+          javaType == FieldDescriptor.JavaType.ENUM
+              ? enumValuesByName(field.getEnumType())
+              : ImmutableMap.of();
     }
-    if (field.getType() == FieldDescriptor.Type.MESSAGE) {
-      if (field.isRepeated()) {}
-      Message.Builder fieldBuilder = parentBuilder.newBuilderForField(field);
-      return buildMessage(fieldBuilder, (Map<String, Object>) value);
-    } else if (field.getType() == FieldDescriptor.Type.ENUM) {
-      return field.getEnumType().findValueByName((String) value);
-    } else {
-      switch (field.getType()) {
-        case FLOAT: // float is a special case
-          return Float.valueOf(value.toString());
+
+    @SuppressWarnings("unchecked")
+    Object convert(Builder parentBuilder, Object value) {
+      switch (javaType) {
+        case MESSAGE:
+          if (value instanceof Message) {
+            return value;
+          }
+          return buildMessage(
+              parentBuilder.newBuilderForField(field), (Map<String, Object>) value);
+        case ENUM:
+          return toEnumValue(value);
+        case INT:
+          return value instanceof Number ? ((Number) value).intValue() : value;
+        case LONG:
+          return value instanceof Number ? ((Number) value).longValue() : value;
+        case FLOAT:
+          return value instanceof Number
+              ? ((Number) value).floatValue()
+              : Float.valueOf(value.toString());
+        case DOUBLE:
+          return value instanceof Number ? ((Number) value).doubleValue() : value;
         default:
           return value;
       }
     }
-  }
 
-  private static FieldDescriptor getField(Descriptor descriptor, String name) {
-    return descriptor.findFieldByName(CAMEL_TO_UNDERSCORE.convert(name));
-  }
+    private EnumValueDescriptor toEnumValue(Object value) {
+      if (value instanceof EnumValueDescriptor) {
+        return (EnumValueDescriptor) value;
+      }
+      EnumValueDescriptor enumValue =
+          value instanceof Number
+              ? field.getEnumType().findValueByNumber(((Number) value).intValue())
+              : enumValuesByName.get(value.toString());
+      if (enumValue == null) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Unknown value %s for enum %s", value, field.getEnumType().getFullName()));
+      }
+      return enumValue;
+    }
 
-  private static final Converter<String, String> CAMEL_TO_UNDERSCORE =
-      CaseFormat.LOWER_CAMEL.converterTo(CaseFormat.LOWER_UNDERSCORE);
+    private static ImmutableMap<String, EnumValueDescriptor> enumValuesByName(
+        EnumDescriptor enumType) {
+      ImmutableMap.Builder<String, EnumValueDescriptor> values = ImmutableMap.builder();
+      for (EnumValueDescriptor value : enumType.getValues()) {
+        values.put(value.getName(), value);
+      }
+      return values.build();
+    }
+  }
 }
@@ -20,7 +20,12 @@ import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
 import java.util.Map;
 
-/** Converts a QueryResponse json map into a protobuf {@link Struct} object. */
+/**
+ * Converts a QueryResponse json map into a protobuf {@link Struct} object.
+ *
+ * <p>Use {@link StructWriter} when the Struct is only serialized, it writes the same bytes without
+ * building the Struct.
+ */
 public final class QueryResponseToProtoJson {
 
   /** Converts a json map into a protobuf {@link Struct} object. */
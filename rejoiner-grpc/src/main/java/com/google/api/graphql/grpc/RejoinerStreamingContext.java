@@ -15,15 +15,37 @@
 package com.google.api.graphql.grpc;
 
 import com.google.auto.value.AutoValue;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
+/**
+ * Execution context of a streaming GraphQL call.
+ *
+ * <p>Tracks the streams started by {@link GraphQlStreamObserver}s, so the call can be completed
+ * once the last stream completes, and propagates cancellation of the call to the streams.
+ *
+ * <p>When bound to a {@link ServerCallStreamObserver}, streams also follow the call's flow control:
+ * they stop requesting upstream messages while the call isn't ready, and resume when it is.
+ */
 @AutoValue
 public abstract class RejoinerStreamingContext<T> {
 
   private final CountDownLatch countDownLatch = new CountDownLatch(1);
   private final AtomicInteger atomicInteger = new AtomicInteger(0);
+  private final CompletableFuture<Void> streamsCompleted = new CompletableFuture<>();
+  private final Queue<Runnable> cancellationListeners = new ConcurrentLinkedQueue<>();
+  private final List<Runnable> onReadyListeners = new CopyOnWriteArrayList<>();
+  private volatile boolean cancelled;
+  private volatile BooleanSupplier readiness = () -> true;
 
   abstract StreamObserver<T> responseStreamObserver();
 
@@ -34,14 +56,101 @@ public abstract class RejoinerStreamingContext<T> {
   public void completeStream() {
     if (atomicInteger.decrementAndGet() <= 0) {
       countDownLatch.countDown();
+      streamsCompleted.complete(null);
     }
   }
 
+  /**
+   * Blocks until all streams complete.
+   *
+   * <p>Prefer {@link #whenStreamsComplete}, which doesn't hold on to the calling thread.
+   */
   public void awaitStreams() throws InterruptedException {
     countDownLatch.await();
   }
 
+  /**
+   * Returns a future that completes when all started streams have completed, or fails with a
+   * {@link CancellationException} when the call is cancelled.
+   *
+   * <p>Streams are started while fields are fetched, so this should be called once execution has
+   * completed. The future is already complete if no stream is active at that point.
+   */
+  public CompletableFuture<Void> whenStreamsComplete() {
+    if (atomicInteger.get() <= 0) {
+      streamsCompleted.complete(null);
+    }
+    return streamsCompleted;
+  }
+
+  /** Cancels the streams, e.g. because the client cancelled the call. */
+  public void cancel() {
+    cancelled = true;
+    streamsCompleted.completeExceptionally(new CancellationException("Call was cancelled"));
+    Runnable listener;
+    while ((listener = cancellationListeners.poll()) != null) {
+      listener.run();
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Runs the listener when the call is cancelled, typically to cancel an upstream call. Runs it
+   * immediately if the call is already cancelled.
+   */
+  public void addCancellationListener(Runnable listener) {
+    cancellationListeners.add(listener);
+    if (cancelled && cancellationListeners.remove(listener)) {
+      listener.run();
+    }
+  }
+
+  public void removeCancellationListener(Runnable listener) {
+    cancellationListeners.remove(listener);
+  }
+
+  /**
+   * Ties the context to a server call: cancelling the call cancels the streams, and streams pause
+   * while the call isn't ready. Must be called before the service method returns.
+   */
+  public void bind(ServerCallStreamObserver<?> serverCall) {
+    readiness = serverCall::isReady;
+    serverCall.setOnReadyHandler(this::onReady);
+    serverCall.setOnCancelHandler(this::cancel);
+  }
+
+  /** Whether the response stream can take more messages without buffering them. */
+  public boolean isReady() {
+    return readiness.getAsBoolean();
+  }
+
+  /** Runs the listener each time the response stream becomes ready. */
+  public void addOnReadyListener(Runnable listener) {
+    onReadyListeners.add(listener);
+  }
+
+  public void removeOnReadyListener(Runnable listener) {
+    onReadyListeners.remove(listener);
+  }
+
+  private void onReady() {
+    for (Runnable listener : onReadyListeners) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Creates a context streaming to the given observer, bound to it if it's a {@link
+   * ServerCallStreamObserver}.
+   */
   public static <T> RejoinerStreamingContext create(StreamObserver<T> stream) {
-    return new AutoValue_RejoinerStreamingContext(stream);
+    RejoinerStreamingContext<T> context = new AutoValue_RejoinerStreamingContext<>(stream);
+    if (stream instanceof ServerCallStreamObserver) {
+      context.bind((ServerCallStreamObserver<?>) stream);
+    }
+    return context;
   }
 }
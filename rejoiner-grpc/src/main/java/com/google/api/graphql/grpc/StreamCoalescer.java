@@ -0,0 +1,157 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.api.graphql.GraphqlResponse;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Message;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Coalesces the responses of a {@link GraphQlStreamObserver} into fewer, larger responses.
+ *
+ * <p>Responses are held until {@link #maxResponses()} responses or {@link #maxBytes()} bytes are
+ * pending, or until {@link #maxDelay()} has passed since the first pending response, and are then
+ * combined into a single response. Pending responses are also sent when the stream completes or
+ * fails. A single pending response is sent as is.
+ */
+@AutoValue
+public abstract class StreamCoalescer<R extends Message> {
+
+  private static final ScheduledExecutorService DEFAULT_SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("rejoiner-stream-coalescer-%d")
+              .build());
+
+  /** Returns a builder for a coalescer that combines responses with the given function. */
+  public static <R extends Message> Builder<R> builder(Function<List<R>, R> combiner) {
+    return new AutoValue_StreamCoalescer.Builder<R>()
+        .combiner(combiner)
+        .maxDelay(Duration.ofMillis(10))
+        .maxResponses(100)
+        .maxBytes(64 * 1024)
+        .scheduler(DEFAULT_SCHEDULER);
+  }
+
+  /**
+   * Returns a builder for a coalescer of {@link GraphqlResponse}s, which combines responses as the
+   * {@code incremental} responses of a single response.
+   */
+  public static Builder<GraphqlResponse> forGraphqlResponses() {
+    return builder(responses -> GraphqlResponse.newBuilder().addAllIncremental(responses).build());
+  }
+
+  abstract Function<List<R>, R> combiner();
+
+  /** Longest time a response is held before it's sent. */
+  public abstract Duration maxDelay();
+
+  /** Number of pending responses that are sent right away. */
+  public abstract int maxResponses();
+
+  /** Serialized size of the pending responses that are sent right away. */
+  public abstract int maxBytes();
+
+  abstract ScheduledExecutorService scheduler();
+
+  /** Returns a buffer of pending responses, sent to the given observer. */
+  Buffer<R> newBuffer(StreamObserver<R> responseObserver) {
+    return new Buffer<>(this, responseObserver);
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder<R extends Message> {
+    abstract Builder<R> combiner(Function<List<R>, R> combiner);
+
+    public abstract Builder<R> maxDelay(Duration maxDelay);
+
+    public abstract Builder<R> maxResponses(int maxResponses);
+
+    public abstract Builder<R> maxBytes(int maxBytes);
+
+    /** Schedules delayed sends, by default on a shared daemon thread. */
+    public abstract Builder<R> scheduler(ScheduledExecutorService scheduler);
+
+    abstract StreamCoalescer<R> autoBuild();
+
+    public StreamCoalescer<R> build() {
+      StreamCoalescer<R> coalescer = autoBuild();
+      checkArgument(!coalescer.maxDelay().isNegative(), "maxDelay must not be negative");
+      checkArgument(coalescer.maxResponses() > 0, "maxResponses must be positive");
+      checkArgument(coalescer.maxBytes() > 0, "maxBytes must be positive");
+      return coalescer;
+    }
+  }
+
+  /** Pending responses of a single stream. */
+  static final class Buffer<R extends Message> {
+    private final StreamCoalescer<R> coalescer;
+    private final StreamObserver<R> responseObserver;
+    private final List<R> pending = new ArrayList<>();
+    private int pendingBytes;
+    @Nullable private ScheduledFuture<?> scheduledFlush;
+
+    private Buffer(StreamCoalescer<R> coalescer, StreamObserver<R> responseObserver) {
+      this.coalescer = coalescer;
+      this.responseObserver = responseObserver;
+    }
+
+    synchronized void add(R response) {
+      pending.add(response);
+      pendingBytes += response.getSerializedSize();
+      if (pending.size() >= coalescer.maxResponses() || pendingBytes >= coalescer.maxBytes()) {
+        flush();
+      } else if (scheduledFlush == null) {
+        scheduledFlush =
+            coalescer
+                .scheduler()
+                .schedule(this::flush, coalescer.maxDelay().toNanos(), TimeUnit.NANOSECONDS);
+      }
+    }
+
+    /** Sends the pending responses as a single response. */
+    synchronized void flush() {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+      }
+      if (pending.isEmpty()) {
+        return;
+      }
+      R response =
+          pending.size() == 1
+              ? pending.get(0)
+              : coalescer.combiner().apply(ImmutableList.copyOf(pending));
+      pending.clear();
+      pendingBytes = 0;
+      responseObserver.onNext(response);
+    }
+  }
+}
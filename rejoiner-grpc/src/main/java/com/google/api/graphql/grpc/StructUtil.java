@@ -16,14 +16,40 @@ package com.google.api.graphql.grpc;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.protobuf.ListValue;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
+import java.util.Map;
 
 /** Utility class for converting structs. */
 public final class StructUtil {
   private StructUtil() {}
 
+  /**
+   * Returns a read-only Map view of a Struct.
+   *
+   * <p>Unlike {@link #toMap}, nothing is copied up front: values, nested structs and lists are
+   * converted when they are read. Null values are represented as null.
+   */
+  public static Map<String, Object> asMap(Struct struct) {
+    return Maps.transformValues(struct.getFieldsMap(), StructUtil::viewValue);
+  }
+
+  private static Object viewValue(Value value) {
+    switch (value.getKindCase()) {
+      case STRUCT_VALUE:
+        return asMap(value.getStructValue());
+      case LIST_VALUE:
+        return Lists.transform(value.getListValue().getValuesList(), StructUtil::viewValue);
+      case NULL_VALUE:
+        return null;
+      default:
+        return getScalarValue(value);
+    }
+  }
+
   /** Convert a Struct to an ImmutableMap. */
   public static ImmutableMap<String, Object> toMap(Struct struct) {
     return struct
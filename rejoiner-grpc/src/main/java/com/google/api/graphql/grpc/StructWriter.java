@@ -0,0 +1,255 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.gson.stream.JsonWriter;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.Value;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes a QueryResponse json map as a serialized {@link Struct} or as JSON, in one pass over the
+ * map and without building intermediate {@link Struct} or {@link Value} objects.
+ *
+ * <p>Accepts the same values as {@link QueryResponseToProtoJson}.
+ */
+public final class StructWriter {
+
+  // Field numbers of google.protobuf.Struct, its map entries, Value and ListValue.
+  private static final int STRUCT_FIELDS = Struct.FIELDS_FIELD_NUMBER;
+  private static final int ENTRY_KEY = 1;
+  private static final int ENTRY_VALUE = 2;
+  private static final int NULL_VALUE = Value.NULL_VALUE_FIELD_NUMBER;
+  private static final int NUMBER_VALUE = Value.NUMBER_VALUE_FIELD_NUMBER;
+  private static final int STRING_VALUE = Value.STRING_VALUE_FIELD_NUMBER;
+  private static final int BOOL_VALUE = Value.BOOL_VALUE_FIELD_NUMBER;
+  private static final int STRUCT_VALUE = Value.STRUCT_VALUE_FIELD_NUMBER;
+  private static final int LIST_VALUE = Value.LIST_VALUE_FIELD_NUMBER;
+  private static final int LIST_VALUES = ListValue.VALUES_FIELD_NUMBER;
+
+  private StructWriter() {}
+
+  /** Encodes a json map as a serialized {@link Struct}. */
+  public static ByteString toByteString(Map<String, Object> json) {
+    return UnsafeByteOperations.unsafeWrap(prepare(json).toByteArray());
+  }
+
+  /** Writes a json map as a serialized {@link Struct} to the output stream. */
+  public static void writeTo(Map<String, Object> json, OutputStream output) throws IOException {
+    prepare(json).writeTo(output);
+  }
+
+  /** Encodes a json map as a JSON string. */
+  public static String toJson(Map<String, Object> json) {
+    StringWriter writer = new StringWriter();
+    try {
+      writeJson(json, writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
+
+  /** Writes a json map as JSON to the writer. */
+  public static void writeJson(Map<String, Object> json, Writer writer) throws IOException {
+    JsonWriter jsonWriter = new JsonWriter(writer);
+    writeJsonValue(json, jsonWriter);
+    jsonWriter.flush();
+  }
+
+  /** Computes the lengths needed to encode a json map as a {@link Struct}. */
+  static PreparedEncoding prepare(Map<String, Object> json) {
+    EncodedLengths lengths = new EncodedLengths();
+    int size = computeStructSize(json, lengths);
+    return new PreparedEncoding() {
+      @Override
+      int size() {
+        return size;
+      }
+
+      @Override
+      void writeTo(CodedOutputStream output) throws IOException {
+        lengths.rewind();
+        writeStruct(json, lengths, output);
+      }
+    };
+  }
+
+  private static int computeStructSize(Map<?, ?> map, EncodedLengths lengths) {
+    int size = 0;
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      int entrySlot = lengths.reserve();
+      int valueSlot = lengths.reserve();
+      int valueLength = computeValueSize(entry.getValue(), lengths);
+      lengths.set(valueSlot, valueLength);
+      int entryLength =
+          CodedOutputStream.computeStringSize(ENTRY_KEY, String.valueOf(entry.getKey()))
+              + lengthDelimitedSize(ENTRY_VALUE, valueLength);
+      lengths.set(entrySlot, entryLength);
+      size += lengthDelimitedSize(STRUCT_FIELDS, entryLength);
+    }
+    return size;
+  }
+
+  /** Returns the size of the {@link Value} message for a json value. */
+  private static int computeValueSize(Object value, EncodedLengths lengths) {
+    if (value instanceof Map) {
+      int slot = lengths.reserve();
+      int length = computeStructSize((Map<?, ?>) value, lengths);
+      lengths.set(slot, length);
+      return lengthDelimitedSize(STRUCT_VALUE, length);
+    } else if (value instanceof Value) {
+      return ((Value) value).getSerializedSize();
+    } else if (value instanceof String) {
+      return CodedOutputStream.computeStringSize(STRING_VALUE, (String) value);
+    } else if (value instanceof Boolean) {
+      return CodedOutputStream.computeBoolSize(BOOL_VALUE, (Boolean) value);
+    } else if (value instanceof Number) {
+      return CodedOutputStream.computeDoubleSize(NUMBER_VALUE, 0);
+    } else if (value instanceof Iterable<?>) {
+      int slot = lengths.reserve();
+      int length = 0;
+      for (Object item : (Iterable<?>) value) {
+        int itemSlot = lengths.reserve();
+        int itemLength = computeValueSize(item, lengths);
+        lengths.set(itemSlot, itemLength);
+        length += lengthDelimitedSize(LIST_VALUES, itemLength);
+      }
+      lengths.set(slot, length);
+      return lengthDelimitedSize(LIST_VALUE, length);
+    } else if (value instanceof Struct) {
+      return CodedOutputStream.computeMessageSize(STRUCT_VALUE, (Struct) value);
+    } else if (value == null) {
+      return CodedOutputStream.computeEnumSize(NULL_VALUE, 0);
+    } else {
+      throw new IllegalArgumentException("Cannot convert " + value + " to a protobuf `Value`");
+    }
+  }
+
+  private static int lengthDelimitedSize(int fieldNumber, int length) {
+    return CodedOutputStream.computeTagSize(fieldNumber)
+        + CodedOutputStream.computeUInt32SizeNoTag(length)
+        + length;
+  }
+
+  private static void writeStruct(Map<?, ?> map, EncodedLengths lengths, CodedOutputStream output)
+      throws IOException {
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      int entryLength = lengths.next();
+      int valueLength = lengths.next();
+      writeLengthDelimitedTag(STRUCT_FIELDS, entryLength, output);
+      output.writeString(ENTRY_KEY, String.valueOf(entry.getKey()));
+      writeLengthDelimitedTag(ENTRY_VALUE, valueLength, output);
+      writeValue(entry.getValue(), lengths, output);
+    }
+  }
+
+  private static void writeValue(Object value, EncodedLengths lengths, CodedOutputStream output)
+      throws IOException {
+    if (value instanceof Map) {
+      writeLengthDelimitedTag(STRUCT_VALUE, lengths.next(), output);
+      writeStruct((Map<?, ?>) value, lengths, output);
+    } else if (value instanceof Value) {
+      ((Value) value).writeTo(output);
+    } else if (value instanceof String) {
+      output.writeString(STRING_VALUE, (String) value);
+    } else if (value instanceof Boolean) {
+      output.writeBool(BOOL_VALUE, (Boolean) value);
+    } else if (value instanceof Number) {
+      output.writeDouble(NUMBER_VALUE, ((Number) value).doubleValue());
+    } else if (value instanceof Iterable<?>) {
+      writeLengthDelimitedTag(LIST_VALUE, lengths.next(), output);
+      for (Object item : (Iterable<?>) value) {
+        writeLengthDelimitedTag(LIST_VALUES, lengths.next(), output);
+        writeValue(item, lengths, output);
+      }
+    } else if (value instanceof Struct) {
+      output.writeMessage(STRUCT_VALUE, (Struct) value);
+    } else if (value == null) {
+      output.writeEnum(NULL_VALUE, 0);
+    } else {
+      throw new IllegalArgumentException("Cannot convert " + value + " to a protobuf `Value`");
+    }
+  }
+
+  private static void writeLengthDelimitedTag(
+      int fieldNumber, int length, CodedOutputStream output) throws IOException {
+    output.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    output.writeUInt32NoTag(length);
+  }
+
+  private static void writeJsonValue(Object value, JsonWriter writer) throws IOException {
+    if (value instanceof Map) {
+      writer.beginObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        writer.name(String.valueOf(entry.getKey()));
+        writeJsonValue(entry.getValue(), writer);
+      }
+      writer.endObject();
+    } else if (value instanceof Value) {
+      writeJsonValue((Value) value, writer);
+    } else if (value instanceof String) {
+      writer.value((String) value);
+    } else if (value instanceof Boolean) {
+      writer.value((Boolean) value);
+    } else if (value instanceof Number) {
+      writer.value((Number) value);
+    } else if (value instanceof Iterable<?>) {
+      writer.beginArray();
+      for (Object item : (Iterable<?>) value) {
+        writeJsonValue(item, writer);
+      }
+      writer.endArray();
+    } else if (value instanceof Struct) {
+      writeJsonValue(((Struct) value).getFieldsMap(), writer);
+    } else if (value == null) {
+      writer.nullValue();
+    } else {
+      throw new IllegalArgumentException("Cannot convert " + value + " to JSON");
+    }
+  }
+
+  private static void writeJsonValue(Value value, JsonWriter writer) throws IOException {
+    switch (value.getKindCase()) {
+      case STRUCT_VALUE:
+        writeJsonValue(value.getStructValue().getFieldsMap(), writer);
+        break;
+      case LIST_VALUE:
+        writeJsonValue(value.getListValue().getValuesList(), writer);
+        break;
+      case BOOL_VALUE:
+        writer.value(value.getBoolValue());
+        break;
+      case NUMBER_VALUE:
+        writer.value(value.getNumberValue());
+        break;
+      case STRING_VALUE:
+        writer.value(value.getStringValue());
+        break;
+      default:
+        writer.nullValue();
+    }
+  }
+}
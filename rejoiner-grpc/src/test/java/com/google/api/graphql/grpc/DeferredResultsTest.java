@@ -0,0 +1,89 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import graphql.Directives;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.Scalars;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DeferredResults}. */
+@RunWith(JUnit4.class)
+public final class DeferredResultsTest {
+
+  private static final GraphQL GRAPHQL =
+      GraphQL.newGraphQL(
+              GraphQLSchema.newSchema()
+                  .query(
+                      GraphQLObjectType.newObject()
+                          .name("Query")
+                          .field(
+                              GraphQLFieldDefinition.newFieldDefinition()
+                                  .name("hello")
+                                  .type(Scalars.GraphQLString)
+                                  .dataFetcher(env -> "world"))
+                          .field(
+                              GraphQLFieldDefinition.newFieldDefinition()
+                                  .name("slow")
+                                  .type(Scalars.GraphQLString)
+                                  .dataFetcher(env -> "later")))
+                  .additionalDirective(Directives.DeferDirective)
+                  .build())
+          .build();
+
+  @Test
+  public void getWithoutDeferredFieldsShouldReturnNull() {
+    ExecutionResult result = GRAPHQL.execute("{ hello slow }");
+    assertThat(DeferredResults.get(result)).isNull();
+  }
+
+  @Test
+  public void getShouldReturnDeferredResults() {
+    ExecutionResult result = GRAPHQL.execute("{ hello slow @defer }");
+    assertThat(DeferredResults.get(result)).isNotNull();
+    assertThat(DeferredResults.extensionsWithoutDeferredResults(result)).isNull();
+    assertThat(result.<Object>getData()).isEqualTo(mapOf("hello", "world", "slow", null));
+  }
+
+  @Test
+  public void mergeShouldSetDeferredFields() {
+    ExecutionResult result = GRAPHQL.execute("{ hello slow @defer }");
+
+    ExecutionResult merged = DeferredResults.merge(result).join();
+
+    assertThat(merged.<Object>getData())
+        .isEqualTo(ImmutableMap.of("hello", "world", "slow", "later"));
+    assertThat(merged.getErrors()).isEmpty();
+    assertThat(DeferredResults.get(merged)).isNull();
+  }
+
+  private static Map<String, Object> mapOf(String k1, Object v1, String k2, Object v2) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put(k1, v1);
+    map.put(k2, v2);
+    return map;
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.graphql.rejoiner.TestProto;
+import com.google.api.graphql.rejoiner.TestProto.Proto1;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.truth.Truth;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.Timestamp;
+import graphql.ExecutionResultImpl;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DynamicProtoUtil}. */
+@RunWith(JUnit4.class)
+public final class DynamicProtoUtilTest {
+
+  private static final FileDescriptorProto OPERATION_FILE =
+      FileDescriptorProto.newBuilder()
+          .setName("operation.proto")
+          .setSyntax("proto3")
+          .addDependency(TestProto.getDescriptor().getName())
+          .addDependency(Timestamp.getDescriptor().getFile().getName())
+          .addMessageType(
+              DescriptorProto.newBuilder()
+                  .setName("GetProtoRequest")
+                  .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_STRING, null)))
+          .addMessageType(
+              DescriptorProto.newBuilder()
+                  .setName("GetProtoResponse")
+                  .addField(
+                      field(
+                          "proto1",
+                          1,
+                          FieldDescriptorProto.Type.TYPE_MESSAGE,
+                          "." + Proto1.getDescriptor().getFullName()))
+                  .addField(
+                      field(
+                          "created",
+                          2,
+                          FieldDescriptorProto.Type.TYPE_MESSAGE,
+                          ".google.protobuf.Timestamp")))
+          .build();
+
+  /** The operation file comes first, so its dependencies are built on demand. */
+  private static FileDescriptorSet createFileDescriptorSet() {
+    return FileDescriptorSet.newBuilder()
+        .addFile(OPERATION_FILE)
+        .addFile(TestProto.getDescriptor().toProto())
+        .build();
+  }
+
+  private static FieldDescriptorProto field(
+      String name, int number, FieldDescriptorProto.Type type, String typeName) {
+    FieldDescriptorProto.Builder field =
+        FieldDescriptorProto.newBuilder()
+            .setName(name)
+            .setNumber(number)
+            .setType(type)
+            .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+    if (typeName != null) {
+      field.setTypeName(typeName);
+    }
+    return field.build();
+  }
+
+  @Test
+  public void encodeResponseShouldResolveDependencies() throws Exception {
+    ByteString encoded =
+        DynamicProtoUtil.encodeResponse(
+            "GetProto",
+            createFileDescriptorSet(),
+            ExecutionResultImpl.newExecutionResult()
+                .data(ImmutableMap.of("proto1", ImmutableMap.of("id", "abc")))
+                .build());
+
+    Descriptor responseType =
+        DynamicProtoUtil.getResponseDescriptor("GetProto", createFileDescriptorSet());
+    DynamicMessage response = DynamicMessage.parseFrom(responseType, encoded);
+    Truth.assertThat(
+            response.getField(responseType.findFieldByName("proto1")).toString().trim())
+        .isEqualTo("id: \"abc\"");
+  }
+
+  @Test
+  public void decodeVariablesShouldReturnMap() {
+    Descriptor requestType =
+        DynamicProtoUtil.getRequestDescriptor("GetProto", createFileDescriptorSet());
+    ByteString request =
+        DynamicMessage.newBuilder(requestType)
+            .setField(requestType.findFieldByName("id"), "abc")
+            .build()
+            .toByteString();
+
+    Map<String, Object> variables =
+        DynamicProtoUtil.decodeVariables("GetProto", createFileDescriptorSet(), request);
+
+    Truth.assertThat(variables).containsExactly("id", "abc");
+  }
+
+  @Test
+  public void descriptorsShouldBeCachedForEqualSets() {
+    Truth.assertThat(DynamicProtoUtil.getResponseDescriptor("GetProto", createFileDescriptorSet()))
+        .isSameInstanceAs(
+            DynamicProtoUtil.getResponseDescriptor("GetProto", createFileDescriptorSet()));
+  }
+
+  @Test
+  public void unknownOperationShouldFail() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> DynamicProtoUtil.getResponseDescriptor("Unknown", createFileDescriptorSet()));
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.api.graphql.ErrorType;
+import com.google.api.graphql.GraphqlRequest;
+import com.google.api.graphql.GraphqlResponse;
+import com.google.common.truth.Truth;
+import com.google.common.truth.extensions.proto.ProtoTruth;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import graphql.Scalars;
+import graphql.schema.GraphQLArgument;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link GraphQlService}. */
+@RunWith(JUnit4.class)
+public final class GraphQlServiceTest {
+
+  private static final GraphQLSchema SCHEMA =
+      GraphQLSchema.newSchema()
+          .query(
+              GraphQLObjectType.newObject()
+                  .name("Query")
+                  .field(
+                      GraphQLFieldDefinition.newFieldDefinition()
+                          .name("hello")
+                          .argument(
+                              GraphQLArgument.newArgument()
+                                  .name("name")
+                                  .type(Scalars.GraphQLString))
+                          .type(Scalars.GraphQLString)
+                          .dataFetcher(
+                              environment -> "Hello " + environment.getArgument("name"))))
+          .build();
+
+  private Server server;
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(GraphQlService.create(SCHEMA))
+            .build()
+            .start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void executeShouldReturnDataAsStruct() {
+    GraphqlResponse response =
+        ClientCalls.blockingUnaryCall(
+            channel,
+            GraphQlService.EXECUTE_METHOD,
+            CallOptions.DEFAULT,
+            GraphqlRequest.newBuilder()
+                .setQuery("query Greet($name: String) { hello(name: $name) }")
+                .setVariables(
+                    Struct.newBuilder()
+                        .putFields("name", Value.newBuilder().setStringValue("world").build()))
+                .build());
+
+    ProtoTruth.assertThat(response.getData())
+        .isEqualTo(
+            Struct.newBuilder()
+                .putFields("hello", Value.newBuilder().setStringValue("Hello world").build())
+                .build());
+    Truth.assertThat(response.getErrorsList()).isEmpty();
+  }
+
+  @Test
+  public void executeShouldReturnValidationErrors() {
+    GraphqlResponse response =
+        ClientCalls.blockingUnaryCall(
+            channel,
+            GraphQlService.EXECUTE_METHOD,
+            CallOptions.DEFAULT,
+            GraphqlRequest.newBuilder().setQuery("{ goodbye }").build());
+
+    Truth.assertThat(response.hasData()).isFalse();
+    Truth.assertThat(response.getErrors(0).getType()).isEqualTo(ErrorType.VALIDATION_ERROR);
+  }
+
+  @Test
+  public void serverMethodShouldParseResponses() throws Exception {
+    @SuppressWarnings("unchecked")
+    MethodDescriptor<GraphqlRequest, Object> method =
+        (MethodDescriptor<GraphqlRequest, Object>)
+            GraphQlService.create(SCHEMA)
+                .bindService()
+                .getMethod(GraphQlService.EXECUTE_METHOD.getFullMethodName())
+                .getMethodDescriptor();
+
+    Object response =
+        ClientCalls.blockingUnaryCall(
+            channel,
+            method,
+            CallOptions.DEFAULT,
+            GraphqlRequest.newBuilder().setQuery("{ hello(name: \"world\") }").build());
+
+    ProtoTruth.assertThat(GraphqlResponse.parseFrom(method.streamResponse(response)).getData())
+        .isEqualTo(
+            Struct.newBuilder()
+                .putFields("hello", Value.newBuilder().setStringValue("Hello world").build())
+                .build());
+  }
+}
@@ -0,0 +1,142 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Value;
+import graphql.Scalars;
+import graphql.execution.ExecutionPath;
+import graphql.execution.ExecutionStepInfo;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link GraphQlStreamObserver}. */
+@RunWith(JUnit4.class)
+public final class GraphQlStreamObserverTest {
+
+  private final List<Throwable> errors = new ArrayList<>();
+
+  @SuppressWarnings("unchecked")
+  private final RejoinerStreamingContext<Object> context =
+      RejoinerStreamingContext.create(
+          new StreamObserver<Object>() {
+            @Override
+            public void onNext(Object value) {}
+
+            @Override
+            public void onError(Throwable t) {
+              errors.add(t);
+            }
+
+            @Override
+            public void onCompleted() {}
+          });
+
+  private GraphQlStreamObserver<Value, Value> newObserver(String field) {
+    DataFetchingEnvironment environment =
+        DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+            .executionStepInfo(
+                ExecutionStepInfo.newExecutionStepInfo()
+                    .type(Scalars.GraphQLString)
+                    .path(ExecutionPath.rootPath().segment(field))
+                    .build())
+            .context(context)
+            .build();
+    return new GraphQlStreamObserver<Value, Value>(environment) {
+      @Override
+      protected Value getData(Value value, ListValue path) {
+        return value;
+      }
+    };
+  }
+
+  @Test
+  public void onErrorShouldCancelOtherStreams() {
+    GraphQlStreamObserver<Value, Value> failing = newObserver("failing");
+    FakeClientCall failingCall = new FakeClientCall();
+    failing.beforeStart(failingCall);
+    GraphQlStreamObserver<Value, Value> sibling = newObserver("sibling");
+    FakeClientCall siblingCall = new FakeClientCall();
+    sibling.beforeStart(siblingCall);
+
+    Throwable error = Status.UNAVAILABLE.asRuntimeException();
+    failing.onError(error);
+
+    assertThat(errors).containsExactly(error);
+    assertThat(siblingCall.cancelled).isTrue();
+    assertThat(failingCall.cancelled).isFalse();
+    assertThat(context.whenStreamsComplete().isCancelled()).isTrue();
+  }
+
+  @Test
+  public void onCompletedShouldNotCancelOtherStreams() {
+    GraphQlStreamObserver<Value, Value> completing = newObserver("completing");
+    completing.beforeStart(new FakeClientCall());
+    GraphQlStreamObserver<Value, Value> sibling = newObserver("sibling");
+    FakeClientCall siblingCall = new FakeClientCall();
+    sibling.beforeStart(siblingCall);
+
+    completing.onCompleted();
+
+    assertThat(siblingCall.cancelled).isFalse();
+    assertThat(context.whenStreamsComplete().isDone()).isFalse();
+  }
+
+  private static final class FakeClientCall extends ClientCallStreamObserver<Object> {
+    boolean cancelled;
+
+    @Override
+    public void cancel(@Nullable String message, @Nullable Throwable cause) {
+      cancelled = true;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {}
+
+    @Override
+    public void disableAutoInboundFlowControl() {}
+
+    @Override
+    public void request(int count) {}
+
+    @Override
+    public void setMessageCompression(boolean enable) {}
+
+    @Override
+    public void onNext(Object value) {}
+
+    @Override
+    public void onError(Throwable t) {}
+
+    @Override
+    public void onCompleted() {}
+  }
+}
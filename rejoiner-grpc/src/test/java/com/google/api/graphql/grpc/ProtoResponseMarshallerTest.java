@@ -0,0 +1,84 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.api.graphql.rejoiner.TestProto.Proto2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.truth.Truth;
+import com.google.common.truth.extensions.proto.ProtoTruth;
+import com.google.protobuf.Struct;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProtoResponseMarshaller}. */
+@RunWith(JUnit4.class)
+public final class ProtoResponseMarshallerTest {
+
+  private static final Map<String, Object> DATA =
+      ImmutableMap.of("innerId", "abc_inner", "enums", ImmutableList.of("FOO"));
+
+  private static final Proto2 EXPECTED =
+      Proto2.newBuilder().setInnerId("abc_inner").addEnums(Proto2.TestEnum.FOO).build();
+
+  private final ProtoResponseMarshaller marshaller =
+      ProtoResponseMarshaller.forDescriptor(Proto2.getDescriptor());
+
+  @Test
+  public void streamShouldDrainSerializedMessage() throws Exception {
+    InputStream stream = marshaller.stream(DATA);
+    Truth.assertThat(((KnownLength) stream).available()).isEqualTo(EXPECTED.getSerializedSize());
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    int drained = ((Drainable) stream).drainTo(output);
+
+    Truth.assertThat(drained).isEqualTo(EXPECTED.getSerializedSize());
+    ProtoTruth.assertThat(Proto2.parseFrom(output.toByteArray())).isEqualTo(EXPECTED);
+    Truth.assertThat(stream.read()).isEqualTo(-1);
+  }
+
+  @Test
+  public void streamShouldBeReadable() throws Exception {
+    byte[] bytes = ByteStreams.toByteArray(marshaller.stream(DATA));
+
+    ProtoTruth.assertThat(Proto2.parseFrom(bytes)).isEqualTo(EXPECTED);
+  }
+
+  @Test
+  public void parseShouldReturnResponseData() {
+    Map<String, Object> parsed = marshaller.parse(marshaller.stream(DATA));
+
+    Truth.assertThat(parsed).containsEntry("innerId", "abc_inner");
+  }
+
+  @Test
+  public void structMarshallerShouldRoundTrip() throws Exception {
+    ProtoResponseMarshaller structMarshaller = ProtoResponseMarshaller.forStruct();
+
+    byte[] bytes = ByteStreams.toByteArray(structMarshaller.stream(DATA));
+
+    ProtoTruth.assertThat(Struct.parseFrom(bytes))
+        .isEqualTo(QueryResponseToProtoJson.jsonToStruct(DATA));
+    Truth.assertThat(structMarshaller.parse(structMarshaller.stream(DATA)))
+        .containsEntry("innerId", "abc_inner");
+  }
+}
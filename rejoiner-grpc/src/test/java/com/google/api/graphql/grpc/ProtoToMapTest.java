@@ -0,0 +1,59 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.api.graphql.rejoiner.TestProto.Proto1;
+import com.google.api.graphql.rejoiner.TestProto.Proto2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.truth.Truth;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProtoToMap}. */
+@RunWith(JUnit4.class)
+public final class ProtoToMapTest {
+
+  @Test
+  public void messageToMapShouldContainSetFields() {
+    Map<String, Object> map =
+        ProtoToMap.messageToMap(
+            Proto1.newBuilder()
+                .setId("abc")
+                .setCamelCaseName(5L)
+                .setTestProto(
+                    Proto2.newBuilder()
+                        .setInnerId("inner")
+                        .addEnums(Proto2.TestEnum.FOO)
+                        .addEnums(Proto2.TestEnum.BAR))
+                .putMapField("a", "b")
+                .build());
+
+    Truth.assertThat(map)
+        .containsExactly(
+            "id",
+            "abc",
+            "testProto",
+            ImmutableMap.of("innerId", "inner", "enums", ImmutableList.of("FOO", "BAR")),
+            "camelCaseName",
+            5L,
+            "mapField",
+            ImmutableList.of(ImmutableMap.of("key", "a", "value", "b")));
+    Truth.assertThat(map).doesNotContainKey("intField");
+    Truth.assertThat(map.get("nameField")).isNull();
+  }
+}
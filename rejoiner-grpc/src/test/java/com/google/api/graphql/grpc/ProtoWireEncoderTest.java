@@ -0,0 +1,85 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.api.graphql.rejoiner.TestProto.Proto1;
+import com.google.api.graphql.rejoiner.TestProto.Proto2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.truth.Truth;
+import com.google.common.truth.extensions.proto.ProtoTruth;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProtoWireEncoder}. */
+@RunWith(JUnit4.class)
+public final class ProtoWireEncoderTest {
+
+  private static final Map<String, Object> DATA =
+      ImmutableMap.of(
+          "id",
+          "abc",
+          "intField",
+          123,
+          "testProto",
+          ImmutableMap.of("innerId", "abc_inner", "enums", ImmutableList.of("FOO", "BAR")),
+          "testInnerProto",
+          ImmutableMap.of("foo", ""),
+          "RenamedField",
+          "renamed");
+
+  @Test
+  public void encodeShouldMatchSerializedMessage() throws Exception {
+    ByteString encoded = ProtoWireEncoder.forDescriptor(Proto1.getDescriptor()).encode(DATA);
+
+    Proto1 expected = QueryResponseToProto.buildMessage(Proto1.getDefaultInstance(), DATA);
+    ProtoTruth.assertThat(Proto1.parseFrom(encoded)).isEqualTo(expected);
+    Truth.assertThat(encoded.size()).isEqualTo(expected.getSerializedSize());
+  }
+
+  @Test
+  public void encodeShouldSkipDefaultValues() {
+    ByteString encoded =
+        ProtoWireEncoder.forDescriptor(Proto2.getDescriptor())
+            .encode(ImmutableMap.of("innerId", "", "enums", ImmutableList.of()));
+
+    Truth.assertThat(encoded).isEqualTo(ByteString.EMPTY);
+  }
+
+  @Test
+  public void writeToShouldMatchEncode() throws Exception {
+    ProtoWireEncoder encoder = ProtoWireEncoder.forDescriptor(Proto1.getDescriptor());
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    encoder.writeTo(DATA, output);
+
+    Truth.assertThat(ByteString.copyFrom(output.toByteArray())).isEqualTo(encoder.encode(DATA));
+  }
+
+  @Test
+  public void preparedEncodingShouldBeWritableMoreThanOnce() {
+    ProtoWireEncoder encoder = ProtoWireEncoder.forDescriptor(Proto1.getDescriptor());
+    PreparedEncoding encoding = encoder.prepare(DATA);
+
+    byte[] first = encoding.toByteArray();
+
+    Truth.assertThat(encoding.toByteArray()).isEqualTo(first);
+    Truth.assertThat(ByteString.copyFrom(first)).isEqualTo(encoder.encode(DATA));
+  }
+}
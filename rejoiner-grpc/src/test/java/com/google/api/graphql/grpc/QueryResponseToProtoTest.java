@@ -14,12 +14,16 @@
 
 package com.google.api.graphql.grpc;
 
+import static org.junit.Assert.assertThrows;
+
 import com.google.api.graphql.rejoiner.TestProto;
 import com.google.api.graphql.rejoiner.TestProto.Proto1;
 import com.google.api.graphql.rejoiner.TestProto.Proto2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.truth.extensions.proto.ProtoTruth;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -50,4 +54,44 @@ public final class QueryResponseToProtoTest {
                         .addEnumsValue(Proto2.TestEnum.FOO_VALUE))
                 .build());
   }
+
+  @Test
+  public void buildMessageShouldUseJsonNamesAndSkipUnknownKeys() {
+    Map<String, Object> fields = new HashMap<>();
+    fields.put("RenamedField", "renamed");
+    fields.put("camelCaseName", 5L);
+    fields.put("intField", 7);
+    fields.put("__typename", "Proto1");
+    fields.put("id", null);
+    ProtoTruth.assertThat(
+            QueryResponseToProto.buildMessage(Proto1.getDefaultInstance(), fields))
+        .isEqualTo(
+            Proto1.newBuilder()
+                .setNameField("renamed")
+                .setCamelCaseName(5L)
+                .setIntField(7L)
+                .build());
+  }
+
+  @Test
+  public void buildMessageShouldConvertEnumNamesAndNumbers() {
+    ProtoTruth.assertThat(
+            QueryResponseToProto.buildMessage(
+                Proto2.getDefaultInstance(),
+                ImmutableMap.of("enums", ImmutableList.of("FOO", 2))))
+        .isEqualTo(
+            Proto2.newBuilder()
+                .addEnums(Proto2.TestEnum.FOO)
+                .addEnums(Proto2.TestEnum.BAR)
+                .build());
+  }
+
+  @Test
+  public void buildMessageShouldRejectUnknownEnumNames() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            QueryResponseToProto.buildMessage(
+                Proto2.getDefaultInstance(), ImmutableMap.of("enums", ImmutableList.of("BAZ"))));
+  }
 }
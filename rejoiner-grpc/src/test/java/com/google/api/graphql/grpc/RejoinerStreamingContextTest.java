@@ -0,0 +1,155 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RejoinerStreamingContext}. */
+@RunWith(JUnit4.class)
+public final class RejoinerStreamingContextTest {
+
+  @SuppressWarnings("unchecked")
+  private final RejoinerStreamingContext<Object> context =
+      RejoinerStreamingContext.create(
+          new StreamObserver<Object>() {
+            @Override
+            public void onNext(Object value) {}
+
+            @Override
+            public void onError(Throwable t) {}
+
+            @Override
+            public void onCompleted() {}
+          });
+
+  @Test
+  public void whenStreamsCompleteWithoutStreamsShouldBeDone() {
+    assertThat(context.whenStreamsComplete().isDone()).isTrue();
+  }
+
+  @Test
+  public void whenStreamsCompleteShouldCompleteAfterLastStream() {
+    context.startStream();
+    context.startStream();
+    CompletableFuture<Void> completed = context.whenStreamsComplete();
+
+    context.completeStream();
+    assertThat(completed.isDone()).isFalse();
+    context.completeStream();
+    assertThat(completed.isDone()).isTrue();
+    assertThat(completed.isCompletedExceptionally()).isFalse();
+  }
+
+  @Test
+  public void cancelShouldFailCompletionAndRunListeners() {
+    AtomicInteger cancellations = new AtomicInteger();
+    context.startStream();
+    context.addCancellationListener(cancellations::incrementAndGet);
+
+    context.cancel();
+
+    assertThat(context.isCancelled()).isTrue();
+    assertThat(context.whenStreamsComplete().isCancelled()).isTrue();
+    assertThat(cancellations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void addCancellationListenerAfterCancelShouldRunImmediately() {
+    AtomicInteger cancellations = new AtomicInteger();
+    context.cancel();
+
+    context.addCancellationListener(cancellations::incrementAndGet);
+
+    assertThat(cancellations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void createShouldBindToServerCall() {
+    FakeServerCall serverCall = new FakeServerCall();
+    RejoinerStreamingContext<?> boundContext = RejoinerStreamingContext.create(serverCall);
+    AtomicInteger readyCount = new AtomicInteger();
+    boundContext.addOnReadyListener(readyCount::incrementAndGet);
+
+    serverCall.ready = false;
+    assertThat(boundContext.isReady()).isFalse();
+    serverCall.ready = true;
+    serverCall.onReadyHandler.run();
+    assertThat(boundContext.isReady()).isTrue();
+    assertThat(readyCount.get()).isEqualTo(1);
+
+    serverCall.onCancelHandler.run();
+    assertThat(boundContext.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void isReadyWithoutServerCallShouldBeTrue() {
+    assertThat(context.isReady()).isTrue();
+  }
+
+  private static final class FakeServerCall extends ServerCallStreamObserver<Object> {
+    boolean ready = true;
+    Runnable onReadyHandler;
+    Runnable onCancelHandler;
+
+    @Override
+    public boolean isReady() {
+      return ready;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {
+      this.onReadyHandler = onReadyHandler;
+    }
+
+    @Override
+    public void setOnCancelHandler(Runnable onCancelHandler) {
+      this.onCancelHandler = onCancelHandler;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public void setCompression(String compression) {}
+
+    @Override
+    public void disableAutoInboundFlowControl() {}
+
+    @Override
+    public void request(int count) {}
+
+    @Override
+    public void setMessageCompression(boolean enable) {}
+
+    @Override
+    public void onNext(Object value) {}
+
+    @Override
+    public void onError(Throwable t) {}
+
+    @Override
+    public void onCompleted() {}
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.graphql.GraphqlResponse;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Value;
+import io.grpc.stub.StreamObserver;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link StreamCoalescer}. */
+@RunWith(JUnit4.class)
+public final class StreamCoalescerTest {
+
+  private final List<GraphqlResponse> sent = new CopyOnWriteArrayList<>();
+  private final CountDownLatch firstSend = new CountDownLatch(1);
+  private final StreamObserver<GraphqlResponse> responseObserver =
+      new StreamObserver<GraphqlResponse>() {
+        @Override
+        public void onNext(GraphqlResponse value) {
+          sent.add(value);
+          firstSend.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {}
+
+        @Override
+        public void onCompleted() {}
+      };
+
+  @Test
+  public void bufferShouldSendWhenMaxResponsesArePending() {
+    StreamCoalescer.Buffer<GraphqlResponse> buffer =
+        StreamCoalescer.forGraphqlResponses()
+            .maxDelay(Duration.ofHours(1))
+            .maxResponses(2)
+            .build()
+            .newBuffer(responseObserver);
+
+    buffer.add(response(1));
+    assertThat(sent).isEmpty();
+    buffer.add(response(2));
+
+    assertThat(sent)
+        .containsExactly(
+            GraphqlResponse.newBuilder()
+                .addIncremental(response(1))
+                .addIncremental(response(2))
+                .build());
+  }
+
+  @Test
+  public void bufferShouldSendWhenMaxBytesArePending() {
+    StreamCoalescer.Buffer<GraphqlResponse> buffer =
+        StreamCoalescer.forGraphqlResponses()
+            .maxDelay(Duration.ofHours(1))
+            .maxBytes(1)
+            .build()
+            .newBuffer(responseObserver);
+
+    buffer.add(response(1));
+
+    assertThat(sent).containsExactly(response(1));
+  }
+
+  @Test
+  public void flushShouldSendPendingResponses() {
+    StreamCoalescer.Buffer<GraphqlResponse> buffer =
+        StreamCoalescer.forGraphqlResponses()
+            .maxDelay(Duration.ofHours(1))
+            .build()
+            .newBuffer(responseObserver);
+
+    buffer.flush();
+    assertThat(sent).isEmpty();
+    buffer.add(response(1));
+    buffer.add(response(2));
+    buffer.flush();
+
+    assertThat(sent).hasSize(1);
+    assertThat(sent.get(0).getIncrementalList()).containsExactly(response(1), response(2));
+  }
+
+  @Test
+  public void bufferShouldSendAfterMaxDelay() throws InterruptedException {
+    StreamCoalescer.Buffer<GraphqlResponse> buffer =
+        StreamCoalescer.forGraphqlResponses()
+            .maxDelay(Duration.ofMillis(1))
+            .build()
+            .newBuffer(responseObserver);
+
+    buffer.add(response(1));
+
+    assertThat(firstSend.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(sent).containsExactly(response(1));
+  }
+
+  @Test
+  public void buildShouldRejectInvalidLimits() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> StreamCoalescer.forGraphqlResponses().maxResponses(0).build());
+  }
+
+  private static GraphqlResponse response(int index) {
+    return GraphqlResponse.newBuilder()
+        .setPath(ListValue.newBuilder().addValues(Value.newBuilder().setNumberValue(index)))
+        .build();
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.truth.Truth;
+import com.google.protobuf.Struct;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link StructUtil}. */
+@RunWith(JUnit4.class)
+public final class StructUtilTest {
+
+  @Test
+  public void asMapShouldViewNestedValues() {
+    Map<String, Object> json =
+        ImmutableMap.of(
+            "string",
+            "value",
+            "number",
+            1.5,
+            "struct",
+            ImmutableMap.of("bool", true),
+            "list",
+            Arrays.asList(ImmutableList.of("nested"), null));
+    Struct struct = QueryResponseToProtoJson.jsonToStruct(json);
+
+    Truth.assertThat(StructUtil.asMap(struct)).isEqualTo(json);
+  }
+}
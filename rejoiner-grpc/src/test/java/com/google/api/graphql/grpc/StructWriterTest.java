@@ -0,0 +1,64 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.truth.Truth;
+import com.google.common.truth.extensions.proto.ProtoTruth;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link StructWriter}. */
+@RunWith(JUnit4.class)
+public final class StructWriterTest {
+
+  private static final Map<String, Object> JSON =
+      ImmutableMap.of(
+          "book",
+          ImmutableMap.of(
+              "title",
+              "Rejoiner",
+              "pages",
+              42,
+              "available",
+              true,
+              "tags",
+              Arrays.asList("graphql", null, ImmutableMap.of("nested", 1.5))),
+          "extra",
+          Value.newBuilder().setStringValue("value").build(),
+          "empty",
+          ImmutableList.of());
+
+  @Test
+  public void toByteStringShouldMatchStruct() throws Exception {
+    ProtoTruth.assertThat(Struct.parseFrom(StructWriter.toByteString(JSON)))
+        .isEqualTo(QueryResponseToProtoJson.jsonToStruct(JSON));
+  }
+
+  @Test
+  public void toJsonShouldWriteJson() {
+    Truth.assertThat(StructWriter.toJson(JSON))
+        .isEqualTo(
+            "{\"book\":{\"title\":\"Rejoiner\",\"pages\":42,\"available\":true,"
+                + "\"tags\":[\"graphql\",null,{\"nested\":1.5}]},"
+                + "\"extra\":\"value\",\"empty\":[]}");
+  }
+}
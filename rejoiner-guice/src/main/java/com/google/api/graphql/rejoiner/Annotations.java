@@ -26,4 +26,12 @@ final class Annotations {
   @Retention(RetentionPolicy.RUNTIME)
   @Qualifier
   @interface SchemaBundles {}
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Qualifier
+  @interface CombinedSchemaBundle {}
+
+  @Retention(RetentionPolicy.RUNTIME)
+  @Qualifier
+  @interface BatchLoaders {}
 }
@@ -0,0 +1,100 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link CompletableFuture} that completes with a GAX {@code ApiFuture}, without depending on
+ * GAX.
+ *
+ * <p>The adapter is itself the listener registered on the ApiFuture, through a method handle
+ * resolved once per ApiFuture class, so adapting a future allocates a single object. Cancelling
+ * the adapter cancels the ApiFuture.
+ */
+final class ApiFutureAdapter<T> extends CompletableFuture<T> implements Runnable {
+
+  private static final String API_FUTURE = "com.google.api.core.ApiFuture";
+
+  private static final MethodType ADD_LISTENER_TYPE =
+      MethodType.methodType(void.class, Object.class, Runnable.class, Executor.class);
+
+  private static final ClassValue<MethodHandle> ADD_LISTENER =
+      new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+          try {
+            Method addListener =
+                Class.forName(API_FUTURE, false, type.getClassLoader())
+                    .getMethod("addListener", Runnable.class, Executor.class);
+            return MethodHandles.publicLookup().unreflect(addListener).asType(ADD_LISTENER_TYPE);
+          } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(type.getName() + " is not an ApiFuture", e);
+          }
+        }
+      };
+
+  private final Future<T> apiFuture;
+
+  private ApiFutureAdapter(Future<T> apiFuture) {
+    this.apiFuture = apiFuture;
+  }
+
+  /** Adapts an object implementing {@code com.google.api.core.ApiFuture}. */
+  static <T> CompletableFuture<T> toCompletableFuture(Object apiFuture) {
+    @SuppressWarnings("unchecked")
+    ApiFutureAdapter<T> adapter = new ApiFutureAdapter<>((Future<T>) apiFuture);
+    try {
+      ADD_LISTENER
+          .get(apiFuture.getClass())
+          .invokeExact(apiFuture, (Runnable) adapter, MoreExecutors.directExecutor());
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalArgumentException(t);
+    }
+    return adapter;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    boolean cancelled = super.cancel(mayInterruptIfRunning);
+    if (cancelled) {
+      apiFuture.cancel(mayInterruptIfRunning);
+    }
+    return cancelled;
+  }
+
+  @Override
+  public void run() {
+    try {
+      complete(Futures.getDone(apiFuture));
+    } catch (ExecutionException e) {
+      completeExceptionally(e.getCause());
+    } catch (CancellationException e) {
+      cancel(false);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.common.base.Supplier;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+
+/**
+ * A method called through a method handle that's bound to its receiver on first use, such as a
+ * gRPC stub or a GAX callable resolved from the injector.
+ */
+final class BoundMethod {
+
+  /** The type of methods taking a request and returning a response. */
+  static final MethodType UNARY_CALL =
+      MethodType.methodType(Object.class, Object.class, Object.class);
+
+  /** The type of methods taking a request and an observer of the responses. */
+  static final MethodType OBSERVER_CALL =
+      MethodType.methodType(void.class, Object.class, Object.class, Object.class);
+
+  private final Supplier<?> receiver;
+  private final MethodHandle handle;
+  private volatile MethodHandle boundHandle;
+
+  /** Creates a method from a handle of type {@link #UNARY_CALL} or {@link #OBSERVER_CALL}. */
+  BoundMethod(Supplier<?> receiver, MethodHandle handle) {
+    this.receiver = receiver;
+    this.handle = handle;
+  }
+
+  private MethodHandle boundHandle() {
+    MethodHandle bound = boundHandle;
+    if (bound == null) {
+      bound = handle.bindTo(receiver.get());
+      boundHandle = bound;
+    }
+    return bound;
+  }
+
+  /** Calls a method of type {@link #UNARY_CALL}. */
+  Object call(Object request) {
+    try {
+      return (Object) boundHandle().invokeExact(request);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  /** Calls a method of type {@link #OBSERVER_CALL}. */
+  void call(Object request, Object responseObserver) {
+    try {
+      boundHandle().invokeExact(request, responseObserver);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+}
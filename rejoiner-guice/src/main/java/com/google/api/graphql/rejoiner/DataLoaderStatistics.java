@@ -0,0 +1,54 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.dataloader.stats.SimpleStatisticsCollector;
+import org.dataloader.stats.Statistics;
+import org.dataloader.stats.StatisticsCollector;
+
+/**
+ * Batch statistics of the DataLoaders provided by {@link SchemaProviderModule}, accumulated over
+ * all requests.
+ */
+@Singleton
+public final class DataLoaderStatistics {
+
+  private final ConcurrentMap<String, StatisticsCollector> collectors = new ConcurrentHashMap<>();
+
+  @Inject
+  DataLoaderStatistics() {}
+
+  StatisticsCollector collector(String name) {
+    return collectors.computeIfAbsent(name, ignored -> new SimpleStatisticsCollector());
+  }
+
+  /** Returns the statistics of the named DataLoader. */
+  public Statistics get(String name) {
+    StatisticsCollector collector = collectors.get(name);
+    return collector == null ? new Statistics() : collector.getStatistics();
+  }
+
+  /** Returns the statistics of each DataLoader by name. */
+  public ImmutableMap<String, Statistics> snapshot() {
+    ImmutableMap.Builder<String, Statistics> statistics = ImmutableMap.builder();
+    collectors.forEach((name, collector) -> statistics.put(name, collector.getStatistics()));
+    return statistics.build();
+  }
+}
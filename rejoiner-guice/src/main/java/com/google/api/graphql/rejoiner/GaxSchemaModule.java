@@ -1,5 +1,12 @@
 package com.google.api.graphql.rejoiner;
 
+import com.google.api.graphql.execution.Hedger;
+import com.google.api.graphql.execution.ResponseCache;
+import com.google.api.graphql.execution.SingleFlight;
+import com.google.api.graphql.grpc.FieldMaskInjector;
+import com.google.api.graphql.grpc.ResponseProjection;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Provider;
@@ -8,67 +15,82 @@ import com.google.protobuf.Message;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLNonNull;
 import graphql.schema.GraphQLOutputType;
-import java.lang.reflect.InvocationTargetException;
+import io.grpc.Context;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
  * SchemaModule that generates queries and mutations for GAX gRPC clients, such as the Google Cloud
  * Platform APIs.
+ *
+ * <p>Unary callables become fields returning the response, and server-streaming callables become
+ * fields returning the list of responses. {@link #serviceToPagedFields} uses the paged callables
+ * of list methods instead, returning the resources of up to {@link RpcOptions#maxPages} pages.
+ *
+ * <p>Each callable is resolved from the client once, on the first call, and called directly. GAX
+ * is only required at runtime. Concurrent calls of {@link RpcOptions#idempotent} methods with the
+ * same request share a single call, slow calls are hedged with {@link
+ * RpcOptions#hedgingPercentile}, and responses are cached with {@link RpcOptions#cacheTtl}.
  */
 public abstract class GaxSchemaModule extends SchemaModule {
 
+  private static final String SERVER_STREAMING_CALLABLE =
+      "com.google.api.gax.rpc.ServerStreamingCallable";
+  private static final String RESPONSE_OBSERVER = "com.google.api.gax.rpc.ResponseObserver";
+
+  protected ImmutableList<GraphQLFieldDefinition> serviceToFields(
+      Class<?> client, ImmutableList<String> methodWhitelist) {
+    return serviceToFields(client, methodWhitelist, RpcOptions.defaultOptions());
+  }
+
   protected ImmutableList<GraphQLFieldDefinition> serviceToFields(
+      Class<?> client, ImmutableList<String> methodWhitelist, RpcOptions rpcOptions) {
+    return methodsToFields(client, methodWhitelist, rpcOptions, false);
+  }
+
+  /**
+   * Returns fields for the paged callables of list methods, such as {@code listDocuments}, which
+   * return the resources of the pages from the page token of the request, of its page size. Pages
+   * are fetched one after another, up to {@link RpcOptions#maxPages}.
+   */
+  protected ImmutableList<GraphQLFieldDefinition> serviceToPagedFields(
       Class<?> client, ImmutableList<String> methodWhitelist) {
-    return getMethods(client, methodWhitelist)
+    return serviceToPagedFields(client, methodWhitelist, RpcOptions.defaultOptions());
+  }
+
+  protected ImmutableList<GraphQLFieldDefinition> serviceToPagedFields(
+      Class<?> client, ImmutableList<String> methodWhitelist, RpcOptions rpcOptions) {
+    return methodsToFields(client, methodWhitelist, rpcOptions, true);
+  }
+
+  private ImmutableList<GraphQLFieldDefinition> methodsToFields(
+      Class<?> client,
+      ImmutableList<String> methodWhitelist,
+      RpcOptions rpcOptions,
+      boolean paged) {
+    Provider<?> service = getProvider(client);
+    Supplier<Object> clientInstance = Suppliers.memoize(service::get);
+    String suffix = paged ? "PagedCallable" : "Callable";
+
+    return getMethods(client, methodWhitelist, suffix)
         .map(
-            methodWrapper -> {
+            method -> {
               try {
-                methodWrapper.setAccessible(true);
-                /* com.google.api.gax.rpc.UnaryCallable<Req, Resp> */
-                ParameterizedType callable =
-                    (ParameterizedType) methodWrapper.getGenericReturnType();
-                GraphQLOutputType responseType = getReturnType(callable);
-                Class<? extends Message> requestMessageClass =
-                    (Class<? extends Message>) callable.getActualTypeArguments()[0];
-                Descriptors.Descriptor requestDescriptor =
-                    (Descriptors.Descriptor)
-                        requestMessageClass.getMethod("getDescriptor").invoke(null);
-                Message requestMessage =
-                    ((Message.Builder) requestMessageClass.getMethod("newBuilder").invoke(null))
-                        .buildPartial();
-                Provider<?> service = getProvider(client);
-
-                GqlInputConverter inputConverter =
-                    GqlInputConverter.newBuilder().add(requestDescriptor.getFile()).build();
-
-                DataFetcher dataFetcher =
-                    (DataFetchingEnvironment env) -> {
-                      Message input =
-                          inputConverter.createProtoBuf(
-                              requestDescriptor,
-                              requestMessage.toBuilder(),
-                              env.getArgument("input"));
-                      try {
-                        Object callableInstance = methodWrapper.invoke(service.get());
-                        Method method =
-                            callableInstance.getClass().getMethod("futureCall", Object.class);
-                        method.setAccessible(true);
-                        Object[] methodParameterValues = new Object[] {input};
-                        return method.invoke(callableInstance, methodParameterValues);
-                      } catch (Exception e) {
-                        throw new RuntimeException(e);
-                      }
-                    };
-
-                return GraphQLFieldDefinition.newFieldDefinition()
-                    .name(transformName(methodWrapper.getName()))
-                    .argument(GqlInputConverter.createArgument(requestDescriptor, "input"))
-                    .type(responseType)
-                    .dataFetcher(dataFetcher)
-                    .build();
+                return methodToField(clientInstance, method, suffix, rpcOptions, paged);
+              } catch (RuntimeException e) {
+                throw e;
               } catch (Exception e) {
                 throw new RuntimeException(e);
               }
@@ -76,11 +98,137 @@ public abstract class GaxSchemaModule extends SchemaModule {
         .collect(ImmutableList.toImmutableList());
   }
 
-  private Stream<Method> getMethods(Class<?> clientClass, ImmutableList<String> methodWhitelist) {
+  private GraphQLFieldDefinition methodToField(
+      Supplier<Object> clientInstance,
+      Method method,
+      String suffix,
+      RpcOptions rpcOptions,
+      boolean paged)
+      throws ReflectiveOperationException {
+    method.setAccessible(true);
+    Supplier<Object> callable =
+        Suppliers.memoize(
+            () -> {
+              try {
+                return method.invoke(clientInstance.get());
+              } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    Class<?> callableClass = method.getReturnType();
+    boolean streaming = callableClass.getName().equals(SERVER_STREAMING_CALLABLE);
+
+    /* com.google.api.gax.rpc.UnaryCallable<Req, Resp> */
+    ParameterizedType callableType = (ParameterizedType) method.getGenericReturnType();
+    Type responseType = callableType.getActualTypeArguments()[1];
+    PagedResponses pagedResponses = null;
+    if (paged) {
+      pagedResponses = new PagedResponses((Class<?>) responseType, rpcOptions.maxPages());
+      /* com.google.api.gax.paging.AbstractPagedListResponse<Req, Resp, Resource, Page, Coll> */
+      responseType =
+          ((ParameterizedType) ((Class<?>) responseType).getGenericSuperclass())
+              .getActualTypeArguments()[2];
+    }
+    Descriptors.Descriptor responseDescriptor = getDescriptor(responseType);
+    addExtraType(responseDescriptor);
+    GraphQLOutputType fieldType = ProtoToGql.getReference(responseDescriptor);
+    if (streaming || paged) {
+      fieldType = new GraphQLList(new GraphQLNonNull(fieldType));
+    }
+
+    @SuppressWarnings("unchecked")
+    Class<? extends Message> requestMessageClass =
+        (Class<? extends Message>) callableType.getActualTypeArguments()[0];
+    Descriptors.Descriptor requestDescriptor = getDescriptor(requestMessageClass);
+    Message requestMessage =
+        ((Message.Builder) requestMessageClass.getMethod("newBuilder").invoke(null))
+            .buildPartial();
+    GqlInputConverter inputConverter =
+        GqlInputConverter.newBuilder().add(requestDescriptor.getFile()).build();
+    FieldMaskInjector fieldMaskInjector =
+        rpcOptions.hasFieldMask()
+                && FieldMaskInjector.hasFieldMask(requestDescriptor, rpcOptions.fieldMaskName())
+            ? FieldMaskInjector.create(
+                requestDescriptor, rpcOptions.fieldMaskName(), responseDescriptor)
+            : null;
+    ResponseProjection responseProjection =
+        rpcOptions.pruneResponses() ? ResponseProjection.create(responseDescriptor) : null;
+
+    BoundMethod call;
+    Class<?> responseObserverClass = null;
+    if (streaming) {
+      responseObserverClass =
+          Class.forName(RESPONSE_OBSERVER, false, callableClass.getClassLoader());
+      call =
+          new BoundMethod(
+              callable,
+              MethodHandles.publicLookup()
+                  .unreflect(callableClass.getMethod("call", Object.class, responseObserverClass))
+                  .asType(BoundMethod.OBSERVER_CALL));
+    } else {
+      call =
+          new BoundMethod(
+              callable,
+              MethodHandles.publicLookup()
+                  .unreflect(callableClass.getMethod("futureCall", Object.class))
+                  .asType(BoundMethod.UNARY_CALL));
+    }
+    Class<?> observerClass = responseObserverClass;
+    PagedResponses pages = pagedResponses;
+    Function<Message, CompletableFuture<?>> fetch;
+    if (streaming) {
+      fetch =
+          input -> {
+            ResponsesObserver responses = new ResponsesObserver();
+            call.call(input, responses.newProxy(observerClass));
+            return responses.future;
+          };
+    } else if (pages != null) {
+      fetch = input -> pages.collect(ApiFutureAdapter.toCompletableFuture(call.call(input)));
+    } else {
+      fetch = input -> ApiFutureAdapter.toCompletableFuture(call.call(input));
+    }
+    Hedger hedger = rpcOptions.newHedger();
+    Function<Message, CompletableFuture<?>> send =
+        hedger == null ? fetch : input -> hedger.<Object>call(() -> fetch.apply(input));
+    SingleFlight<Object> singleFlight = rpcOptions.idempotent() ? new SingleFlight<>() : null;
+    ResponseCache<Object> responseCache = rpcOptions.newResponseCache();
+    if (responseCache != null) {
+      addResponseCache(transformName(method.getName(), suffix), responseCache);
+    }
+
+    DataFetcher<?> dataFetcher =
+        (DataFetchingEnvironment env) -> {
+          Message arguments =
+              inputConverter.createProtoBuf(
+                  requestDescriptor, requestMessage.toBuilder(), env.getArgument("input"));
+          Message input =
+              fieldMaskInjector == null ? arguments : fieldMaskInjector.inject(arguments, env);
+          CompletableFuture<?> response;
+          if (responseCache != null) {
+            response = responseCache.get(input, () -> send.apply(input));
+          } else if (singleFlight != null) {
+            response = singleFlight.execute(input, () -> send.apply(input));
+          } else {
+            response = send.apply(input);
+          }
+          return responseProjection == null ? response : responseProjection.project(response, env);
+        };
+
+    return GraphQLFieldDefinition.newFieldDefinition()
+        .name(transformName(method.getName(), suffix))
+        .argument(GqlInputConverter.createArgument(requestDescriptor, "input"))
+        .type(fieldType)
+        .dataFetcher(dataFetcher)
+        .build();
+  }
+
+  private Stream<Method> getMethods(
+      Class<?> clientClass, ImmutableList<String> methodWhitelist, String suffix) {
     ImmutableSet<String> asyncNameWhitelist =
         methodWhitelist
             .stream()
-            .map(name -> name + "Callable")
+            .map(name -> name + suffix)
             .collect(ImmutableSet.toImmutableSet());
 
     return ImmutableList.copyOf(clientClass.getMethods())
@@ -88,19 +236,171 @@ public abstract class GaxSchemaModule extends SchemaModule {
         .filter(method -> asyncNameWhitelist.contains(method.getName()));
   }
 
-  private GraphQLOutputType getReturnType(ParameterizedType parameterizedType)
-      throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-    Class<? extends Message> responseClass =
-        (Class<? extends Message>) parameterizedType.getActualTypeArguments()[1];
-    Descriptors.Descriptor responseDescriptor =
-        (Descriptors.Descriptor) responseClass.getMethod("getDescriptor").invoke(null);
-    addExtraType(responseDescriptor);
-    return ProtoToGql.getReference(responseDescriptor);
+  /** Returns the descriptor of a generated proto class. */
+  private static Descriptors.Descriptor getDescriptor(Type messageClass)
+      throws ReflectiveOperationException {
+    return (Descriptors.Descriptor)
+        ((Class<?>) messageClass).getMethod("getDescriptor").invoke(null);
   }
 
-  private static final int LENGTH_OF_CALLABLE = 8;
+  private static String transformName(String name, String suffix) {
+    return name.substring(0, name.length() - suffix.length());
+  }
+
+  /** Collects the resources of the pages of a GAX paged response, up to a maximum of pages. */
+  private static final class PagedResponses {
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private final MethodHandle getPage;
+    private final MethodHandle getValues;
+    private final MethodHandle hasNextPage;
+    private final MethodHandle getNextPageAsync;
+    private final int maxPages;
+
+    PagedResponses(Class<?> pagedResponseClass, int maxPages) throws ReflectiveOperationException {
+      this.maxPages = maxPages;
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      Method getPageMethod = pagedResponseClass.getMethod("getPage");
+      Class<?> pageClass = getPageMethod.getReturnType();
+      getPage = lookup.unreflect(getPageMethod).asType(GETTER);
+      getValues =
+          lookup
+              .unreflect(pageClass.getMethod("getValues"))
+              .asType(MethodType.methodType(Iterable.class, Object.class));
+      hasNextPage =
+          lookup
+              .unreflect(pageClass.getMethod("hasNextPage"))
+              .asType(MethodType.methodType(boolean.class, Object.class));
+      getNextPageAsync = lookup.unreflect(pageClass.getMethod("getNextPageAsync")).asType(GETTER);
+    }
+
+    /**
+     * Returns the resources of the pages of the response. The following pages are requested in
+     * the gRPC {@link Context} this is called in, so they carry its deadline and are cancelled with
+     * it, and cancelling the returned future cancels the page being fetched.
+     */
+    CompletableFuture<ImmutableList<Object>> collect(CompletableFuture<?> pagedResponse) {
+      PageCollector collector = new PageCollector(Context.current(), pagedResponse);
+      pagedResponse.whenComplete(
+          (response, t) -> {
+            if (t != null) {
+              collector.result.completeExceptionally(t);
+              return;
+            }
+            try {
+              collector.add((Object) getPage.invokeExact((Object) response), 1);
+            } catch (Throwable e) {
+              collector.result.completeExceptionally(e);
+            }
+          });
+      return collector.result;
+    }
 
-  private static String transformName(String name) {
-    return name.substring(0, name.length() - LENGTH_OF_CALLABLE);
+    /** Collects the resources of one paged response, requesting one page at a time. */
+    private final class PageCollector {
+      final CompletableFuture<ImmutableList<Object>> result = new CompletableFuture<>();
+      private final ImmutableList.Builder<Object> resources = ImmutableList.builder();
+      private final Context context;
+      /** The response or page being fetched, cancelled with the result. */
+      private volatile CompletableFuture<?> fetching;
+
+      PageCollector(Context context, CompletableFuture<?> pagedResponse) {
+        this.context = context;
+        this.fetching = pagedResponse;
+        result.whenComplete(
+            (value, t) -> {
+              if (result.isCancelled()) {
+                fetching.cancel(false);
+              }
+            });
+      }
+
+      void add(Object page, int pageCount) {
+        try {
+          resources.addAll((Iterable<?>) getValues.invokeExact(page));
+          if (pageCount == maxPages || !(boolean) hasNextPage.invokeExact(page)) {
+            result.complete(resources.build());
+            return;
+          }
+          CompletableFuture<Object> nextPage;
+          Context previous = context.attach();
+          try {
+            nextPage =
+                ApiFutureAdapter.toCompletableFuture((Object) getNextPageAsync.invokeExact(page));
+          } finally {
+            context.detach(previous);
+          }
+          fetching = nextPage;
+          if (result.isCancelled()) {
+            nextPage.cancel(false);
+            return;
+          }
+          nextPage.whenComplete(
+              (next, t) -> {
+                if (t != null) {
+                  result.completeExceptionally(t);
+                } else {
+                  add(next, pageCount + 1);
+                }
+              });
+        } catch (Throwable t) {
+          result.completeExceptionally(t);
+        }
+      }
+    }
+  }
+  /**
+   * Completes a future with the responses of a server-streaming call, as the handler of a GAX
+   * {@code ResponseObserver} proxy, and cancels the call with it.
+   */
+  private static final class ResponsesObserver implements InvocationHandler {
+    final CompletableFuture<ImmutableList<Object>> future = new CompletableFuture<>();
+    private final ImmutableList.Builder<Object> responses = ImmutableList.builder();
+
+    Object newProxy(Class<?> responseObserverClass) {
+      return Proxy.newProxyInstance(
+          responseObserverClass.getClassLoader(), new Class<?>[] {responseObserverClass}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "onStart":
+          // Responses are requested automatically, and the call is cancelled with the future.
+          cancelWith(method.getParameterTypes()[0], args[0]);
+          return null;
+        case "onResponse":
+          responses.add(args[0]);
+          return null;
+        case "onError":
+          future.completeExceptionally((Throwable) args[0]);
+          return null;
+        case "onComplete":
+          future.complete(responses.build());
+          return null;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "ResponsesObserver";
+        default:
+          return null;
+      }
+    }
+
+    /** Cancels the stream with {@code StreamController.cancel} when the future is cancelled. */
+    private void cancelWith(Class<?> streamControllerClass, Object streamController) {
+      future.whenComplete(
+          (result, t) -> {
+            if (future.isCancelled()) {
+              try {
+                streamControllerClass.getMethod("cancel").invoke(streamController);
+              } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+              }
+            }
+          });
+    }
   }
 }
@@ -1,66 +1,96 @@
 package com.google.api.graphql.rejoiner;
 
+import com.google.api.graphql.execution.GuavaListenableFutureSupport;
+import com.google.api.graphql.execution.Hedger;
+import com.google.api.graphql.execution.ResponseCache;
+import com.google.api.graphql.execution.RpcPublisher;
+import com.google.api.graphql.execution.SingleFlight;
+import com.google.api.graphql.grpc.FieldMaskInjector;
+import com.google.api.graphql.grpc.ResponseProjection;
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Provider;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.Message;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLNonNull;
 import graphql.schema.GraphQLOutputType;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServiceDescriptor;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
-/** SchemaModule that generates queries and mutations for gRPC clients. */
+/**
+ * SchemaModule that generates queries and mutations for gRPC clients.
+ *
+ * <p>Methods of future stubs become fields returning the response. Methods of async stubs become
+ * fields returning the response of unary methods, or the list of responses of server-streaming
+ * methods, which {@link #serviceToSubscriptions} turns into subscription fields instead.
+ *
+ * <p>The stub is resolved from the injector on the first call, and methods are called through
+ * method handles bound to it. Concurrent calls of {@link RpcOptions#idempotent} methods with the
+ * same request share a single call, slow calls are hedged with {@link
+ * RpcOptions#hedgingPercentile}, and responses are cached with {@link RpcOptions#cacheTtl}.
+ */
 public abstract class GrpcSchemaModule extends SchemaModule {
 
   protected ImmutableList<GraphQLFieldDefinition> serviceToFields(
       Class<?> client, ImmutableList<String> methodWhitelist) {
+    return serviceToFields(client, methodWhitelist, RpcOptions.defaultOptions());
+  }
+
+  protected ImmutableList<GraphQLFieldDefinition> serviceToFields(
+      Class<?> client, ImmutableList<String> methodWhitelist, RpcOptions rpcOptions) {
+    return methodsToFields(client, methodWhitelist, rpcOptions, false);
+  }
+
+  /**
+   * Returns subscription fields for server-streaming methods of an async stub, to be added with
+   * {@link #addSubscription}.
+   */
+  protected ImmutableList<GraphQLFieldDefinition> serviceToSubscriptions(
+      Class<?> client, ImmutableList<String> methodWhitelist) {
+    return serviceToSubscriptions(client, methodWhitelist, RpcOptions.defaultOptions());
+  }
+
+  protected ImmutableList<GraphQLFieldDefinition> serviceToSubscriptions(
+      Class<?> client, ImmutableList<String> methodWhitelist, RpcOptions rpcOptions) {
+    return methodsToFields(client, methodWhitelist, rpcOptions, true);
+  }
+
+  private ImmutableList<GraphQLFieldDefinition> methodsToFields(
+      Class<?> client,
+      ImmutableList<String> methodWhitelist,
+      RpcOptions rpcOptions,
+      boolean subscriptions) {
+    Provider<?> service = getProvider(client);
+    Supplier<Object> stub = Suppliers.memoize(service::get);
+    ImmutableMap<String, MethodDescriptor.MethodType> methodTypes = getMethodTypes(client);
 
     return getMethods(client, methodWhitelist)
         .map(
             method -> {
               try {
-                method.setAccessible(true);
-                ParameterizedType returnType = (ParameterizedType) method.getGenericReturnType();
-                GraphQLOutputType responseType = getReturnType(returnType);
-                Class<? extends Message> requestMessageClass =
-                    (Class<? extends Message>) method.getParameterTypes()[0];
-                Descriptors.Descriptor requestDescriptor =
-                    (Descriptors.Descriptor)
-                        requestMessageClass.getMethod("getDescriptor").invoke(null);
-                Message requestMessage =
-                    ((Message.Builder) requestMessageClass.getMethod("newBuilder").invoke(null))
-                        .buildPartial();
-                Provider<?> service = getProvider(client);
-
-                GqlInputConverter inputConverter =
-                    GqlInputConverter.newBuilder().add(requestDescriptor.getFile()).build();
-
-                DataFetcher dataFetcher =
-                    (DataFetchingEnvironment env) -> {
-                      Message input =
-                          inputConverter.createProtoBuf(
-                              requestDescriptor,
-                              requestMessage.toBuilder(),
-                              env.getArgument("input"));
-                      try {
-                        Object[] methodParameterValues = new Object[] {input};
-                        return method.invoke(service.get(), methodParameterValues);
-                      } catch (Exception e) {
-                        throw new RuntimeException(e);
-                      }
-                    };
-
-                return GraphQLFieldDefinition.newFieldDefinition()
-                    .name(method.getName())
-                    .argument(GqlInputConverter.createArgument(requestDescriptor, "input"))
-                    .type(responseType)
-                    .dataFetcher(dataFetcher)
-                    .build();
+                return methodToField(stub, method, methodTypes, rpcOptions, subscriptions);
+              } catch (RuntimeException e) {
+                throw e;
               } catch (Exception e) {
                 throw new RuntimeException(e);
               }
@@ -68,6 +98,143 @@ public abstract class GrpcSchemaModule extends SchemaModule {
         .collect(ImmutableList.toImmutableList());
   }
 
+  private GraphQLFieldDefinition methodToField(
+      Supplier<Object> stub,
+      Method method,
+      ImmutableMap<String, MethodDescriptor.MethodType> methodTypes,
+      RpcOptions rpcOptions,
+      boolean subscription)
+      throws ReflectiveOperationException {
+    method.setAccessible(true);
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    boolean observerCall =
+        parameterTypes.length == 2 && StreamObserver.class.equals(parameterTypes[1]);
+    if (!observerCall && parameterTypes.length != 1) {
+      throw new IllegalArgumentException("Unsupported gRPC stub method: " + method);
+    }
+    boolean streaming =
+        observerCall
+            && methodTypes.getOrDefault(
+                    method.getName(), MethodDescriptor.MethodType.SERVER_STREAMING)
+                == MethodDescriptor.MethodType.SERVER_STREAMING;
+    if (subscription && !streaming) {
+      throw new IllegalArgumentException(
+          "Subscriptions require a server-streaming method of an async stub: " + method);
+    }
+
+    ParameterizedType responseType =
+        (ParameterizedType)
+            (observerCall ? method.getGenericParameterTypes()[1] : method.getGenericReturnType());
+    Descriptors.Descriptor responseDescriptor = getResponseDescriptor(responseType, 0);
+    addExtraType(responseDescriptor);
+    GraphQLOutputType fieldType = ProtoToGql.getReference(responseDescriptor);
+    if (streaming && !subscription) {
+      fieldType = new GraphQLList(new GraphQLNonNull(fieldType));
+    }
+
+    @SuppressWarnings("unchecked")
+    Class<? extends Message> requestMessageClass = (Class<? extends Message>) parameterTypes[0];
+    Descriptors.Descriptor requestDescriptor =
+        (Descriptors.Descriptor) requestMessageClass.getMethod("getDescriptor").invoke(null);
+    Message requestMessage =
+        ((Message.Builder) requestMessageClass.getMethod("newBuilder").invoke(null))
+            .buildPartial();
+    GqlInputConverter inputConverter =
+        GqlInputConverter.newBuilder().add(requestDescriptor.getFile()).build();
+    FieldMaskInjector fieldMaskInjector =
+        rpcOptions.hasFieldMask()
+                && FieldMaskInjector.hasFieldMask(requestDescriptor, rpcOptions.fieldMaskName())
+            ? FieldMaskInjector.create(
+                requestDescriptor, rpcOptions.fieldMaskName(), responseDescriptor)
+            : null;
+    ResponseProjection responseProjection =
+        rpcOptions.pruneResponses() && !subscription
+            ? ResponseProjection.create(responseDescriptor)
+            : null;
+    Function<DataFetchingEnvironment, Object> request =
+        env -> {
+          Message input =
+              inputConverter.createProtoBuf(
+                  requestDescriptor, requestMessage.toBuilder(), env.getArgument("input"));
+          return fieldMaskInjector == null ? input : fieldMaskInjector.inject(input, env);
+        };
+
+    BoundMethod stubMethod =
+        new BoundMethod(
+            stub,
+            MethodHandles.lookup()
+                .unreflect(method)
+                .asType(observerCall ? BoundMethod.OBSERVER_CALL : BoundMethod.UNARY_CALL));
+    DataFetcher<?> dataFetcher;
+    if (subscription) {
+      dataFetcher =
+          env -> {
+            Object input = request.apply(env);
+            return RpcPublisher.create(responses -> stubMethod.call(input, responses));
+          };
+    } else {
+      Function<Object, Object> call;
+      if (!observerCall) {
+        call = stubMethod::call;
+      } else if (streaming) {
+        call =
+            input -> {
+              ResponsesObserver responses = new ResponsesObserver();
+              stubMethod.call(input, responses);
+              return responses.future;
+            };
+      } else {
+        call =
+            input -> {
+              ResponseObserver responses = new ResponseObserver();
+              stubMethod.call(input, responses);
+              return responses.future;
+            };
+      }
+      Hedger hedger = rpcOptions.newHedger();
+      Function<Object, Object> send =
+          hedger == null
+              ? call
+              : input -> hedger.<Object>call(() -> toCompletionStage(call.apply(input)));
+      SingleFlight<Object> singleFlight = rpcOptions.idempotent() ? new SingleFlight<>() : null;
+      ResponseCache<Object> responseCache = rpcOptions.newResponseCache();
+      if (responseCache != null) {
+        addResponseCache(method.getName(), responseCache);
+      }
+      dataFetcher =
+          env -> {
+            Object input = request.apply(env);
+            Object response;
+            if (responseCache != null) {
+              response =
+                  responseCache.get((Message) input, () -> toCompletionStage(send.apply(input)));
+            } else if (singleFlight != null) {
+              response =
+                  singleFlight.execute((Message) input, () -> toCompletionStage(send.apply(input)));
+            } else {
+              response = send.apply(input);
+            }
+            return responseProjection == null
+                ? response
+                : responseProjection.project(response, env);
+          };
+    }
+
+    return GraphQLFieldDefinition.newFieldDefinition()
+        .name(method.getName())
+        .argument(GqlInputConverter.createArgument(requestDescriptor, "input"))
+        .type(fieldType)
+        .dataFetcher(dataFetcher)
+        .build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CompletionStage<Object> toCompletionStage(Object response) {
+    return response instanceof ListenableFuture
+        ? GuavaListenableFutureSupport.toCompletableFuture((ListenableFuture<Object>) response)
+        : (CompletionStage<Object>) response;
+  }
+
   private Stream<Method> getMethods(Class<?> clientClass, ImmutableList<String> methodWhitelist) {
     ImmutableSet<String> asyncNameWhitelist =
         methodWhitelist.stream().collect(ImmutableSet.toImmutableSet());
@@ -76,14 +243,109 @@ public abstract class GrpcSchemaModule extends SchemaModule {
         .filter(method -> asyncNameWhitelist.contains(method.getName()));
   }
 
-  /** Returns a GraphQLOutputType for type T for an input of ListenableFuture<T>. */
-  private GraphQLOutputType getReturnType(ParameterizedType parameterizedType)
+  /**
+   * Returns the types of the methods of the service that the stub belongs to, by Java method name,
+   * or an empty map if the stub isn't nested in a generated gRPC class.
+   */
+  private static ImmutableMap<String, MethodDescriptor.MethodType> getMethodTypes(
+      Class<?> client) {
+    Class<?> grpcClass = client.getEnclosingClass();
+    if (grpcClass == null) {
+      return ImmutableMap.of();
+    }
+    ServiceDescriptor serviceDescriptor;
+    try {
+      serviceDescriptor =
+          (ServiceDescriptor) grpcClass.getMethod("getServiceDescriptor").invoke(null);
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      return ImmutableMap.of();
+    }
+    return serviceDescriptor.getMethods().stream()
+        .collect(
+            ImmutableMap.toImmutableMap(
+                methodDescriptor -> {
+                  String fullMethodName = methodDescriptor.getFullMethodName();
+                  return CaseFormat.UPPER_CAMEL.to(
+                      CaseFormat.LOWER_CAMEL,
+                      fullMethodName.substring(fullMethodName.lastIndexOf('/') + 1));
+                },
+                MethodDescriptor::getType,
+                (first, second) -> first));
+  }
+
+  /** Returns the descriptor of the proto at {@code index} in the type arguments. */
+  private static Descriptors.Descriptor getResponseDescriptor(
+      ParameterizedType parameterizedType, int index)
       throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+    @SuppressWarnings("unchecked")
     Class<? extends Message> responseClass =
-        (Class<? extends Message>) parameterizedType.getActualTypeArguments()[0];
-    Descriptors.Descriptor responseDescriptor =
-        (Descriptors.Descriptor) responseClass.getMethod("getDescriptor").invoke(null);
-    addExtraType(responseDescriptor);
-    return ProtoToGql.getReference(responseDescriptor);
+        (Class<? extends Message>) parameterizedType.getActualTypeArguments()[index];
+    return (Descriptors.Descriptor) responseClass.getMethod("getDescriptor").invoke(null);
+  }
+
+  /** Cancels the call when the future is cancelled. */
+  private static void cancelWith(
+      CompletableFuture<?> future, ClientCallStreamObserver<Object> requestStream) {
+    future.whenComplete(
+        (response, t) -> {
+          if (future.isCancelled()) {
+            requestStream.cancel("Cancelled by the GraphQL execution", null);
+          }
+        });
+  }
+
+  /** Completes a future with the response of a unary call, and cancels the call with it. */
+  private static final class ResponseObserver implements ClientResponseObserver<Object, Object> {
+    final CompletableFuture<Object> future = new CompletableFuture<>();
+    private Object response;
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+      cancelWith(future, requestStream);
+    }
+
+    @Override
+    public void onNext(Object value) {
+      response = value;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      future.completeExceptionally(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      future.complete(response);
+    }
+  }
+
+  /**
+   * Completes a future with the responses of a server-streaming call, and cancels the call with
+   * it.
+   */
+  private static final class ResponsesObserver implements ClientResponseObserver<Object, Object> {
+    final CompletableFuture<ImmutableList<Object>> future = new CompletableFuture<>();
+    private final ImmutableList.Builder<Object> responses = ImmutableList.builder();
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+      cancelWith(future, requestStream);
+    }
+
+    @Override
+    public void onNext(Object value) {
+      responses.add(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      future.completeExceptionally(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      future.complete(responses.build());
+    }
   }
 }
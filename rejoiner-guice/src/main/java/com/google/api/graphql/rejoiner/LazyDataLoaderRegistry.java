@@ -0,0 +1,39 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.function.Function;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+
+/**
+ * A registry that creates each DataLoader the first time it's requested, so a request only
+ * allocates the DataLoaders it uses.
+ */
+final class LazyDataLoaderRegistry extends DataLoaderRegistry {
+
+  private final ImmutableMap<String, Function<String, DataLoader<?, ?>>> factories;
+
+  LazyDataLoaderRegistry(ImmutableMap<String, Function<String, DataLoader<?, ?>>> factories) {
+    this.factories = factories;
+  }
+
+  @Override
+  public <K, V> DataLoader<K, V> getDataLoader(String key) {
+    Function<String, DataLoader<?, ?>> factory = factories.get(key);
+    return factory == null ? super.getDataLoader(key) : computeIfAbsent(key, factory);
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.api.graphql.execution.ResponseCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Statistics of the response caches of fields, such as those of {@link Cached} methods, by module
+ * and field name, accumulated over all requests.
+ */
+@Singleton
+public final class ResponseCacheStatistics {
+
+  private final Provider<SchemaBundle> schemaBundle;
+
+  @Inject
+  ResponseCacheStatistics(@Annotations.CombinedSchemaBundle Provider<SchemaBundle> schemaBundle) {
+    this.schemaBundle = schemaBundle;
+  }
+
+  /** Returns the statistics of the named cache, or null if there isn't one. */
+  @Nullable
+  public ResponseCache.Stats get(String name) {
+    ResponseCache<?> responseCache = schemaBundle.get().responseCaches().get(name);
+    return responseCache == null ? null : responseCache.stats();
+  }
+
+  /** Returns the statistics of each cache by name. */
+  public ImmutableMap<String, ResponseCache.Stats> snapshot() {
+    return ImmutableMap.copyOf(
+        Maps.transformValues(schemaBundle.get().responseCaches(), ResponseCache::stats));
+  }
+}
@@ -18,7 +18,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import javax.inject.Qualifier;
 
-/** Annotates the {@link graphql.schema.GraphQLSchema} generated by Rejoiner. */
+/**
+ * Annotates the {@link graphql.schema.GraphQLSchema} generated by Rejoiner, and the {@link
+ * org.dataloader.DataLoaderRegistry} of its batch loaders.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Qualifier
 public @interface Schema {}
@@ -14,13 +14,16 @@
 
 package com.google.api.graphql.rejoiner;
 
+import com.google.api.graphql.execution.ResponseCache;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.AbstractModule;
+import com.google.inject.Binder;
 import com.google.inject.Key;
 import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
+import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FileDescriptor;
@@ -32,19 +35,28 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.List;
+import org.dataloader.BatchLoader;
 
 /**
  * Module for registering parts of a {@link GraphQLSchema}.
  *
- * <p>Any public fields of type {@link GraphQLFieldDefinition} annotated with {@link Query} or
- * {@link Mutation} will be added to the top level query or mutation. Fields of type {@link
+ * <p>Any public fields of type {@link GraphQLFieldDefinition} annotated with {@link Query}, {@link
+ * Mutation} or {@link Subscription} will be added to the top level query, mutation or
+ * subscription. Fields of type {@link
  * TypeModification} annotated with {@link SchemaModification} will be applied to the generated
  * schema in order to add, remove, or replace fields on a GraphQL type. Fields of type {@link
  * FileDescriptor} annotated with {@link ExtraType} will be available to GraphQL when creating the
  * final schema.
+ *
+ * <p>Batch loaders of {@link BatchLookup} methods and those added with {@link #addBatchLoader}
+ * are available to each request as DataLoaders, which methods take as parameters annotated with
+ * {@link Loader}.
  */
 public abstract class SchemaModule extends AbstractModule {
 
+  private static final TypeLiteral<BatchLoader<?, ?>> BATCH_LOADER =
+      new TypeLiteral<BatchLoader<?, ?>>() {};
+
   private final Object schemaDefinition;
 
   private final SchemaOptions schemaOptions;
@@ -72,6 +84,8 @@ public abstract class SchemaModule extends AbstractModule {
 
   private final SchemaDefinitionReader definition;
 
+  private MapBinder<String, BatchLoader<?, ?>> batchLoaders;
+
   private SchemaDefinitionReader createdSchemaDefinitionReader() {
     return new SchemaDefinitionReader(this.schemaDefinition, this.schemaOptions) {
       @Override
@@ -127,6 +141,10 @@ public abstract class SchemaModule extends AbstractModule {
     definition.addMutation(mutation);
   }
 
+  protected void addSubscription(GraphQLFieldDefinition subscription) {
+    definition.addSubscription(subscription);
+  }
+
   protected void addQueryList(List<GraphQLFieldDefinition> queries) {
     definition.addQueryList(queries);
   }
@@ -135,6 +153,24 @@ public abstract class SchemaModule extends AbstractModule {
     definition.addMutationList(mutations);
   }
 
+  /**
+   * Registers a batch loader, which each request gets a new DataLoader of with the given name. Call
+   * from {@link #configureSchema}.
+   */
+  protected void addBatchLoader(String name, BatchLoader<?, ?> batchLoader) {
+    batchLoaders.addBinding(name).toInstance(batchLoader);
+  }
+
+  /** Registers a batch loader created by the injector. Call from {@link #configureSchema}. */
+  protected void addBatchLoader(String name, Class<? extends BatchLoader<?, ?>> batchLoaderClass) {
+    batchLoaders.addBinding(name).to(batchLoaderClass);
+  }
+
+  static MapBinder<String, BatchLoader<?, ?>> newBatchLoaderBinder(Binder binder) {
+    return MapBinder.newMapBinder(
+        binder, TypeLiteral.get(String.class), BATCH_LOADER, Annotations.BatchLoaders.class);
+  }
+
   /** Override and call addQuery etc (called while the binder() is available). */
   protected void configureSchema() {}
 
@@ -146,6 +182,7 @@ public abstract class SchemaModule extends AbstractModule {
     Multibinder<SchemaBundle> schemaBundleProviders =
         Multibinder.newSetBinder(
             binder(), new TypeLiteral<SchemaBundle>() {}, Annotations.SchemaBundles.class);
+    batchLoaders = newBatchLoaderBinder(binder());
 
     configureSchema();
     definition.readMembers();
@@ -162,4 +199,8 @@ public abstract class SchemaModule extends AbstractModule {
   void addExtraType(Descriptor descriptor) {
     definition.addExtraType(descriptor);
   }
+
+  void addResponseCache(String fieldName, ResponseCache<?> responseCache) {
+    definition.addResponseCache(fieldName, responseCache);
+  }
 }
@@ -14,37 +14,117 @@
 
 package com.google.api.graphql.rejoiner;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.AbstractModule;
 import com.google.inject.Singleton;
 import graphql.schema.GraphQLSchema;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import javax.inject.Inject;
 import javax.inject.Provider;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.DataLoaderRegistry;
+import org.dataloader.stats.StatisticsCollector;
 
-/** Provides a {@link GraphQLSchema} by combining fields from all SchemaModules. */
+/**
+ * Provides a {@link GraphQLSchema} by combining fields from all SchemaModules, and a new {@link
+ * DataLoaderRegistry} with their batch loaders for each request.
+ *
+ * <p>The DataLoaders of a registry are created as the request uses them, and record their batch
+ * statistics in {@link DataLoaderStatistics}.
+ */
 public final class SchemaProviderModule extends AbstractModule {
 
-  static class SchemaImpl implements Provider<GraphQLSchema> {
+  static class SchemaBundleImpl implements Provider<SchemaBundle> {
 
     private final Provider<Set<SchemaBundle>> schemaBundleProviders;
 
     @Inject
-    public SchemaImpl(@Annotations.SchemaBundles Provider<Set<SchemaBundle>> schemaBundles) {
+    public SchemaBundleImpl(@Annotations.SchemaBundles Provider<Set<SchemaBundle>> schemaBundles) {
       this.schemaBundleProviders = schemaBundles;
     }
 
+    @Override
+    public SchemaBundle get() {
+      return SchemaBundle.combine(schemaBundleProviders.get());
+    }
+  }
+
+  static class SchemaImpl implements Provider<GraphQLSchema> {
+
+    private final Provider<SchemaBundle> schemaBundle;
+
+    @Inject
+    public SchemaImpl(@Annotations.CombinedSchemaBundle Provider<SchemaBundle> schemaBundle) {
+      this.schemaBundle = schemaBundle;
+    }
+
     @Override
     public GraphQLSchema get() {
-      SchemaBundle schemaBundle = SchemaBundle.combine(schemaBundleProviders.get());
-      return schemaBundle.toSchema();
+      return schemaBundle.get().toSchema();
+    }
+  }
+
+  static class DataLoaderRegistryImpl implements Provider<DataLoaderRegistry> {
+
+    private final Supplier<ImmutableMap<String, Function<String, DataLoader<?, ?>>>> factories;
+
+    @Inject
+    public DataLoaderRegistryImpl(
+        @Annotations.CombinedSchemaBundle Provider<SchemaBundle> schemaBundle,
+        @Annotations.BatchLoaders Provider<Map<String, BatchLoader<?, ?>>> batchLoaders,
+        DataLoaderStatistics statistics) {
+      this.factories =
+          Suppliers.memoize(
+              () -> {
+                ImmutableMap.Builder<String, Function<String, DataLoader<?, ?>>> builder =
+                    ImmutableMap.builder();
+                ImmutableMap.<String, BatchLoader<?, ?>>builder()
+                    .putAll(schemaBundle.get().batchLoaders())
+                    .putAll(batchLoaders.get())
+                    .build()
+                    .forEach(
+                        (name, batchLoader) -> {
+                          StatisticsCollector collector = statistics.collector(name);
+                          DataLoaderOptions options =
+                              DataLoaderOptions.newOptions()
+                                  .setStatisticsCollector(() -> collector);
+                          builder.put(name, ignored -> newDataLoader(batchLoader, options));
+                        });
+                return builder.build();
+              });
+    }
+
+    private static <K, V> DataLoader<K, V> newDataLoader(
+        BatchLoader<K, V> batchLoader, DataLoaderOptions options) {
+      return DataLoader.newDataLoader(batchLoader, options);
+    }
+
+    @Override
+    public DataLoaderRegistry get() {
+      return new LazyDataLoaderRegistry(factories.get());
     }
   }
 
   @Override
   protected void configure() {
+    bind(SchemaBundle.class)
+        .annotatedWith(Annotations.CombinedSchemaBundle.class)
+        .toProvider(SchemaBundleImpl.class)
+        .in(Singleton.class);
     bind(GraphQLSchema.class)
         .annotatedWith(Schema.class)
         .toProvider(SchemaImpl.class)
         .in(Singleton.class);
+    SchemaModule.newBatchLoaderBinder(binder());
+    bind(DataLoaderRegistryImpl.class).in(Singleton.class);
+    bind(DataLoaderRegistry.class)
+        .annotatedWith(Schema.class)
+        .toProvider(DataLoaderRegistryImpl.class);
   }
 }
@@ -14,13 +14,31 @@
 
 package com.google.api.graphql.rejoiner;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.ResponseObserver;
+import com.google.api.gax.rpc.ServerStreamingCallable;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.api.graphql.execution.DeadlineSupport;
+import com.google.api.graphql.rejoiner.Greetings.GreetingsRequest;
+import com.google.api.graphql.rejoiner.Greetings.GreetingsResponse;
 import com.google.cloud.firestore.v1.FirestoreClient;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLSchema;
+import io.grpc.Context;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -36,6 +54,120 @@ public final class GaxSchemaModuleTest {
   private static final Key<Set<SchemaBundle>> KEY =
       Key.get(new TypeLiteral<Set<SchemaBundle>>() {}, Annotations.SchemaBundles.class);
 
+  /** Stands in for a generated GAX client. */
+  public static final class FakeClient {
+    final AtomicInteger callableLookups = new AtomicInteger();
+    /** Whether the second page of greetings never arrives. */
+    volatile boolean secondPagePending;
+    final SettableApiFuture<GreetingsPage> secondPage = SettableApiFuture.create();
+    volatile Context secondPageContext;
+
+    public UnaryCallable<GreetingsRequest, GreetingsResponse> greetCallable() {
+      callableLookups.incrementAndGet();
+      return new UnaryCallable<GreetingsRequest, GreetingsResponse>() {
+        @Override
+        public ApiFuture<GreetingsResponse> futureCall(
+            GreetingsRequest request, ApiCallContext context) {
+          return ApiFutures.immediateFuture(
+              GreetingsResponse.newBuilder().setId(request.getId()).build());
+        }
+      };
+    }
+
+    public ServerStreamingCallable<GreetingsRequest, GreetingsResponse> greetingsCallable() {
+      return new ServerStreamingCallable<GreetingsRequest, GreetingsResponse>() {
+        @Override
+        public void call(
+            GreetingsRequest request,
+            ResponseObserver<GreetingsResponse> responseObserver,
+            ApiCallContext context) {
+          responseObserver.onResponse(
+              GreetingsResponse.newBuilder().setId(request.getId() + "1").build());
+          responseObserver.onResponse(
+              GreetingsResponse.newBuilder().setId(request.getId() + "2").build());
+          responseObserver.onComplete();
+        }
+      };
+    }
+
+    public UnaryCallable<GreetingsRequest, GreetingsPagedResponse> greetingsPagedCallable() {
+      return new UnaryCallable<GreetingsRequest, GreetingsPagedResponse>() {
+        @Override
+        public ApiFuture<GreetingsPagedResponse> futureCall(
+            GreetingsRequest request, ApiCallContext context) {
+          return ApiFutures.immediateFuture(
+              new GreetingsPagedResponse(new GreetingsPage(FakeClient.this, request.getId(), 1)));
+        }
+      };
+    }
+  }
+
+  /** Stands in for a GAX paged response, whose type arguments name the resource type. */
+  public abstract static class PagedListResponse<RequestT, ResponseT, ResourceT, PageT> {}
+
+  /** A paged response of greetings, which always has a next page. */
+  public static final class GreetingsPagedResponse
+      extends PagedListResponse<
+          GreetingsRequest, GreetingsResponse, GreetingsResponse, GreetingsPage> {
+    private final GreetingsPage page;
+
+    GreetingsPagedResponse(GreetingsPage page) {
+      this.page = page;
+    }
+
+    public GreetingsPage getPage() {
+      return page;
+    }
+  }
+
+  /** A page holding a single greeting. */
+  public static final class GreetingsPage {
+    private final FakeClient client;
+    private final String id;
+    private final int number;
+
+    GreetingsPage(FakeClient client, String id, int number) {
+      this.client = client;
+      this.id = id;
+      this.number = number;
+    }
+
+    public Iterable<GreetingsResponse> getValues() {
+      return ImmutableList.of(GreetingsResponse.newBuilder().setId(id + number).build());
+    }
+
+    public boolean hasNextPage() {
+      return true;
+    }
+
+    public ApiFuture<GreetingsPage> getNextPageAsync() {
+      if (client.secondPagePending && number == 1) {
+        client.secondPageContext = Context.current();
+        return client.secondPage;
+      }
+      return ApiFutures.immediateFuture(new GreetingsPage(client, id, number + 1));
+    }
+  }
+
+  private GraphQLSchema createSchema(FakeClient client) {
+    return Guice.createInjector(
+            new SchemaProviderModule(),
+            new AbstractModule() {
+              @Override
+              protected void configure() {
+                bind(FakeClient.class).toInstance(client);
+              }
+            },
+            new GaxSchemaModule() {
+              @Override
+              protected void configureSchema() {
+                addQueryList(
+                    serviceToFields(FakeClient.class, ImmutableList.of("greet", "greetings")));
+              }
+            })
+        .getInstance(Key.get(GraphQLSchema.class, Schema.class));
+  }
+
   @Test
   public void schemaModuleShouldProvideQueryAndMutationFields() {
     Injector injector =
@@ -64,4 +196,126 @@ public final class GaxSchemaModuleTest {
     assertThat(schemaBundle.mutationFields()).hasSize(3);
     assertThat(schemaBundle.modifications()).isEmpty();
   }
+
+  @Test
+  public void schemaModuleShouldProvidePagedFields() {
+    Injector injector =
+        Guice.createInjector(
+            new AbstractModule() {
+              @Override
+              protected void configure() {
+                bind(FirestoreClient.class).toProvider(() -> null);
+              }
+            },
+            new GaxSchemaModule() {
+              @Override
+              protected void configureSchema() {
+                addQueryList(
+                    serviceToPagedFields(FirestoreClient.class, ImmutableList.of("listDocuments")));
+              }
+            });
+
+    SchemaBundle schemaBundle = SchemaBundle.combine(injector.getInstance(KEY));
+    assertThat(schemaBundle.queryFields()).hasSize(1);
+    assertThat(schemaBundle.queryFields().get(0).getName()).isEqualTo("listDocuments");
+    assertThat(schemaBundle.queryFields().get(0).getType()).isInstanceOf(GraphQLList.class);
+  }
+
+  @Test
+  public void unaryCallableShouldBeResolvedOnce() {
+    FakeClient client = new FakeClient();
+    GraphQL graphQL = GraphQL.newGraphQL(createSchema(client)).build();
+
+    ExecutionResult first = graphQL.execute("{ greet(input: {id: \"a\"}) { id } }");
+    ExecutionResult second = graphQL.execute("{ greet(input: {id: \"b\"}) { id } }");
+
+    assertThat(first.getErrors()).isEmpty();
+    assertThat(first.<Object>getData())
+        .isEqualTo(ImmutableMap.of("greet", ImmutableMap.of("id", "a")));
+    assertThat(second.<Object>getData())
+        .isEqualTo(ImmutableMap.of("greet", ImmutableMap.of("id", "b")));
+    assertThat(client.callableLookups.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void serverStreamingCallableShouldBeListField() {
+    GraphQLSchema schema = createSchema(new FakeClient());
+    assertThat(schema.getQueryType().getFieldDefinition("greetings").getType())
+        .isInstanceOf(GraphQLList.class);
+
+    ExecutionResult result =
+        GraphQL.newGraphQL(schema).build().execute("{ greetings(input: {id: \"a\"}) { id } }");
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(result.<Object>getData())
+        .isEqualTo(
+            ImmutableMap.of(
+                "greetings",
+                ImmutableList.of(ImmutableMap.of("id", "a1"), ImmutableMap.of("id", "a2"))));
+  }
+
+  private GraphQLSchema createPagedSchema(FakeClient client, RpcOptions rpcOptions) {
+    return Guice.createInjector(
+            new SchemaProviderModule(),
+            new AbstractModule() {
+              @Override
+              protected void configure() {
+                bind(FakeClient.class).toInstance(client);
+              }
+            },
+            new GaxSchemaModule() {
+              @Override
+              protected void configureSchema() {
+                addQueryList(
+                    serviceToPagedFields(
+                        FakeClient.class, ImmutableList.of("greetings"), rpcOptions));
+              }
+            })
+        .getInstance(Key.get(GraphQLSchema.class, Schema.class));
+  }
+
+  @Test
+  public void pagedCallableShouldFetchUpToMaxPages() {
+    GraphQLSchema schema =
+        createPagedSchema(new FakeClient(), RpcOptions.builder().maxPages(3).build());
+
+    ExecutionResult result =
+        GraphQL.newGraphQL(schema).build().execute("{ greetings(input: {id: \"a\"}) { id } }");
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(result.<Object>getData())
+        .isEqualTo(
+            ImmutableMap.of(
+                "greetings",
+                ImmutableList.of(
+                    ImmutableMap.of("id", "a1"),
+                    ImmutableMap.of("id", "a2"),
+                    ImmutableMap.of("id", "a3"))));
+  }
+
+  @Test
+  public void cancellingRequestShouldCancelPageBeingFetched() throws Exception {
+    FakeClient client = new FakeClient();
+    client.secondPagePending = true;
+    GraphQL graphQL =
+        GraphQL.newGraphQL(createPagedSchema(client, RpcOptions.defaultOptions()))
+            .instrumentation(DeadlineSupport.deadlineInstrumentation())
+            .build();
+    Context.CancellableContext request = Context.current().withCancellation();
+
+    CompletableFuture<ExecutionResult> result =
+        request.call(
+            () ->
+                graphQL.executeAsync(
+                    builder -> builder.query("{ greetings(input: {id: \"a\"}) { id } }")));
+    assertThat(result.isDone()).isFalse();
+    assertThat(client.secondPageContext).isNotNull();
+    assertThat(client.secondPageContext.isCancelled()).isFalse();
+
+    request.cancel(null);
+
+    assertThat(client.secondPage.isCancelled()).isTrue();
+    assertThat(client.secondPageContext.isCancelled()).isTrue();
+    assertThat(result.join().getErrors()).isNotEmpty();
+  }
 }
@@ -0,0 +1,129 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.graphql.execution.GuavaListenableFutureSupport;
+import com.google.api.graphql.rejoiner.Greetings.GreetingsRequest;
+import com.google.api.graphql.rejoiner.Greetings.GreetingsResponse;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Key;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLSchema;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link GrpcSchemaModule}. */
+@RunWith(JUnit4.class)
+public final class GrpcSchemaModuleTest {
+
+  /** Stands in for a generated future stub. */
+  public static final class FutureStub {
+    public ListenableFuture<GreetingsResponse> greet(GreetingsRequest request) {
+      return Futures.immediateFuture(GreetingsResponse.newBuilder().setId(request.getId()).build());
+    }
+  }
+
+  /** Stands in for a generated async stub with a server-streaming method. */
+  public static final class AsyncStub {
+    public void greetings(GreetingsRequest request, StreamObserver<GreetingsResponse> responses) {
+      responses.onNext(GreetingsResponse.newBuilder().setId(request.getId() + "1").build());
+      responses.onNext(GreetingsResponse.newBuilder().setId(request.getId() + "2").build());
+      responses.onCompleted();
+    }
+  }
+
+  private final AtomicInteger stubLookups = new AtomicInteger();
+
+  private GraphQLSchema createSchema() {
+    return Guice.createInjector(
+            new SchemaProviderModule(),
+            new AbstractModule() {
+              @Override
+              protected void configure() {
+                bind(FutureStub.class)
+                    .toProvider(
+                        () -> {
+                          stubLookups.incrementAndGet();
+                          return new FutureStub();
+                        });
+                bind(AsyncStub.class).toInstance(new AsyncStub());
+              }
+            },
+            new GrpcSchemaModule() {
+              @Override
+              protected void configureSchema() {
+                addQueryList(serviceToFields(FutureStub.class, ImmutableList.of("greet")));
+                addQueryList(serviceToFields(AsyncStub.class, ImmutableList.of("greetings")));
+                serviceToSubscriptions(AsyncStub.class, ImmutableList.of("greetings"))
+                    .forEach(this::addSubscription);
+              }
+            })
+        .getInstance(Key.get(GraphQLSchema.class, Schema.class));
+  }
+
+  @Test
+  public void futureStubMethodShouldBeCalledWithStubResolvedOnce() {
+    GraphQL graphQL =
+        GraphQL.newGraphQL(createSchema())
+            .instrumentation(GuavaListenableFutureSupport.listenableFutureInstrumentation())
+            .build();
+
+    ExecutionResult first = graphQL.execute("{ greet(input: {id: \"a\"}) { id } }");
+    ExecutionResult second = graphQL.execute("{ greet(input: {id: \"b\"}) { id } }");
+
+    assertThat(first.getErrors()).isEmpty();
+    assertThat(first.<Object>getData())
+        .isEqualTo(ImmutableMap.of("greet", ImmutableMap.of("id", "a")));
+    assertThat(second.<Object>getData())
+        .isEqualTo(ImmutableMap.of("greet", ImmutableMap.of("id", "b")));
+    assertThat(stubLookups.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void serverStreamingMethodShouldBeListField() {
+    GraphQLSchema schema = createSchema();
+    assertThat(schema.getQueryType().getFieldDefinition("greetings").getType())
+        .isInstanceOf(GraphQLList.class);
+
+    ExecutionResult result =
+        GraphQL.newGraphQL(schema).build().execute("{ greetings(input: {id: \"a\"}) { id } }");
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(result.<Object>getData())
+        .isEqualTo(
+            ImmutableMap.of(
+                "greetings",
+                ImmutableList.of(ImmutableMap.of("id", "a1"), ImmutableMap.of("id", "a2"))));
+  }
+
+  @Test
+  public void serverStreamingMethodShouldBeSubscriptionField() {
+    GraphQLSchema schema = createSchema();
+
+    assertThat(schema.getSubscriptionType().getFieldDefinition("greetings")).isNotNull();
+  }
+}
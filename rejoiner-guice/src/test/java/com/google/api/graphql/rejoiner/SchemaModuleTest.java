@@ -16,27 +16,40 @@ package com.google.api.graphql.rejoiner;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.api.graphql.execution.RpcPublisher;
+import com.google.api.graphql.rejoiner.Greetings.GreetingsListRequest;
+import com.google.api.graphql.rejoiner.Greetings.GreetingsListResponse;
 import com.google.api.graphql.rejoiner.Greetings.GreetingsRequest;
 import com.google.api.graphql.rejoiner.Greetings.GreetingsResponse;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
 import graphql.Scalars;
 import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLArgument;
 import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLSchema;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import graphql.schema.GraphQLNamedType;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+import org.dataloader.stats.Statistics;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.reactivestreams.Publisher;
 
 /** Unit tests for {@link SchemaModule}. */
 @RunWith(JUnit4.class)
@@ -105,6 +118,30 @@ public final class SchemaModuleTest {
     assertThat(schemaBundle.modifications()).isEmpty();
   }
 
+  @Test
+  public void schemaModuleShouldProvideSubscriptionFields() {
+    Injector injector =
+        Guice.createInjector(
+            new SchemaModule() {
+              @Subscription("greetings")
+              Publisher<GreetingsResponse> greetings(GreetingsRequest request) {
+                return RpcPublisher.create(
+                    responses -> {
+                      responses.onNext(
+                          GreetingsResponse.newBuilder().setId(request.getId()).build());
+                      responses.onCompleted();
+                    });
+              }
+            });
+
+    SchemaBundle schemaBundle = SchemaBundle.combine(injector.getInstance(KEY));
+    assertThat(schemaBundle.subscriptionFields()).hasSize(1);
+    assertThat(schemaBundle.fileDescriptors()).hasSize(1);
+    GraphQLSchema schema = schemaBundle.toSchema();
+    assertThat(schema.getSubscriptionType().getFieldDefinition("greetings")).isNotNull();
+    assertThat(schema.getMutationType()).isNull();
+  }
+
   @Test
   public void schemaModuleShouldNamespaceQueriesAndMutations() {
     @Namespace("namespace")
@@ -238,6 +275,77 @@ public final class SchemaModuleTest {
     validateSchema(injector);
   }
 
+  @Test
+  public void schemaModuleShouldRegisterBatchLookups() throws Exception {
+    Injector injector =
+        Guice.createInjector(
+            new SchemaProviderModule(),
+            new SchemaModule() {
+              @BatchLookup(
+                  value = "greetings",
+                  requestKeyField = "ids",
+                  responseKeyField = "greetings.id")
+              ListenableFuture<GreetingsListResponse> greetings(GreetingsListRequest request) {
+                GreetingsListResponse.Builder response = GreetingsListResponse.newBuilder();
+                request.getIdsList().forEach(id -> response.addGreetingsBuilder().setId(id));
+                return Futures.immediateFuture(response.build());
+              }
+            });
+    Key<DataLoaderRegistry> registryKey = Key.get(DataLoaderRegistry.class, Schema.class);
+    DataLoaderRegistry registry = injector.getInstance(registryKey);
+    DataLoader<String, GreetingsResponse> dataLoader = registry.getDataLoader("greetings");
+    CompletableFuture<List<GreetingsResponse>> greetings =
+        dataLoader.loadMany(ImmutableList.of("a", "b"));
+    dataLoader.dispatch();
+
+    assertThat(greetings.get())
+        .containsExactly(
+            GreetingsResponse.newBuilder().setId("a").build(),
+            GreetingsResponse.newBuilder().setId("b").build())
+        .inOrder();
+    assertThat(injector.getInstance(registryKey)).isNotSameInstanceAs(registry);
+  }
+
+  @Test
+  public void schemaModuleShouldInjectDataLoaders() throws Exception {
+    Injector injector =
+        Guice.createInjector(
+            new SchemaProviderModule(),
+            new SchemaModule() {
+              @Override
+              protected void configureSchema() {
+                addBatchLoader("ids", keys -> CompletableFuture.completedFuture(keys));
+              }
+
+              @Query("greeting")
+              CompletableFuture<GreetingsResponse> greeting(
+                  GreetingsRequest request, @Loader("ids") DataLoader<String, String> ids) {
+                return ids.load(request.getId())
+                    .thenApply(id -> GreetingsResponse.newBuilder().setId(id).build());
+              }
+            });
+    GraphQL graphQL =
+        GraphQL.newGraphQL(injector.getInstance(Key.get(GraphQLSchema.class, Schema.class)))
+            .build();
+
+    ExecutionResult result =
+        graphQL.execute(
+            ExecutionInput.newExecutionInput()
+                .query(
+                    "{ a: greeting(input: {id: \"a\"}) { id } "
+                        + "b: greeting(input: {id: \"b\"}) { id } }")
+                .dataLoaderRegistry(
+                    injector.getInstance(Key.get(DataLoaderRegistry.class, Schema.class))));
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(result.<Object>getData())
+        .isEqualTo(
+            ImmutableMap.of("a", ImmutableMap.of("id", "a"), "b", ImmutableMap.of("id", "b")));
+    Statistics statistics = injector.getInstance(DataLoaderStatistics.class).get("ids");
+    assertThat(statistics.getLoadCount()).isEqualTo(2);
+    assertThat(statistics.getBatchInvokeCount()).isEqualTo(1);
+  }
+
   private void validateSchema(Injector injector) throws Exception {
     SchemaBundle schemaBundle = SchemaBundle.combine(injector.getInstance(KEY));
     assertThat(schemaBundle.queryFields()).hasSize(1);
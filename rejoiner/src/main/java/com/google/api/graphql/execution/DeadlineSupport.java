@@ -0,0 +1,276 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQL;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.parameters.InstrumentationCreateStateParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Applies the deadline and cancellation of each GraphQL request to the backend calls made while
+ * executing it.
+ *
+ * <p>Each request is executed in a cancellable gRPC {@link Context}, a child of the one it's
+ * executed in, such as that of a {@code GraphqlService} call. Its deadline is that of the parent,
+ * or the given timeout from when execution starts, whichever comes first. Each field is fetched in
+ * that context, so gRPC and GAX calls started by data fetchers, including those of generated RPC
+ * fields, carry the time remaining, which shrinks as execution moves through nested fields, and
+ * are cancelled with the request.
+ *
+ * <p>The request is cancelled when the parent context is, for instance when the client of a
+ * {@code GraphqlService} call goes away, once its deadline passes, and when its execution fails or
+ * ends without data, such as when a non-null field error nulls the whole result. Otherwise its
+ * context is closed once execution completes, or, for deferred fields and subscriptions, once
+ * their results have been delivered or their subscriber cancels. Remaining fields
+ * then fail without being fetched, and fields still waiting for a response fail with {@link
+ * Status#CANCELLED} or {@link Status#DEADLINE_EXCEEDED}, cancelling their future. Cancelling the
+ * future of a field also cancels the future its data fetcher returned.
+ *
+ * <p>Batch loads are dispatched outside of data fetchers, so DataLoader calls don't carry it.
+ */
+public final class DeadlineSupport {
+  static final ScheduledExecutorService SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rejoiner-deadline-%d").build());
+
+  private DeadlineSupport() {}
+
+  /** Returns an instrumentation applying the deadline of the gRPC {@link Context}, if any. */
+  public static Instrumentation deadlineInstrumentation() {
+    return createInstrumentation(null);
+  }
+
+  /**
+   * Returns an instrumentation applying the deadline of the gRPC {@link Context}, or the timeout
+   * from when execution starts if that's sooner.
+   */
+  public static Instrumentation deadlineInstrumentation(Duration timeout) {
+    return createInstrumentation(timeout);
+  }
+
+  /** Returns the deadline of the request being executed on this thread, or null if there's none. */
+  @Nullable
+  public static Deadline currentDeadline() {
+    return Context.current().getDeadline();
+  }
+
+  private static Instrumentation createInstrumentation(@Nullable Duration timeout) {
+    return new SimpleInstrumentation() {
+      @Override
+      public InstrumentationState createState(InstrumentationCreateStateParameters parameters) {
+        Context parent = Context.current();
+        Deadline deadline = parent.getDeadline();
+        if (timeout != null) {
+          Deadline timeoutDeadline = Deadline.after(timeout.toNanos(), TimeUnit.NANOSECONDS);
+          deadline = deadline == null ? timeoutDeadline : deadline.minimum(timeoutDeadline);
+        }
+        return new RequestState(
+            deadline == null
+                ? parent.withCancellation()
+                : parent.withDeadline(deadline, SCHEDULER));
+      }
+
+      @Override
+      public InstrumentationContext<ExecutionResult> beginExecution(
+          InstrumentationExecutionParameters parameters) {
+        RequestState state = parameters.getInstrumentationState();
+        return new SimpleInstrumentationContext<ExecutionResult>() {
+          @Override
+          public void onCompleted(ExecutionResult result, Throwable t) {
+            if (state == null) {
+              return;
+            }
+            if (t != null || result == null || result.getData() == null) {
+              state.context.cancel(t);
+            } else if (!(result.getData() instanceof Publisher)
+                && !(getDeferredResults(result) instanceof Publisher)) {
+              state.context.cancel(null);
+            }
+          }
+        };
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public CompletableFuture<ExecutionResult> instrumentExecutionResult(
+          ExecutionResult result, InstrumentationExecutionParameters parameters) {
+        RequestState state = parameters.getInstrumentationState();
+        if (state == null || result.getData() == null) {
+          return CompletableFuture.completedFuture(result);
+        }
+        ExecutionResultImpl.Builder builder = ExecutionResultImpl.newExecutionResult().from(result);
+        if (result.getData() instanceof Publisher) {
+          // The events of a subscription are fetched in the request's context.
+          builder.data(closeOnTermination((Publisher<Object>) result.getData(), state.context));
+        }
+        if (getDeferredResults(result) instanceof Publisher) {
+          builder.addExtension(
+              GraphQL.DEFERRED_RESULTS,
+              closeOnTermination((Publisher<Object>) getDeferredResults(result), state.context));
+        }
+        return CompletableFuture.completedFuture(builder.build());
+      }
+
+      @Override
+      public DataFetcher<?> instrumentDataFetcher(
+          DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters) {
+        RequestState state = parameters.getInstrumentationState();
+        if (state == null) {
+          return dataFetcher;
+        }
+        Context.CancellableContext context = state.context;
+        return (DataFetcher<Object>)
+            dataFetchingEnvironment -> {
+              if (context.isCancelled()) {
+                throw Contexts.statusFromCancelled(context).asRuntimeException();
+              }
+              Context previous = context.attach();
+              Object data;
+              try {
+                data = dataFetcher.get(dataFetchingEnvironment);
+              } finally {
+                context.detach(previous);
+              }
+              if (data instanceof ListenableFuture) {
+                data =
+                    GuavaListenableFutureSupport.toCompletableFuture((ListenableFuture<?>) data);
+              }
+              if (data instanceof CompletionStage) {
+                return withCancellation(((CompletionStage<?>) data).toCompletableFuture(), context);
+              }
+              return data;
+            };
+      }
+    };
+  }
+
+  /**
+   * Returns a future that completes with the response, or fails once the request is cancelled,
+   * cancelling the response. Cancelling the future cancels the response too.
+   */
+  private static <T> CompletableFuture<T> withCancellation(
+      CompletableFuture<T> response, Context.CancellableContext context) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Context.CancellationListener cancellationListener =
+        cancelled -> {
+          Status status = Contexts.statusFromCancelled(cancelled);
+          result.completeExceptionally(status.asRuntimeException());
+          response.cancel(false);
+        };
+    context.addListener(cancellationListener, MoreExecutors.directExecutor());
+    response.whenComplete(
+        (value, t) -> {
+          context.removeListener(cancellationListener);
+          if (t != null) {
+            result.completeExceptionally(t);
+          } else {
+            result.complete(value);
+          }
+        });
+    result.whenComplete(
+        (value, t) -> {
+          if (result.isCancelled()) {
+            response.cancel(false);
+          }
+        });
+    return result;
+  }
+
+  @Nullable
+  private static Object getDeferredResults(ExecutionResult result) {
+    Map<Object, Object> extensions = result.getExtensions();
+    return extensions == null ? null : extensions.get(GraphQL.DEFERRED_RESULTS);
+  }
+
+  /**
+   * Returns a publisher of the same items, which cancels the context once they have all been
+   * published, publishing failed, or the subscriber cancelled its subscription.
+   */
+  private static <T> Publisher<T> closeOnTermination(
+      Publisher<T> publisher, Context.CancellableContext context) {
+    return subscriber ->
+        publisher.subscribe(
+            new Subscriber<T>() {
+              @Override
+              public void onSubscribe(Subscription subscription) {
+                subscriber.onSubscribe(
+                    new Subscription() {
+                      @Override
+                      public void request(long n) {
+                        subscription.request(n);
+                      }
+
+                      @Override
+                      public void cancel() {
+                        subscription.cancel();
+                        context.cancel(null);
+                      }
+                    });
+              }
+
+              @Override
+              public void onNext(T item) {
+                subscriber.onNext(item);
+              }
+
+              @Override
+              public void onError(Throwable t) {
+                context.cancel(null);
+                subscriber.onError(t);
+              }
+
+              @Override
+              public void onComplete() {
+                context.cancel(null);
+                subscriber.onComplete();
+              }
+            });
+  }
+
+  private static final class RequestState implements InstrumentationState {
+    final Context.CancellableContext context;
+
+    RequestState(Context.CancellableContext context) {
+      this.context = context;
+    }
+  }
+}
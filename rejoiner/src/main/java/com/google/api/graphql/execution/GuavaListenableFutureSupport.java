@@ -58,27 +58,45 @@ public final class GuavaListenableFutureSupport {
             dataFetchingEnvironment -> {
               Object data = dataFetcher.get(dataFetchingEnvironment);
               if (data instanceof ListenableFuture) {
-                ListenableFuture<Object> listenableFuture = (ListenableFuture<Object>) data;
-                CompletableFuture<Object> completableFuture = new CompletableFuture<>();
-                Futures.addCallback(
-                    listenableFuture,
-                    new FutureCallback<Object>() {
-                      @Override
-                      public void onSuccess(Object result) {
-                        completableFuture.complete(result);
-                      }
-
-                      @Override
-                      public void onFailure(Throwable t) {
-                        completableFuture.completeExceptionally(t);
-                      }
-                    },
-                    executor);
-                return completableFuture;
+                return toCompletableFuture((ListenableFuture<?>) data, executor);
               }
               return data;
             };
       }
     };
   }
+
+  /**
+   * Returns a {@link CompletableFuture} that completes with the {@link ListenableFuture}.
+   * Cancelling it cancels the ListenableFuture, and with it the call it's waiting for.
+   */
+  public static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> future) {
+    return toCompletableFuture(future, MoreExecutors.directExecutor());
+  }
+
+  private static <T> CompletableFuture<T> toCompletableFuture(
+      ListenableFuture<T> listenableFuture, Executor executor) {
+    CompletableFuture<T> completableFuture = new CompletableFuture<>();
+    Futures.addCallback(
+        listenableFuture,
+        new FutureCallback<T>() {
+          @Override
+          public void onSuccess(T result) {
+            completableFuture.complete(result);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            completableFuture.completeExceptionally(t);
+          }
+        },
+        executor);
+    completableFuture.whenComplete(
+        (result, t) -> {
+          if (completableFuture.isCancelled()) {
+            listenableFuture.cancel(false);
+          }
+        });
+    return completableFuture;
+  }
 }
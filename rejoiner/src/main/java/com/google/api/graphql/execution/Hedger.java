@@ -0,0 +1,257 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.Context;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Hedges the calls of an idempotent RPC: when a call hasn't completed after a percentile of the
+ * latencies of recent calls, a second attempt is sent, the first successful response wins and the
+ * other attempt is cancelled.
+ *
+ * <p>Calls aren't hedged until enough latencies have been recorded. A budget caps the extra load:
+ * each call earns a fraction of a hedge, up to a small burst, and each hedge spends a whole one.
+ * Hedges are sent in the gRPC {@link Context} of the call, so they share its deadline and
+ * cancellation.
+ */
+public final class Hedger {
+
+  private static final ScheduledExecutorService SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rejoiner-hedger-%d").build());
+
+  /** Number of recent latencies the delay is computed from. */
+  private static final int WINDOW = 1024;
+  /** Number of latencies recorded before calls are hedged. */
+  private static final int MIN_SAMPLES = 100;
+  /** Number of latencies recorded between updates of the delay. */
+  private static final int UPDATE_INTERVAL = 64;
+  /** Most hedges that can be saved up, in thousandths. */
+  private static final long MAX_TOKENS = 10_000;
+
+  private final double percentile;
+  private final long minDelayNanos;
+  private final long tokensPerCall;
+  private final Ticker ticker;
+  private final AtomicLongArray latencies = new AtomicLongArray(WINDOW);
+  private final AtomicLong sampleCount = new AtomicLong();
+  private final AtomicLong tokens = new AtomicLong();
+  private final LongAdder callCount = new LongAdder();
+  private final LongAdder hedgeCount = new LongAdder();
+  private final LongAdder hedgeWinCount = new LongAdder();
+  private volatile long delayNanos = -1;
+
+  private Hedger(Builder builder) {
+    this.percentile = builder.percentile;
+    this.minDelayNanos = builder.minDelay.toNanos();
+    this.tokensPerCall = Math.round(builder.budget * 1000);
+    this.ticker = builder.ticker;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Makes a call, hedging it with a second attempt if it's slow. */
+  public <T> CompletableFuture<T> call(Supplier<? extends CompletionStage<? extends T>> attempt) {
+    callCount.increment();
+    tokens.getAndUpdate(available -> Math.min(MAX_TOKENS, available + tokensPerCall));
+    HedgedCall<T> call = new HedgedCall<>(attempt);
+    call.start(false);
+    long delay = delayNanos;
+    if (delay >= 0 && !call.result.isDone()) {
+      Context context = Context.current();
+      ScheduledFuture<?> hedge =
+          SCHEDULER.schedule(context.wrap(call::hedge), delay, TimeUnit.NANOSECONDS);
+      call.result.whenComplete((value, t) -> hedge.cancel(false));
+    }
+    return call.result;
+  }
+
+  /** Returns the delay after which calls are hedged, or null until enough calls completed. */
+  @Nullable
+  public Duration delay() {
+    long delay = delayNanos;
+    return delay < 0 ? null : Duration.ofNanos(delay);
+  }
+
+  public long callCount() {
+    return callCount.sum();
+  }
+
+  /** Returns the number of second attempts sent. */
+  public long hedgeCount() {
+    return hedgeCount.sum();
+  }
+
+  /** Returns the number of calls whose second attempt responded first. */
+  public long hedgeWinCount() {
+    return hedgeWinCount.sum();
+  }
+
+  private boolean tryAcquireHedge() {
+    long available;
+    do {
+      available = tokens.get();
+      if (available < 1000) {
+        return false;
+      }
+    } while (!tokens.compareAndSet(available, available - 1000));
+    return true;
+  }
+
+  private void recordLatency(long latencyNanos) {
+    long sample = sampleCount.getAndIncrement();
+    latencies.set((int) (sample % WINDOW), latencyNanos);
+    long recorded = sample + 1;
+    if (recorded >= MIN_SAMPLES && (recorded == MIN_SAMPLES || recorded % UPDATE_INTERVAL == 0)) {
+      updateDelay(Math.min(recorded, WINDOW));
+    }
+  }
+
+  private synchronized void updateDelay(long count) {
+    long[] sorted = new long[(int) count];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = latencies.get(i);
+    }
+    Arrays.sort(sorted);
+    int index = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+    delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, index)]);
+  }
+
+  /** The attempts of a call, completing its result with the first successful response. */
+  private final class HedgedCall<T> {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    private final Supplier<? extends CompletionStage<? extends T>> attempt;
+    private final List<CompletableFuture<? extends T>> attempts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean won = new AtomicBoolean();
+    /** When the first attempt was sent: the latency of a call includes the delay of its hedge. */
+    private final long startNanos = ticker.read();
+
+    HedgedCall(Supplier<? extends CompletionStage<? extends T>> attempt) {
+      this.attempt = attempt;
+      result.whenComplete((value, t) -> cancelAttempts());
+    }
+
+    void hedge() {
+      if (!result.isDone() && tryAcquireHedge()) {
+        hedgeCount.increment();
+        start(true);
+      }
+    }
+
+    void start(boolean hedge) {
+      pending.incrementAndGet();
+      CompletableFuture<? extends T> response;
+      try {
+        response = attempt.get().toCompletableFuture();
+      } catch (RuntimeException e) {
+        response = new CompletableFuture<>();
+        response.completeExceptionally(e);
+      }
+      attempts.add(response);
+      response.whenComplete(
+          (value, t) -> {
+            if (t == null) {
+              // Settles the call before completing it, so callers see its final state.
+              if (won.compareAndSet(false, true)) {
+                recordLatency(ticker.read() - startNanos);
+                if (hedge) {
+                  hedgeWinCount.increment();
+                }
+                cancelAttempts();
+                result.complete(value);
+              }
+            } else if (pending.decrementAndGet() == 0) {
+              // The other attempt failed too, or was never sent.
+              result.completeExceptionally(t);
+            }
+          });
+      if (result.isDone()) {
+        cancelAttempts();
+      }
+    }
+
+    private void cancelAttempts() {
+      for (CompletableFuture<? extends T> response : attempts) {
+        response.cancel(false);
+      }
+    }
+  }
+
+  /** Builder of a {@link Hedger}. */
+  public static final class Builder {
+    private double percentile = 95;
+    private Duration minDelay = Duration.ZERO;
+    private double budget = 0.1;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder() {}
+
+    /** Sets the percentile of recent latencies after which calls are hedged, 95 by default. */
+    public Builder percentile(double percentile) {
+      this.percentile = percentile;
+      return this;
+    }
+
+    /** Sets the shortest delay after which calls are hedged. */
+    public Builder minDelay(Duration minDelay) {
+      this.minDelay = minDelay;
+      return this;
+    }
+
+    /** Sets the most hedges sent per call, on average, 0.1 by default. */
+    public Builder budget(double budget) {
+      this.budget = budget;
+      return this;
+    }
+
+    public Builder ticker(Ticker ticker) {
+      this.ticker = ticker;
+      return this;
+    }
+
+    public Hedger build() {
+      Preconditions.checkState(
+          percentile > 0 && percentile <= 100, "percentile must be in (0, 100]");
+      Preconditions.checkState(
+          minDelay != null && !minDelay.isNegative(), "minDelay must not be negative");
+      Preconditions.checkState(budget >= 0 && budget <= 1, "budget must be in [0, 1]");
+      Preconditions.checkState(ticker != null, "ticker must be set");
+      return new Hedger(this);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/** Keys of RPC requests, by which their calls are shared and their responses cached. */
+public final class RequestKeys {
+  private RequestKeys() {}
+
+  /**
+   * Returns the serialized bytes of the request. Map entries are serialized in key order, so equal
+   * requests have the same key regardless of the order their maps were populated in.
+   */
+  public static ByteString of(Message request) {
+    ByteString.Output key = ByteString.newOutput(request.getSerializedSize());
+    CodedOutputStream output = CodedOutputStream.newInstance(key);
+    output.useDeterministicSerialization();
+    try {
+      request.writeTo(output);
+      output.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return key.toByteString();
+  }
+}
@@ -0,0 +1,317 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Status;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the responses of an RPC by request, for a time to live, in a size bounded cache.
+ *
+ * <p>Requests are the same when their keys are, see {@link RequestKeys}. Callers making a request
+ * that is being loaded share the load, and failed loads aren't cached. For a while after the time
+ * to live, a stale response is still returned while a single call refreshes it in the background.
+ *
+ * <p>Loads and refreshes are shared by requests, so they run in a gRPC {@link Context} of their own
+ * rather than in that of the request that started them, under a deadline of the load timeout. A
+ * load that outlives it fails with {@link Status#DEADLINE_EXCEEDED}, and isn't cached.
+ */
+public final class ResponseCache<T> {
+
+  private final Cache<ByteString, Entry<T>> cache;
+  private final ConcurrentMap<ByteString, Entry<T>> entries;
+  private final Ticker ticker;
+  private final long ttlNanos;
+  private final long staleNanos;
+  private final long loadTimeoutNanos;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder staleHitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder loadFailureCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  private ResponseCache(Builder builder) {
+    this.ticker = builder.ticker;
+    this.ttlNanos = builder.ttl.toNanos();
+    this.staleNanos = builder.staleWhileRevalidate.toNanos();
+    this.loadTimeoutNanos = builder.loadTimeout.toNanos();
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(builder.maximumSize)
+            .expireAfterWrite(ttlNanos + staleNanos, TimeUnit.NANOSECONDS)
+            .ticker(ticker)
+            .<ByteString, Entry<T>>removalListener(
+                notification -> {
+                  if (notification.getCause() == RemovalCause.SIZE) {
+                    evictionCount.increment();
+                  }
+                })
+            .build();
+    this.entries = cache.asMap();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Returns the cached response to the request, or loads it. */
+  public CompletableFuture<T> get(
+      Message request, Supplier<? extends CompletionStage<? extends T>> load) {
+    return get(RequestKeys.of(request), load);
+  }
+
+  /** Returns the cached response for the key, or loads it. */
+  public CompletableFuture<T> get(
+      ByteString key, Supplier<? extends CompletionStage<? extends T>> load) {
+    while (true) {
+      Entry<T> entry = entries.get(key);
+      if (entry == null) {
+        Entry<T> created = new Entry<>();
+        if (entries.putIfAbsent(key, created) == null) {
+          missCount.increment();
+          load(key, created, load);
+          return copy(created.response);
+        }
+        continue;
+      }
+      if (!entry.response.isDone()) {
+        hitCount.increment();
+        return copy(entry.response);
+      }
+      long age = ticker.read() - entry.loadedNanos;
+      if (!entry.response.isCompletedExceptionally() && age < ttlNanos) {
+        hitCount.increment();
+        return copy(entry.response);
+      }
+      if (!entry.response.isCompletedExceptionally() && age < ttlNanos + staleNanos) {
+        staleHitCount.increment();
+        if (entry.refreshing.compareAndSet(false, true)) {
+          refresh(key, entry, load);
+        }
+        return copy(entry.response);
+      }
+      Entry<T> created = new Entry<>();
+      if (entries.replace(key, entry, created)) {
+        missCount.increment();
+        load(key, created, load);
+        return copy(created.response);
+      }
+    }
+  }
+
+  /** Returns the number of cached responses, including those being loaded. */
+  public long size() {
+    return cache.size();
+  }
+
+  public Stats stats() {
+    return new AutoValue_ResponseCache_Stats(
+        hitCount.sum(),
+        staleHitCount.sum(),
+        missCount.sum(),
+        loadFailureCount.sum(),
+        evictionCount.sum());
+  }
+
+  private void load(
+      ByteString key, Entry<T> entry, Supplier<? extends CompletionStage<? extends T>> load) {
+    call(load)
+        .whenComplete(
+            (response, t) -> {
+              if (t != null) {
+                loadFailureCount.increment();
+                entries.remove(key, entry);
+                entry.response.completeExceptionally(t);
+              } else {
+                entry.loadedNanos = ticker.read();
+                // Restarts the expiration from when the response arrived.
+                entries.replace(key, entry, entry);
+                entry.response.complete(response);
+              }
+            });
+  }
+
+  private void refresh(
+      ByteString key, Entry<T> stale, Supplier<? extends CompletionStage<? extends T>> load) {
+    call(load)
+        .whenComplete(
+            (response, t) -> {
+              if (t != null) {
+                loadFailureCount.increment();
+                stale.refreshing.set(false);
+              } else {
+                Entry<T> fresh = new Entry<>();
+                fresh.loadedNanos = ticker.read();
+                fresh.response.complete(response);
+                entries.replace(key, stale, fresh);
+              }
+            });
+  }
+
+  /** Starts a load in a context of its own, which is cancelled once the load completes. */
+  private CompletionStage<T> call(Supplier<? extends CompletionStage<? extends T>> load) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Context.CancellableContext context =
+        Context.ROOT.withDeadlineAfter(
+            loadTimeoutNanos, TimeUnit.NANOSECONDS, DeadlineSupport.SCHEDULER);
+    CompletionStage<? extends T> response;
+    Context previous = context.attach();
+    try {
+      response = load.get();
+    } catch (RuntimeException e) {
+      context.cancel(null);
+      result.completeExceptionally(e);
+      return result;
+    } finally {
+      context.detach(previous);
+    }
+    Context.CancellationListener cancellationListener =
+        cancelled -> {
+          Status status = Contexts.statusFromCancelled(cancelled);
+          result.completeExceptionally(status.asRuntimeException());
+          if (response instanceof Future) {
+            ((Future<?>) response).cancel(false);
+          }
+        };
+    context.addListener(cancellationListener, MoreExecutors.directExecutor());
+    response.whenComplete(
+        (value, t) -> {
+          context.removeListener(cancellationListener);
+          context.cancel(null);
+          if (t != null) {
+            result.completeExceptionally(t);
+          } else {
+            result.complete(value);
+          }
+        });
+    return result;
+  }
+
+  private static <T> CompletableFuture<T> copy(CompletableFuture<T> response) {
+    CompletableFuture<T> copy = new CompletableFuture<>();
+    response.whenComplete(
+        (value, t) -> {
+          if (t != null) {
+            copy.completeExceptionally(t);
+          } else {
+            copy.complete(value);
+          }
+        });
+    return copy;
+  }
+
+  private static final class Entry<T> {
+    final CompletableFuture<T> response = new CompletableFuture<>();
+    final AtomicBoolean refreshing = new AtomicBoolean();
+    volatile long loadedNanos;
+  }
+
+  /** Counts of the cache lookups and loads since the cache was created. */
+  @AutoValue
+  public abstract static class Stats {
+    /** Lookups that returned a fresh response, or joined a load in progress. */
+    public abstract long hitCount();
+
+    /** Lookups that returned a stale response and started or joined its refresh. */
+    public abstract long staleHitCount();
+
+    /** Lookups that started a load. */
+    public abstract long missCount();
+
+    /** Loads and refreshes that failed. */
+    public abstract long loadFailureCount();
+
+    /** Responses evicted to keep the cache within its maximum size. */
+    public abstract long evictionCount();
+
+    public double hitRate() {
+      long requestCount = hitCount() + staleHitCount() + missCount();
+      return requestCount == 0 ? 1.0 : (double) (hitCount() + staleHitCount()) / requestCount;
+    }
+  }
+
+  /** Builder of a {@link ResponseCache}. */
+  public static final class Builder {
+    private Duration ttl;
+    private Duration staleWhileRevalidate = Duration.ZERO;
+    private long maximumSize = 1000;
+    private Duration loadTimeout = Duration.ofSeconds(30);
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder() {}
+
+    /** Sets how long a response is fresh. */
+    public Builder ttl(Duration ttl) {
+      this.ttl = ttl;
+      return this;
+    }
+
+    /** Sets how long after the time to live a stale response is returned while it's refreshed. */
+    public Builder staleWhileRevalidate(Duration staleWhileRevalidate) {
+      this.staleWhileRevalidate = staleWhileRevalidate;
+      return this;
+    }
+
+    /** Sets the maximum number of cached responses, 1000 by default. */
+    public Builder maximumSize(long maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /** Sets how long a load or refresh may take before it fails, 30 seconds by default. */
+    public Builder loadTimeout(Duration loadTimeout) {
+      this.loadTimeout = loadTimeout;
+      return this;
+    }
+
+    public Builder ticker(Ticker ticker) {
+      this.ticker = ticker;
+      return this;
+    }
+
+    public <T> ResponseCache<T> build() {
+      Preconditions.checkState(
+          ttl != null && !ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+      Preconditions.checkState(
+          staleWhileRevalidate != null && !staleWhileRevalidate.isNegative(),
+          "staleWhileRevalidate must not be negative");
+      Preconditions.checkState(maximumSize > 0, "maximumSize must be positive");
+      Preconditions.checkState(
+          loadTimeout != null && !loadTimeout.isNegative() && !loadTimeout.isZero(),
+          "loadTimeout must be positive");
+      Preconditions.checkState(ticker != null, "ticker must be set");
+      return new ResponseCache<>(this);
+    }
+  }
+}
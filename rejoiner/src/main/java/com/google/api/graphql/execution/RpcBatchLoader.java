@@ -0,0 +1,250 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import graphql.schema.DataFetcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+
+/**
+ * Loads protos by key with a list-by-IDs RPC, such as {@code ListBooks} with repeated {@code ids}.
+ *
+ * <p>The keys of a batch are deduplicated, and split into requests of at most {@code
+ * maxBatchSize} keys that are sent concurrently. Returned messages are matched to the keys by
+ * their key field, so the RPC may return them in any order, and keys without a returned message
+ * load as null.
+ */
+public final class RpcBatchLoader<K, V extends Message> implements BatchLoader<K, V> {
+
+  private final Message requestPrototype;
+  private final FieldDescriptor requestKeyField;
+  private final ImmutableList<FieldDescriptor> responseValuesPath;
+  private final FieldDescriptor responseKeyField;
+  private final int maxBatchSize;
+  private final Function<? super Message, ? extends CompletionStage<? extends Message>> rpc;
+
+  private RpcBatchLoader(Builder builder) {
+    this.requestPrototype = builder.requestPrototype;
+    this.requestKeyField = builder.requestKeyField;
+    this.responseValuesPath = builder.responseValuesPath;
+    this.responseKeyField = builder.responseKeyField;
+    this.maxBatchSize = builder.maxBatchSize;
+    this.rpc = builder.rpc;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Returns a new DataLoader, which caches the loaded values, for a single request. */
+  public DataLoader<K, V> newDataLoader() {
+    return DataLoader.newDataLoader(this);
+  }
+
+  @Override
+  public CompletionStage<List<V>> load(List<K> keys) {
+    if (keys.isEmpty()) {
+      return CompletableFuture.completedFuture(ImmutableList.of());
+    }
+    ImmutableSet<K> uniqueKeys = ImmutableSet.copyOf(keys);
+    Iterable<List<K>> batches =
+        maxBatchSize > 0
+            ? Iterables.partition(uniqueKeys, maxBatchSize)
+            : ImmutableList.<List<K>>of(uniqueKeys.asList());
+
+    Map<Object, V> values = Maps.newHashMapWithExpectedSize(uniqueKeys.size());
+    List<CompletableFuture<Void>> calls = new ArrayList<>();
+    for (List<K> batch : batches) {
+      Message.Builder request = requestPrototype.toBuilder();
+      for (K key : batch) {
+        request.addRepeatedField(requestKeyField, key);
+      }
+      calls.add(
+          rpc.apply(request.build())
+              .thenAccept(
+                  response -> {
+                    synchronized (values) {
+                      addValues(response, 0, values);
+                    }
+                  })
+              .toCompletableFuture());
+    }
+
+    return CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            ignored -> {
+              List<V> result = new ArrayList<>(keys.size());
+              synchronized (values) {
+                for (K key : keys) {
+                  result.add(values.get(key));
+                }
+              }
+              return result;
+            });
+  }
+
+  /** Adds the messages at the end of the values path, by key. */
+  @SuppressWarnings("unchecked")
+  private void addValues(Message message, int depth, Map<Object, V> values) {
+    FieldDescriptor field = responseValuesPath.get(depth);
+    if (depth == responseValuesPath.size() - 1) {
+      for (Object value : (List<?>) message.getField(field)) {
+        values.put(((Message) value).getField(responseKeyField), (V) value);
+      }
+    } else if (field.isRepeated()) {
+      for (Object value : (List<?>) message.getField(field)) {
+        addValues((Message) value, depth + 1, values);
+      }
+    } else {
+      addValues((Message) message.getField(field), depth + 1, values);
+    }
+  }
+
+  /**
+   * Returns a data fetcher joining the source proto to the values loaded with the named DataLoader
+   * by the keys in {@code sourceKeyField}, for a field added with a {@link
+   * com.google.api.graphql.rejoiner.TypeModification}. A repeated key field loads a list.
+   */
+  @SuppressWarnings("unchecked")
+  public static DataFetcher<CompletableFuture<?>> join(String loaderName, String sourceKeyField) {
+    return environment -> {
+      Message source = environment.getSource();
+      FieldDescriptor field = source.getDescriptorForType().findFieldByName(sourceKeyField);
+      Preconditions.checkArgument(
+          field != null,
+          "Field %s not found in %s",
+          sourceKeyField,
+          source.getDescriptorForType().getFullName());
+      DataLoader<Object, Object> loader = environment.getDataLoader(loaderName);
+      Preconditions.checkState(loader != null, "DataLoader %s is not registered", loaderName);
+      Object keys = source.getField(field);
+      return field.isRepeated() ? loader.loadMany((List<Object>) keys) : loader.load(keys);
+    };
+  }
+
+  /** Builder for {@link RpcBatchLoader}. */
+  public static final class Builder {
+    private Message requestPrototype;
+    private String requestKeyFieldName;
+    private FieldDescriptor requestKeyField;
+    private Descriptor responseDescriptor;
+    private String responseKeyPath;
+    private ImmutableList<FieldDescriptor> responseValuesPath;
+    private FieldDescriptor responseKeyField;
+    private int maxBatchSize;
+    private Function<? super Message, ? extends CompletionStage<? extends Message>> rpc;
+
+    private Builder() {}
+
+    /** The request to add the keys to, usually the default instance. */
+    public Builder requestPrototype(Message requestPrototype) {
+      this.requestPrototype = requestPrototype;
+      return this;
+    }
+
+    /** Name of the repeated field of the request that holds the keys. */
+    public Builder requestKeyField(String requestKeyField) {
+      this.requestKeyFieldName = requestKeyField;
+      return this;
+    }
+
+    /** Descriptor of the response of the RPC. */
+    public Builder responseDescriptor(Descriptor responseDescriptor) {
+      this.responseDescriptor = responseDescriptor;
+      return this;
+    }
+
+    /**
+     * Dot separated path of the key field of the returned messages, starting with the repeated
+     * field of the response that holds them, such as {@code books.id}.
+     */
+    public Builder responseKeyField(String responseKeyField) {
+      this.responseKeyPath = responseKeyField;
+      return this;
+    }
+
+    /** Maximum number of keys per request, or 0 for no limit. */
+    public Builder maxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /** Calls the RPC. */
+    public Builder rpc(
+        Function<? super Message, ? extends CompletionStage<? extends Message>> rpc) {
+      this.rpc = rpc;
+      return this;
+    }
+
+    public <K, V extends Message> RpcBatchLoader<K, V> build() {
+      Preconditions.checkNotNull(requestPrototype, "requestPrototype");
+      Preconditions.checkNotNull(responseDescriptor, "responseDescriptor");
+      Preconditions.checkNotNull(rpc, "rpc");
+      Preconditions.checkArgument(maxBatchSize >= 0, "maxBatchSize must not be negative");
+
+      Descriptor requestDescriptor = requestPrototype.getDescriptorForType();
+      requestKeyField = requestDescriptor.findFieldByName(requestKeyFieldName);
+      Preconditions.checkArgument(
+          requestKeyField != null && requestKeyField.isRepeated(),
+          "%s has no repeated field %s",
+          requestDescriptor.getFullName(),
+          requestKeyFieldName);
+
+      List<String> names = Splitter.on('.').splitToList(responseKeyPath);
+      ImmutableList.Builder<FieldDescriptor> path = ImmutableList.builder();
+      Descriptor current = responseDescriptor;
+      for (String name : names.subList(0, names.size() - 1)) {
+        FieldDescriptor field = current == null ? null : current.findFieldByName(name);
+        Preconditions.checkArgument(
+            field != null && field.getJavaType() == FieldDescriptor.JavaType.MESSAGE,
+            "%s is not a path to messages in %s",
+            responseKeyPath,
+            responseDescriptor.getFullName());
+        path.add(field);
+        current = field.getMessageType();
+      }
+      responseValuesPath = path.build();
+      Preconditions.checkArgument(
+          !responseValuesPath.isEmpty() && Iterables.getLast(responseValuesPath).isRepeated(),
+          "%s must start with the repeated field holding the returned messages",
+          responseKeyPath);
+      responseKeyField = current.findFieldByName(Iterables.getLast(names));
+      Preconditions.checkArgument(
+          responseKeyField != null
+              && !responseKeyField.isRepeated()
+              && responseKeyField.getJavaType() == requestKeyField.getJavaType(),
+          "%s must have a key field %s of the same type as %s",
+          current.getFullName(),
+          responseKeyPath,
+          requestKeyField.getFullName());
+      return new RpcBatchLoader<>(this);
+    }
+  }
+}
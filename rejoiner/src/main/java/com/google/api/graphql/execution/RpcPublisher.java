@@ -0,0 +1,184 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.common.math.LongMath;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publishes the responses of a server-streaming RPC, for use as the value of a {@link
+ * com.google.api.graphql.rejoiner.Subscription} field.
+ *
+ * <p>Each subscriber starts its own call. Responses are requested from the server as the
+ * subscriber requests them, so a slow subscriber slows down the stream instead of buffering it,
+ * and cancelling the subscription cancels the call. For example, in a subscription method:
+ *
+ * <pre>{@code
+ * Publisher<HelloReply> greetings(HelloRequest request, GreeterStub stub) {
+ *   return RpcPublisher.create(responses -> stub.sayHelloStreaming(request, responses));
+ * }
+ * }</pre>
+ */
+public final class RpcPublisher<T> implements Publisher<T> {
+
+  private final Consumer<StreamObserver<T>> call;
+
+  private RpcPublisher(Consumer<StreamObserver<T>> call) {
+    this.call = call;
+  }
+
+  /** Returns a publisher that starts the call with the given observer for each subscriber. */
+  public static <T> RpcPublisher<T> create(Consumer<StreamObserver<T>> call) {
+    return new RpcPublisher<>(call);
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+    CallSubscription<T> subscription = new CallSubscription<>(subscriber);
+    try {
+      call.accept(subscription);
+    } catch (RuntimeException e) {
+      subscription.onError(e);
+    }
+    subscription.subscribe();
+  }
+
+  /**
+   * Bridges a call to a subscriber. The call asks for one response when it starts, further
+   * responses are requested as the subscriber signals demand, so at most one response is queued.
+   */
+  private static final class CallSubscription<T>
+      implements ClientResponseObserver<Object, T>, Subscription {
+    private final Subscriber<? super T> subscriber;
+    private final Queue<T> responses = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger drains = new AtomicInteger();
+    private final AtomicBoolean initialRequestUsed = new AtomicBoolean();
+    private volatile ClientCallStreamObserver<Object> requestStream;
+    private volatile boolean subscribed;
+    private volatile boolean done;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private boolean terminated;
+
+    CallSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+      this.requestStream = requestStream;
+      requestStream.disableAutoInboundFlowControl();
+    }
+
+    void subscribe() {
+      subscriber.onSubscribe(this);
+      subscribed = true;
+      drain();
+    }
+
+    @Override
+    public void onNext(T value) {
+      responses.add(value);
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void onCompleted() {
+      done = true;
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancel();
+        onError(new IllegalArgumentException("Requested " + n + " responses, expected > 0"));
+        return;
+      }
+      long previous;
+      do {
+        previous = demand.get();
+      } while (!demand.compareAndSet(previous, LongMath.saturatedAdd(previous, n)));
+      // The call already asked for the first response when it started.
+      long upstream = initialRequestUsed.compareAndSet(false, true) ? n - 1 : n;
+      ClientCallStreamObserver<Object> requestStream = this.requestStream;
+      if (upstream > 0 && requestStream != null && !done) {
+        requestStream.request((int) Math.min(upstream, Integer.MAX_VALUE));
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (cancelled) {
+        return;
+      }
+      cancelled = true;
+      ClientCallStreamObserver<Object> requestStream = this.requestStream;
+      if (requestStream != null && !done) {
+        requestStream.cancel("Subscription was cancelled", null);
+      }
+    }
+
+    /** Emits queued responses and the terminal signal, from one thread at a time. */
+    private void drain() {
+      if (!subscribed || drains.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        while (!cancelled && demand.get() > 0 && !responses.isEmpty()) {
+          if (demand.get() != Long.MAX_VALUE) {
+            demand.decrementAndGet();
+          }
+          subscriber.onNext(responses.poll());
+        }
+        if (cancelled) {
+          responses.clear();
+        } else if (done && responses.isEmpty() && !terminated) {
+          terminated = true;
+          if (error != null) {
+            subscriber.onError(error);
+          } else {
+            subscriber.onComplete();
+          }
+        }
+        missed = drains.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+}
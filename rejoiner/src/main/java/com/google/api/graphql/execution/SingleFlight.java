@@ -0,0 +1,162 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import io.grpc.Context;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shares a single in-flight call of an idempotent RPC between all callers making the same
+ * request at the same time, whether they are fields of one GraphQL request or of concurrent ones.
+ *
+ * <p>Requests are the same when their keys are, see {@link RequestKeys}. A call is shared from when
+ * it starts until it completes, so later requests start a new call. Each caller gets its own
+ * future, so cancelling it doesn't affect the other callers. The call itself is cancelled once all
+ * of its callers have cancelled their futures.
+ *
+ * <p>The call runs in a {@link Context} of its own rather than in that of the caller that started
+ * it. A caller whose context is cancelled, or whose deadline passes, cancels its future, so the
+ * call runs until the latest deadline of its callers.
+ */
+public final class SingleFlight<T> {
+
+  private final ConcurrentMap<ByteString, Call> inFlight = new ConcurrentHashMap<>();
+
+  /** Returns the result of the in-flight call with the same request, or of a new call. */
+  public CompletableFuture<T> execute(
+      Message request, Supplier<? extends CompletionStage<? extends T>> call) {
+    return execute(RequestKeys.of(request), call);
+  }
+
+  /** Returns the result of the in-flight call with the same key, or of a new call. */
+  public CompletableFuture<T> execute(
+      ByteString key, Supplier<? extends CompletionStage<? extends T>> call) {
+    while (true) {
+      Call shared = inFlight.get(key);
+      if (shared == null) {
+        Call created = new Call(key);
+        if (inFlight.putIfAbsent(key, created) == null) {
+          CompletableFuture<T> result = created.newCaller();
+          created.start(call);
+          return result;
+        }
+      } else if (shared.join()) {
+        return shared.newCaller();
+      } else {
+        // All callers of the call cancelled it.
+        inFlight.remove(key, shared);
+      }
+    }
+  }
+
+  /** Returns the number of calls in flight. */
+  public int inFlightCount() {
+    return inFlight.size();
+  }
+
+  /** A call in flight, and the number of its callers that haven't cancelled their future. */
+  private final class Call {
+    private final ByteString key;
+    private final Context.CancellableContext context = Context.ROOT.withCancellation();
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final AtomicInteger callers = new AtomicInteger(1);
+    private volatile CompletionStage<? extends T> response;
+
+    Call(ByteString key) {
+      this.key = key;
+    }
+
+    void start(Supplier<? extends CompletionStage<? extends T>> call) {
+      Context previous = context.attach();
+      try {
+        response = call.get();
+      } catch (RuntimeException e) {
+        inFlight.remove(key, this);
+        context.cancel(null);
+        result.completeExceptionally(e);
+        return;
+      } finally {
+        context.detach(previous);
+      }
+      response.whenComplete(
+          (value, t) -> {
+            inFlight.remove(key, this);
+            context.cancel(null);
+            if (t != null) {
+              result.completeExceptionally(t);
+            } else {
+              result.complete(value);
+            }
+          });
+      if (callers.get() == 0) {
+        cancel();
+      }
+    }
+
+    /** Adds a caller, unless all callers have cancelled the call. */
+    boolean join() {
+      int count;
+      do {
+        count = callers.get();
+        if (count == 0) {
+          return false;
+        }
+      } while (!callers.compareAndSet(count, count + 1));
+      return true;
+    }
+
+    /** Returns the future of a caller, which was counted when created or by {@link #join}. */
+    CompletableFuture<T> newCaller() {
+      CompletableFuture<T> copy = new CompletableFuture<>();
+      Context caller = Context.current();
+      Context.CancellationListener listener = cancelled -> copy.cancel(false);
+      caller.addListener(listener, MoreExecutors.directExecutor());
+      result.whenComplete(
+          (value, t) -> {
+            if (t != null) {
+              copy.completeExceptionally(t);
+            } else {
+              copy.complete(value);
+            }
+          });
+      copy.whenComplete(
+          (value, t) -> {
+            caller.removeListener(listener);
+            if (copy.isCancelled() && callers.decrementAndGet() == 0) {
+              cancel();
+            }
+          });
+      return copy;
+    }
+
+    private void cancel() {
+      inFlight.remove(key, this);
+      context.cancel(null);
+      CompletionStage<? extends T> started = response;
+      if (started instanceof Future) {
+        ((Future<?>) started).cancel(false);
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+import graphql.schema.DataFetchingEnvironment;
+
+/**
+ * Populates a {@link FieldMask} field of a request proto, such as {@code read_mask}, with the
+ * fields selected in the GraphQL query.
+ */
+public final class FieldMaskInjector {
+
+  private final FieldDescriptor fieldMaskField;
+  private final Descriptor responseDescriptor;
+
+  private FieldMaskInjector(FieldDescriptor fieldMaskField, Descriptor responseDescriptor) {
+    this.fieldMaskField = fieldMaskField;
+    this.responseDescriptor = responseDescriptor;
+  }
+
+  /**
+   * Creates an injector for the {@link FieldMask} field {@code fieldMaskName} of the request.
+   *
+   * @throws IllegalArgumentException if the request doesn't have a FieldMask field with that name
+   */
+  public static FieldMaskInjector create(
+      Descriptor requestDescriptor, String fieldMaskName, Descriptor responseDescriptor) {
+    FieldDescriptor field = requestDescriptor.findFieldByName(fieldMaskName);
+    Preconditions.checkArgument(
+        hasFieldMask(requestDescriptor, fieldMaskName),
+        "%s does not have a FieldMask field named %s",
+        requestDescriptor.getFullName(),
+        fieldMaskName);
+    return new FieldMaskInjector(field, responseDescriptor);
+  }
+
+  /** Returns true if the request has a singular FieldMask field called {@code fieldMaskName}. */
+  public static boolean hasFieldMask(Descriptor requestDescriptor, String fieldMaskName) {
+    FieldDescriptor field = requestDescriptor.findFieldByName(fieldMaskName);
+    return field != null
+        && !field.isRepeated()
+        && field.getType() == FieldDescriptor.Type.MESSAGE
+        && field.getMessageType().getFullName().equals(FieldMask.getDescriptor().getFullName());
+  }
+
+  /** Returns the FieldMask for the selection of the current field. */
+  public FieldMask getFieldMask(DataFetchingEnvironment environment) {
+    return SelectorToFieldMask.getFieldMaskForProto(environment, responseDescriptor).build();
+  }
+
+  /**
+   * Returns the request with the field mask set, unless the request already has one.
+   *
+   * <p>Call this once the arguments of the field are merged into the request: a mask the client
+   * passed as an argument takes precedence over the selection. Nothing is set if none of the
+   * selected fields are part of the response proto, since an empty mask usually means that all
+   * fields are returned.
+   */
+  public Message inject(Message request, DataFetchingEnvironment environment) {
+    if (request.hasField(fieldMaskField)) {
+      return request;
+    }
+    FieldMask fieldMask = getFieldMask(environment);
+    if (fieldMask.getPathsCount() == 0) {
+      return request;
+    }
+    return request.toBuilder().setField(fieldMaskField, fieldMask).build();
+  }
+}
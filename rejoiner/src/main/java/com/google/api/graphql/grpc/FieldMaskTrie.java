@@ -0,0 +1,203 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.auto.value.AutoValue;
+import com.google.auto.value.extension.memoized.Memoized;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+
+/**
+ * A set of field paths of a proto, stored as a trie keyed by field number.
+ *
+ * <p>Paths are deduplicated and canonicalized when they are added: a field that is selected whole
+ * subsumes any paths below it, and fields are ordered by number. Equal selections therefore result
+ * in equal tries, which makes them suitable as cache keys. Tries are converted to a {@link
+ * FieldMask} only when the mask is sent in an RPC.
+ */
+@AutoValue
+abstract class FieldMaskTrie {
+
+  private static final String WILDCARD = "*";
+
+  /** A selected field, with the selected sub fields or null if the whole field is selected. */
+  @AutoValue
+  abstract static class FieldSelection {
+    abstract FieldDescriptor field();
+
+    @Nullable
+    abstract FieldMaskTrie subMask();
+
+    static FieldSelection create(FieldDescriptor field, @Nullable FieldMaskTrie subMask) {
+      return new AutoValue_FieldMaskTrie_FieldSelection(field, subMask);
+    }
+  }
+
+  /** The proto the paths refer to. */
+  abstract Descriptor descriptor();
+
+  /** Whether all fields of the proto are selected, rendered as {@code prefix.*}. */
+  abstract boolean wildcard();
+
+  /** Selected fields by field number. Empty if {@link #wildcard()} is set. */
+  abstract ImmutableSortedMap<Integer, FieldSelection> fields();
+
+  @Memoized
+  @Override
+  public abstract int hashCode();
+
+  static Builder newBuilder(Descriptor descriptor) {
+    return new Builder(descriptor);
+  }
+
+  static FieldMaskTrie fromFieldMask(Descriptor descriptor, FieldMask fieldMask) {
+    Builder builder = newBuilder(descriptor);
+    fieldMask.getPathsList().forEach(builder::addPath);
+    return builder.build();
+  }
+
+  boolean isEmpty() {
+    return !wildcard() && fields().isEmpty();
+  }
+
+  /** Returns the paths, ordered by field number. */
+  ImmutableList<String> paths() {
+    ImmutableList.Builder<String> paths = ImmutableList.builder();
+    addPaths("", paths);
+    return paths.build();
+  }
+
+  FieldMask toFieldMask() {
+    return FieldMask.newBuilder().addAllPaths(paths()).build();
+  }
+
+  private void addPaths(String prefix, ImmutableList.Builder<String> paths) {
+    if (wildcard()) {
+      paths.add(prefix + WILDCARD);
+      return;
+    }
+    for (FieldSelection selection : fields().values()) {
+      String path = prefix + selection.field().getName();
+      if (selection.subMask() == null) {
+        paths.add(path);
+      } else {
+        selection.subMask().addPaths(path + ".", paths);
+      }
+    }
+  }
+
+  /** Merges paths into a trie. */
+  static final class Builder {
+    private final Descriptor descriptor;
+    private boolean wildcard;
+    private final TreeSet<Integer> wholeFields = new TreeSet<>();
+    private final TreeMap<Integer, Builder> subMasks = new TreeMap<>();
+
+    private Builder(Descriptor descriptor) {
+      this.descriptor = descriptor;
+    }
+
+    Descriptor descriptor() {
+      return descriptor;
+    }
+
+    /** Selects all fields of the proto. */
+    Builder addWildcard() {
+      wildcard = true;
+      return this;
+    }
+
+    /** Selects the whole field, including all sub fields. */
+    Builder addField(FieldDescriptor field) {
+      wholeFields.add(field.getNumber());
+      return this;
+    }
+
+    /** Returns the builder for the sub fields of a message field. */
+    Builder subMask(FieldDescriptor field) {
+      return subMasks.computeIfAbsent(
+          field.getNumber(), ignored -> new Builder(field.getMessageType()));
+    }
+
+    /** Adds a dot separated path of field names. Paths to unknown fields are ignored. */
+    Builder addPath(String path) {
+      Builder current = this;
+      Iterator<String> names = Splitter.on('.').split(path).iterator();
+      while (names.hasNext()) {
+        String name = names.next();
+        if (name.equals(WILDCARD)) {
+          current.addWildcard();
+          return this;
+        }
+        FieldDescriptor field = current.descriptor.findFieldByName(name);
+        if (field == null) {
+          return this;
+        }
+        if (!names.hasNext()
+            || field.getJavaType() != FieldDescriptor.JavaType.MESSAGE
+            || field.isMapField()) {
+          current.addField(field);
+          return this;
+        }
+        current = current.subMask(field);
+      }
+      return this;
+    }
+
+    /** Adds all paths of the trie, which must be for the same proto. */
+    Builder merge(FieldMaskTrie trie) {
+      wildcard |= trie.wildcard();
+      for (FieldSelection selection : trie.fields().values()) {
+        if (selection.subMask() == null) {
+          addField(selection.field());
+        } else {
+          subMask(selection.field()).merge(selection.subMask());
+        }
+      }
+      return this;
+    }
+
+    FieldMaskTrie build() {
+      ImmutableSortedMap.Builder<Integer, FieldSelection> fields =
+          ImmutableSortedMap.naturalOrder();
+      if (!wildcard) {
+        for (int number : wholeFields) {
+          fields.put(number, FieldSelection.create(descriptor.findFieldByNumber(number), null));
+        }
+        for (Map.Entry<Integer, Builder> entry : subMasks.entrySet()) {
+          if (wholeFields.contains(entry.getKey())) {
+            continue;
+          }
+          FieldMaskTrie subMask = entry.getValue().build();
+          if (!subMask.isEmpty()) {
+            fields.put(
+                entry.getKey(),
+                FieldSelection.create(descriptor.findFieldByNumber(entry.getKey()), subMask));
+          }
+        }
+      }
+      return new AutoValue_FieldMaskTrie(descriptor, wildcard, fields.build());
+    }
+  }
+}
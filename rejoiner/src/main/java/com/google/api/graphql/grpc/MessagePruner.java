@@ -0,0 +1,119 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+import javax.annotation.Nullable;
+
+/**
+ * Removes the fields of a proto that are not part of a {@link FieldMask}.
+ *
+ * <p>The mask is compiled once into a tree of field descriptors, so pruning a message doesn't
+ * parse paths or look up fields by name. Only the fields in the mask are copied into the pruned
+ * message.
+ */
+public final class MessagePruner {
+
+  private static final long MAX_CACHED_PRUNERS = 1000;
+
+  private static final LoadingCache<FieldMaskTrie, MessagePruner> PRUNERS =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_PRUNERS)
+          .build(
+              new CacheLoader<FieldMaskTrie, MessagePruner>() {
+                @Override
+                public MessagePruner load(FieldMaskTrie fieldMask) {
+                  return compile(fieldMask);
+                }
+              });
+
+  /** A field that is kept, with the pruner for its message or null to keep the whole field. */
+  private static final class Node {
+    final FieldDescriptor field;
+    @Nullable final MessagePruner child;
+
+    Node(FieldDescriptor field, @Nullable MessagePruner child) {
+      this.field = field;
+      this.child = child;
+    }
+  }
+
+  private final ImmutableList<Node> nodes;
+
+  private MessagePruner(ImmutableList<Node> nodes) {
+    this.nodes = nodes;
+  }
+
+  /** Returns a pruner for the mask, reusing a previously compiled one when possible. */
+  public static MessagePruner forFieldMask(Descriptor descriptor, FieldMask fieldMask) {
+    return forFieldMask(FieldMaskTrie.fromFieldMask(descriptor, fieldMask));
+  }
+
+  static MessagePruner forFieldMask(FieldMaskTrie fieldMask) {
+    return PRUNERS.getUnchecked(fieldMask);
+  }
+
+  private static MessagePruner compile(FieldMaskTrie fieldMask) {
+    ImmutableList.Builder<Node> nodes = ImmutableList.builder();
+    if (fieldMask.wildcard()) {
+      for (FieldDescriptor field : fieldMask.descriptor().getFields()) {
+        nodes.add(new Node(field, null));
+      }
+    }
+    for (FieldMaskTrie.FieldSelection selection : fieldMask.fields().values()) {
+      FieldDescriptor field = selection.field();
+      boolean keepWholeField =
+          selection.subMask() == null || selection.subMask().wildcard() || field.isMapField();
+      nodes.add(new Node(field, keepWholeField ? null : compile(selection.subMask())));
+    }
+    return new MessagePruner(nodes.build());
+  }
+
+  /** Returns a copy of the message that only contains the fields in the mask. */
+  @SuppressWarnings("unchecked")
+  public <T extends Message> T prune(T message) {
+    Message.Builder builder = message.newBuilderForType();
+    for (Node node : nodes) {
+      FieldDescriptor field = node.field;
+      if (field.isRepeated()) {
+        if (node.child == null) {
+          if (message.getRepeatedFieldCount(field) > 0) {
+            builder.setField(field, message.getField(field));
+          }
+        } else {
+          int count = message.getRepeatedFieldCount(field);
+          for (int i = 0; i < count; i++) {
+            builder.addRepeatedField(
+                field, node.child.prune((Message) message.getRepeatedField(field, i)));
+          }
+        }
+      } else if (message.hasField(field)) {
+        builder.setField(
+            field,
+            node.child == null
+                ? message.getField(field)
+                : node.child.prune((Message) message.getField(field)));
+      }
+    }
+    return (T) builder.build();
+  }
+}
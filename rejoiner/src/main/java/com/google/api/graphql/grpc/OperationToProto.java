@@ -0,0 +1,606 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldOptions;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import graphql.Scalars;
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.ListType;
+import graphql.language.NonNullType;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.Type;
+import graphql.language.TypeName;
+import graphql.language.VariableDefinition;
+import graphql.parser.Parser;
+import graphql.schema.GraphQLCompositeType;
+import graphql.schema.GraphQLEnumType;
+import graphql.schema.GraphQLEnumValueDefinition;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLFieldsContainer;
+import graphql.schema.GraphQLInputObjectField;
+import graphql.schema.GraphQLInputObjectType;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLNonNull;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLScalarType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Creates the request and response messages of a single GraphQL operation.
+ *
+ * <p>Unlike {@link SchemaToProto}, which covers the whole schema, the generated file only contains
+ * what the operation uses: "{operationName}Request" has a field per variable and
+ * "{operationName}Response" mirrors the selection set, with a nested message per selected object
+ * field. Fields use the GraphQL result key as their json name.
+ *
+ * <p>Field numbers stay stable when the previously generated file is passed in: existing fields
+ * keep their numbers, new fields are numbered after the highest number used so far, and the
+ * numbers and names of removed fields are reserved. A field whose type changed gets a new number,
+ * reserving the old one, and a removed field that is selected again is no longer reserved by name
+ * but gets a new number too.
+ */
+public final class OperationToProto {
+
+  private static final String PACKAGE = "google.api.graphql.rejoiner.operations";
+
+  /** Numbers reserved for the protobuf implementation, not usable for fields. */
+  private static final int FIRST_RESERVED_NUMBER = 19000;
+
+  private static final int LAST_RESERVED_NUMBER = 19999;
+
+  private static final ImmutableMap<String, FieldDescriptorProto.Type> TYPE_MAP =
+      new ImmutableMap.Builder<String, FieldDescriptorProto.Type>()
+          .put(Scalars.GraphQLBoolean.getName(), FieldDescriptorProto.Type.TYPE_BOOL)
+          .put(Scalars.GraphQLFloat.getName(), FieldDescriptorProto.Type.TYPE_DOUBLE)
+          .put(Scalars.GraphQLInt.getName(), FieldDescriptorProto.Type.TYPE_INT32)
+          .put(Scalars.GraphQLLong.getName(), FieldDescriptorProto.Type.TYPE_INT64)
+          .put(Scalars.GraphQLShort.getName(), FieldDescriptorProto.Type.TYPE_INT32)
+          .put(Scalars.GraphQLByte.getName(), FieldDescriptorProto.Type.TYPE_INT32)
+          .put(Scalars.GraphQLString.getName(), FieldDescriptorProto.Type.TYPE_STRING)
+          .put(Scalars.GraphQLID.getName(), FieldDescriptorProto.Type.TYPE_STRING)
+          .put("UInt32", FieldDescriptorProto.Type.TYPE_UINT32)
+          .put("UInt64", FieldDescriptorProto.Type.TYPE_UINT64)
+          .put("SInt32", FieldDescriptorProto.Type.TYPE_SINT32)
+          .put("SInt64", FieldDescriptorProto.Type.TYPE_SINT64)
+          .put("Fixed32", FieldDescriptorProto.Type.TYPE_FIXED32)
+          .put("Fixed64", FieldDescriptorProto.Type.TYPE_FIXED64)
+          .put("SFixed32", FieldDescriptorProto.Type.TYPE_SFIXED32)
+          .put("SFixed64", FieldDescriptorProto.Type.TYPE_SFIXED64)
+          .put("Bytes", FieldDescriptorProto.Type.TYPE_BYTES)
+          .build();
+
+  private OperationToProto() {}
+
+  /** Returns the request and response messages of the named operation in the query. */
+  public static FileDescriptorProto toFileDescriptorProto(
+      GraphQLSchema schema, String query, String operationName) {
+    return toFileDescriptorProto(schema, query, operationName, null);
+  }
+
+  /**
+   * Returns the request and response messages of the named operation in the query, keeping the
+   * field numbers of a previously generated version of the file.
+   */
+  public static FileDescriptorProto toFileDescriptorProto(
+      GraphQLSchema schema,
+      String query,
+      String operationName,
+      @Nullable FileDescriptorProto previousVersion) {
+    return new Generator(schema, new Parser().parseDocument(query), operationName, previousVersion)
+        .generate();
+  }
+
+  /** Builds the generated file into a descriptor that can be used at runtime. */
+  public static FileDescriptor toFileDescriptor(FileDescriptorProto fileDescriptorProto) {
+    try {
+      return FileDescriptor.buildFrom(fileDescriptorProto, new FileDescriptor[] {});
+    } catch (DescriptorValidationException e) {
+      throw new IllegalArgumentException("Invalid generated proto " + e.getProblemSymbolName(), e);
+    }
+  }
+
+  private static final class Generator {
+    private final GraphQLSchema schema;
+    private final Document document;
+    private final String operationName;
+    private final String protoPackage;
+    private final Map<String, DescriptorProto> previousMessages = new HashMap<>();
+    private final Map<String, FragmentDefinition> fragments = new HashMap<>();
+    /** Top level messages: request, response, input objects and enum wrappers. */
+    private final Map<String, MessageBuilder> messages = new LinkedHashMap<>();
+
+    Generator(
+        GraphQLSchema schema,
+        Document document,
+        String operationName,
+        @Nullable FileDescriptorProto previousVersion) {
+      this.schema = schema;
+      this.document = document;
+      this.operationName = operationName;
+      this.protoPackage = PACKAGE + "." + operationName;
+      if (previousVersion != null) {
+        for (DescriptorProto message : previousVersion.getMessageTypeList()) {
+          previousMessages.put(message.getName(), message);
+        }
+      }
+    }
+
+    FileDescriptorProto generate() {
+      OperationDefinition operation = null;
+      for (Definition<?> definition : document.getDefinitions()) {
+        if (definition instanceof FragmentDefinition) {
+          FragmentDefinition fragment = (FragmentDefinition) definition;
+          fragments.put(fragment.getName(), fragment);
+        } else if (definition instanceof OperationDefinition
+            && operationName.equals(((OperationDefinition) definition).getName())) {
+          operation = (OperationDefinition) definition;
+        }
+      }
+      if (operation == null) {
+        throw new IllegalArgumentException("Query does not contain operation " + operationName);
+      }
+
+      MessageBuilder request = topLevelMessage(operationName + "Request");
+      for (VariableDefinition variable : operation.getVariableDefinitions()) {
+        addVariable(request, variable.getName(), variable.getType(), false);
+      }
+      MessageBuilder response = topLevelMessage(operationName + "Response");
+      addSelections(response, getRootType(operation), operation.getSelectionSet());
+
+      FileDescriptorProto.Builder file =
+          FileDescriptorProto.newBuilder()
+              .setName(protoPackage.replace('.', '/') + ".proto")
+              .setPackage(protoPackage)
+              .setSyntax("proto2");
+      for (MessageBuilder message : messages.values()) {
+        file.addMessageType(message.build());
+      }
+      return file.build();
+    }
+
+    private GraphQLObjectType getRootType(OperationDefinition operation) {
+      GraphQLObjectType rootType;
+      switch (operation.getOperation()) {
+        case MUTATION:
+          rootType = schema.getMutationType();
+          break;
+        case SUBSCRIPTION:
+          rootType = schema.getSubscriptionType();
+          break;
+        default:
+          rootType = schema.getQueryType();
+      }
+      if (rootType == null) {
+        throw new IllegalArgumentException(
+            "Schema does not support " + operation.getOperation() + " operations");
+      }
+      return rootType;
+    }
+
+    private MessageBuilder topLevelMessage(String name) {
+      return messages.computeIfAbsent(
+          name, key -> new MessageBuilder(key, "." + protoPackage + "." + key, previousMessages));
+    }
+
+    private void addVariable(MessageBuilder message, String name, Type<?> type, boolean repeated) {
+      if (type instanceof NonNullType) {
+        addVariable(message, name, ((NonNullType) type).getType(), repeated);
+      } else if (type instanceof ListType) {
+        if (repeated) {
+          throw new IllegalArgumentException("Nested lists are not supported: " + name);
+        }
+        addVariable(message, name, ((ListType) type).getType(), true);
+      } else {
+        String typeName = ((TypeName) type).getName();
+        GraphQLType graphQlType = schema.getType(typeName);
+        if (graphQlType == null) {
+          throw new IllegalArgumentException("Unknown type " + typeName);
+        }
+        addInputField(message, name, graphQlType, repeated);
+      }
+    }
+
+    private void addInputField(
+        MessageBuilder message, String name, GraphQLType type, boolean repeated) {
+      type = unwrapNonNull(type);
+      if (type instanceof GraphQLList) {
+        if (repeated) {
+          throw new IllegalArgumentException("Nested lists are not supported: " + name);
+        }
+        addInputField(message, name, ((GraphQLList) type).getWrappedType(), true);
+      } else if (type instanceof GraphQLInputObjectType) {
+        message.addField(
+            name, repeated, FieldDescriptorProto.Type.TYPE_MESSAGE, inputMessage(type));
+      } else {
+        addLeafField(message, name, type, repeated);
+      }
+    }
+
+    /** Returns the type name of the message for an input object, creating it on first use. */
+    private String inputMessage(GraphQLType type) {
+      GraphQLInputObjectType inputType = (GraphQLInputObjectType) type;
+      boolean created = !messages.containsKey(inputType.getName());
+      MessageBuilder message = topLevelMessage(inputType.getName());
+      if (created) {
+        for (GraphQLInputObjectField field : inputType.getFieldDefinitions()) {
+          addInputField(message, field.getName(), field.getType(), false);
+        }
+      }
+      return message.fullName;
+    }
+
+    private void addSelections(
+        MessageBuilder message, GraphQLCompositeType type, SelectionSet selectionSet) {
+      for (Selection<?> selection : selectionSet.getSelections()) {
+        if (selection instanceof Field) {
+          addSelectedField(message, type, (Field) selection);
+        } else if (selection instanceof InlineFragment) {
+          InlineFragment fragment = (InlineFragment) selection;
+          addSelections(
+              message,
+              fragment.getTypeCondition() == null
+                  ? type
+                  : getCompositeType(fragment.getTypeCondition()),
+              fragment.getSelectionSet());
+        } else if (selection instanceof FragmentSpread) {
+          FragmentDefinition fragment = fragments.get(((FragmentSpread) selection).getName());
+          if (fragment == null) {
+            throw new IllegalArgumentException(
+                "Unknown fragment " + ((FragmentSpread) selection).getName());
+          }
+          addSelections(
+              message, getCompositeType(fragment.getTypeCondition()), fragment.getSelectionSet());
+        }
+      }
+    }
+
+    private GraphQLCompositeType getCompositeType(TypeName typeName) {
+      GraphQLType type = schema.getType(typeName.getName());
+      if (!(type instanceof GraphQLCompositeType)) {
+        throw new IllegalArgumentException("Unknown type condition " + typeName.getName());
+      }
+      return (GraphQLCompositeType) type;
+    }
+
+    private void addSelectedField(
+        MessageBuilder message, GraphQLCompositeType parentType, Field field) {
+      String resultKey = field.getAlias() != null ? field.getAlias() : field.getName();
+      if (field.getName().equals("__typename")) {
+        message.addField(resultKey, false, FieldDescriptorProto.Type.TYPE_STRING, null);
+        return;
+      }
+      GraphQLFieldDefinition fieldDefinition =
+          parentType instanceof GraphQLFieldsContainer
+              ? ((GraphQLFieldsContainer) parentType).getFieldDefinition(field.getName())
+              : null;
+      if (fieldDefinition == null) {
+        throw new IllegalArgumentException(
+            String.format("Unknown field %s on type %s", field.getName(), parentType.getName()));
+      }
+      GraphQLType type = unwrapNonNull(fieldDefinition.getType());
+      boolean repeated = type instanceof GraphQLList;
+      if (repeated) {
+        type = unwrapNonNull(((GraphQLList) type).getWrappedType());
+        if (type instanceof GraphQLList) {
+          throw new IllegalArgumentException("Nested lists are not supported: " + resultKey);
+        }
+      }
+      if (type instanceof GraphQLCompositeType) {
+        MessageBuilder nested = message.nestedMessage(resultKey);
+        message.addField(
+            resultKey, repeated, FieldDescriptorProto.Type.TYPE_MESSAGE, nested.fullName);
+        if (field.getSelectionSet() != null) {
+          addSelections(nested, (GraphQLCompositeType) type, field.getSelectionSet());
+        }
+      } else {
+        addLeafField(message, resultKey, type, repeated);
+      }
+    }
+
+    private void addLeafField(
+        MessageBuilder message, String name, GraphQLType type, boolean repeated) {
+      if (type instanceof GraphQLEnumType) {
+        message.addField(name, repeated, FieldDescriptorProto.Type.TYPE_ENUM, enumWrapper(type));
+      } else if (type instanceof GraphQLScalarType) {
+        message.addField(
+            name,
+            repeated,
+            TYPE_MAP.getOrDefault(
+                ((GraphQLScalarType) type).getName(), FieldDescriptorProto.Type.TYPE_STRING),
+            null);
+      } else {
+        throw new IllegalArgumentException(
+            "Unsupported type " + ((GraphQLNamedType) type).getName() + " for " + name);
+      }
+    }
+
+    /**
+     * Returns the type name of the enum for a GraphQL enum, creating it on first use.
+     *
+     * <p>Like {@link SchemaToProto}, enums are wrapped in a message so that values of different
+     * enums can have the same name.
+     */
+    private String enumWrapper(GraphQLType type) {
+      GraphQLEnumType enumType = (GraphQLEnumType) type;
+      MessageBuilder wrapper = topLevelMessage(enumType.getName());
+      if (wrapper.enumType == null) {
+        DescriptorProto previous = previousMessages.get(enumType.getName());
+        EnumDescriptorProto previousEnum =
+            previous != null && previous.getEnumTypeCount() > 0 ? previous.getEnumType(0) : null;
+        wrapper.enumType = buildEnum(enumType, previousEnum);
+      }
+      return wrapper.fullName + ".Enum";
+    }
+
+    private static EnumDescriptorProto buildEnum(
+        GraphQLEnumType enumType, @Nullable EnumDescriptorProto previous) {
+      Map<String, Integer> previousNumbers = new HashMap<>();
+      int highestNumber = -1;
+      EnumDescriptorProto.Builder builder = EnumDescriptorProto.newBuilder().setName("Enum");
+      if (previous != null) {
+        for (EnumValueDescriptorProto value : previous.getValueList()) {
+          previousNumbers.put(value.getName(), value.getNumber());
+        }
+        for (EnumDescriptorProto.EnumReservedRange range : previous.getReservedRangeList()) {
+          highestNumber = Math.max(highestNumber, range.getEnd());
+        }
+        builder.addAllReservedRange(previous.getReservedRangeList());
+        for (String reservedName : previous.getReservedNameList()) {
+          // Values added back are numbered anew, so their name is no longer reserved.
+          if (enumType.getValue(reservedName) == null) {
+            builder.addReservedName(reservedName);
+          }
+        }
+      }
+      Numbering numbering = new Numbering(previousNumbers, highestNumber, 0);
+      for (GraphQLEnumValueDefinition value : enumType.getValues()) {
+        if (value.getName().equals("UNRECOGNIZED")) {
+          continue;
+        }
+        builder.addValue(
+            EnumValueDescriptorProto.newBuilder()
+                .setName(value.getName())
+                .setNumber(numbering.number(value.getName())));
+      }
+      numbering
+          .removed()
+          .forEach(
+              (name, number) ->
+                  builder
+                      .addReservedName(name)
+                      .addReservedRange(
+                          EnumDescriptorProto.EnumReservedRange.newBuilder()
+                              .setStart(number)
+                              .setEnd(number)));
+      return builder.build();
+    }
+
+    private static GraphQLType unwrapNonNull(GraphQLType type) {
+      while (type instanceof GraphQLNonNull) {
+        type = ((GraphQLNonNull) type).getWrappedType();
+      }
+      return type;
+    }
+  }
+
+  /** Collects the fields of a message, numbered after the previous version of the message. */
+  private static final class MessageBuilder {
+    private final String name;
+    private final String fullName;
+    @Nullable private final DescriptorProto previous;
+    /** Fields of the previous version, keyed by json name. */
+    private final Map<String, FieldDescriptorProto> previousFields = new HashMap<>();
+    private final Map<String, DescriptorProto> previousNestedMessages = new HashMap<>();
+    private final Numbering numbering;
+    /** Fields keyed by json name, which is the GraphQL result key. */
+    private final Map<String, FieldDescriptorProto> fields = new LinkedHashMap<>();
+    private final Set<String> fieldNames = new HashSet<>();
+    private final Map<String, MessageBuilder> nestedMessages = new LinkedHashMap<>();
+    @Nullable private EnumDescriptorProto enumType;
+
+    MessageBuilder(String name, String fullName, Map<String, DescriptorProto> previousMessages) {
+      this.name = name;
+      this.fullName = fullName;
+      this.previous = previousMessages.get(name);
+      Map<String, Integer> previousNumbers = new HashMap<>();
+      int highestNumber = 0;
+      if (previous != null) {
+        for (FieldDescriptorProto field : previous.getFieldList()) {
+          previousNumbers.put(field.getJsonName(), field.getNumber());
+          previousFields.put(field.getJsonName(), field);
+        }
+        for (DescriptorProto.ReservedRange range : previous.getReservedRangeList()) {
+          highestNumber = Math.max(highestNumber, range.getEnd() - 1);
+        }
+        for (DescriptorProto nested : previous.getNestedTypeList()) {
+          previousNestedMessages.put(nested.getName(), nested);
+        }
+      }
+      this.numbering = new Numbering(previousNumbers, highestNumber, 1);
+    }
+
+    /** Adds a field unless the result key was already selected, e.g. by another fragment. */
+    void addField(
+        String jsonName,
+        boolean repeated,
+        FieldDescriptorProto.Type type,
+        @Nullable String typeName) {
+      if (fields.containsKey(jsonName)) {
+        return;
+      }
+      String fieldName = CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, jsonName);
+      if (!fieldNames.add(fieldName)) {
+        throw new IllegalArgumentException(
+            String.format("Result key %s conflicts with another field of %s", jsonName, name));
+      }
+      FieldDescriptorProto.Label label =
+          repeated
+              ? FieldDescriptorProto.Label.LABEL_REPEATED
+              : FieldDescriptorProto.Label.LABEL_OPTIONAL;
+      FieldDescriptorProto previousField = previousFields.get(jsonName);
+      boolean typeChanged =
+          previousField != null
+              && (previousField.getType() != type
+                  || previousField.getLabel() != label
+                  || !previousField.getTypeName().equals(Strings.nullToEmpty(typeName)));
+      FieldDescriptorProto.Builder field =
+          FieldDescriptorProto.newBuilder()
+              .setName(fieldName)
+              .setJsonName(jsonName)
+              .setNumber(typeChanged ? numbering.renumber(jsonName) : numbering.number(jsonName))
+              .setType(type)
+              .setLabel(label);
+      if (typeName != null) {
+        field.setTypeName(typeName);
+      }
+      if (repeated
+          && type != FieldDescriptorProto.Type.TYPE_MESSAGE
+          && type != FieldDescriptorProto.Type.TYPE_STRING
+          && type != FieldDescriptorProto.Type.TYPE_BYTES) {
+        field.setOptions(FieldOptions.newBuilder().setPacked(true));
+      }
+      fields.put(jsonName, field.build());
+    }
+
+    /** Returns the nested message for an object field, creating it on first use. */
+    MessageBuilder nestedMessage(String resultKey) {
+      return nestedMessages.computeIfAbsent(
+          resultKey,
+          key -> {
+            String nestedName = CaseFormat.LOWER_CAMEL.to(CaseFormat.UPPER_CAMEL, key);
+            return new MessageBuilder(
+                nestedName, fullName + "." + nestedName, previousNestedMessages);
+          });
+    }
+
+    DescriptorProto build() {
+      DescriptorProto.Builder message =
+          DescriptorProto.newBuilder().setName(name).addAllField(fields.values());
+      for (MessageBuilder nested : nestedMessages.values()) {
+        message.addNestedType(nested.build());
+      }
+      if (enumType != null) {
+        message.addEnumType(enumType);
+      }
+      if (previous != null) {
+        message.addAllReservedRange(previous.getReservedRangeList());
+        for (String reservedName : previous.getReservedNameList()) {
+          // Fields added back are numbered anew, so their name is no longer reserved.
+          if (!fieldNames.contains(reservedName)) {
+            message.addReservedName(reservedName);
+          }
+        }
+      }
+      numbering
+          .removed()
+          .forEach(
+              (jsonName, number) ->
+                  message
+                      .addReservedName(
+                          CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, jsonName))
+                      .addReservedRange(
+                          DescriptorProto.ReservedRange.newBuilder()
+                              .setStart(number)
+                              .setEnd(number + 1)));
+      for (int number : numbering.replaced()) {
+        message.addReservedRange(
+            DescriptorProto.ReservedRange.newBuilder().setStart(number).setEnd(number + 1));
+      }
+      return message.build();
+    }
+  }
+
+  /** Assigns numbers to names, reusing the numbers of a previous version. */
+  private static final class Numbering {
+    private final Map<String, Integer> previousNumbers;
+    private final Set<String> used = new HashSet<>();
+    private final List<Integer> replaced = new ArrayList<>();
+    private int next;
+
+    Numbering(Map<String, Integer> previousNumbers, int highestReservedNumber, int firstNumber) {
+      this.previousNumbers = previousNumbers;
+      int highestNumber = highestReservedNumber;
+      for (int number : previousNumbers.values()) {
+        highestNumber = Math.max(highestNumber, number);
+      }
+      this.next = Math.max(firstNumber, highestNumber + 1);
+    }
+
+    int number(String name) {
+      used.add(name);
+      Integer previousNumber = previousNumbers.get(name);
+      if (previousNumber != null) {
+        return previousNumber;
+      }
+      return nextNumber();
+    }
+
+    /** Returns a new number for a previously numbered name, replacing its previous number. */
+    int renumber(String name) {
+      used.add(name);
+      Integer previousNumber = previousNumbers.get(name);
+      if (previousNumber != null) {
+        replaced.add(previousNumber);
+      }
+      return nextNumber();
+    }
+
+    private int nextNumber() {
+      if (next >= FIRST_RESERVED_NUMBER && next <= LAST_RESERVED_NUMBER) {
+        next = LAST_RESERVED_NUMBER + 1;
+      }
+      return next++;
+    }
+
+    /** Returns the previous numbers of the names that were given a new number. */
+    List<Integer> replaced() {
+      return replaced;
+    }
+
+    /** Returns the previously numbered names that were not used in this version. */
+    Map<String, Integer> removed() {
+      Map<String, Integer> removed = new LinkedHashMap<>(previousNumbers);
+      removed.keySet().removeAll(used);
+      return removed;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Message;
+import graphql.schema.DataFetchingEnvironment;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Prunes RPC responses to the fields selected in the GraphQL query as soon as they arrive, so only
+ * the selected fields are retained while the query executes.
+ *
+ * <p>Fields read by joins must be declared as source fields, see {@link SourceFieldsReader}, or
+ * they are pruned before the join runs.
+ */
+public final class ResponseProjection {
+
+  private final Descriptor responseDescriptor;
+
+  private ResponseProjection(Descriptor responseDescriptor) {
+    this.responseDescriptor = responseDescriptor;
+  }
+
+  /** Creates a projection for responses of the supplied type. */
+  public static ResponseProjection create(Descriptor responseDescriptor) {
+    return new ResponseProjection(responseDescriptor);
+  }
+
+  /**
+   * Returns the response pruned to the selection of the current field.
+   *
+   * <p>Supports protos, lists of protos, and {@link ListenableFuture} or {@link CompletionStage}
+   * of either. Other values are returned unchanged, as is the response when none of the selected
+   * fields are part of the proto. Cancelling the returned future cancels the response future.
+   */
+  public Object project(Object response, DataFetchingEnvironment environment) {
+    FieldMaskTrie fieldMask =
+        SelectorToFieldMask.getFieldMaskTrie(environment, responseDescriptor);
+    if (fieldMask.isEmpty()) {
+      return response;
+    }
+    MessagePruner pruner = MessagePruner.forFieldMask(fieldMask);
+    if (response instanceof ListenableFuture) {
+      return Futures.transform(
+          (ListenableFuture<?>) response,
+          value -> prune(pruner, value),
+          MoreExecutors.directExecutor());
+    }
+    if (response instanceof CompletionStage) {
+      CompletableFuture<?> source = ((CompletionStage<?>) response).toCompletableFuture();
+      CompletableFuture<Object> projected = source.thenApply(value -> prune(pruner, value));
+      projected.whenComplete(
+          (value, t) -> {
+            if (projected.isCancelled()) {
+              source.cancel(false);
+            }
+          });
+      return projected;
+    }
+    return prune(pruner, response);
+  }
+
+  private static Object prune(MessagePruner pruner, Object value) {
+    if (value instanceof Message) {
+      return pruner.prune((Message) value);
+    }
+    if (value instanceof List) {
+      return ((List<?>) value)
+          .stream()
+          .map(item -> item instanceof Message ? pruner.prune((Message) item) : item)
+          .collect(Collectors.toList());
+    }
+    return value;
+  }
+}
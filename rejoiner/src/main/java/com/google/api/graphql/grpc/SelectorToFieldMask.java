@@ -17,19 +17,25 @@ package com.google.api.graphql.grpc;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Converter;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.FieldMask;
 import com.google.protobuf.FieldMask.Builder;
 import graphql.execution.MergedField;
 import graphql.language.Field;
 import graphql.language.FragmentDefinition;
 import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
 import graphql.language.Selection;
+import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
 import java.util.Map;
 import java.util.Optional;
+import javax.annotation.Nullable;
 
 /** Creates a {@link FieldMask} based on a GraphQL {@link Selection}. */
 public final class SelectorToFieldMask {
@@ -41,10 +47,20 @@ public final class SelectorToFieldMask {
 
   public static Builder getFieldMaskForProto(
       DataFetchingEnvironment environment, Descriptor descriptor, String startAtFieldName) {
+    return getFieldMaskTrie(environment, descriptor, startAtFieldName).toFieldMask().toBuilder();
+  }
+
+  public static Builder getFieldMaskForProto(
+      DataFetchingEnvironment environment, Descriptor descriptor) {
+    return getFieldMaskTrie(environment, descriptor).toFieldMask().toBuilder();
+  }
+
+  static FieldMaskTrie getFieldMaskTrie(
+      DataFetchingEnvironment environment, Descriptor descriptor, String startAtFieldName) {
 
     Map<String, FragmentDefinition> fragmentsByName = environment.getFragmentsByName();
 
-    Builder maskFromSelectionBuilder = FieldMask.newBuilder();
+    FieldMaskTrie.Builder maskFromSelectionBuilder = FieldMaskTrie.newBuilder(descriptor);
 
     for (Field field : environment.getFields()) {
       for (Selection<?> selection1 : field.getSelectionSet().getSelections()) {
@@ -52,76 +68,114 @@ public final class SelectorToFieldMask {
           Field field2 = (Field) selection1;
           if (field2.getName().equals(startAtFieldName)) {
             for (Selection<?> selection : field2.getSelectionSet().getSelections()) {
-              maskFromSelectionBuilder.addAllPaths(
-                  getPathsForProto("", selection, descriptor, fragmentsByName));
+              addPathsForProto(
+                  maskFromSelectionBuilder,
+                  false,
+                  selection,
+                  fragmentsByName,
+                  environment.getGraphQLSchema());
             }
           }
         }
       }
     }
-    return maskFromSelectionBuilder;
+    return maskFromSelectionBuilder.build();
   }
 
-  public static Builder getFieldMaskForProto(
+  static FieldMaskTrie getFieldMaskTrie(
       DataFetchingEnvironment environment, Descriptor descriptor) {
 
     Map<String, FragmentDefinition> fragmentsByName = environment.getFragmentsByName();
 
-    Builder maskFromSelectionBuilder = FieldMask.newBuilder();
+    FieldMaskTrie.Builder maskFromSelectionBuilder = FieldMaskTrie.newBuilder(descriptor);
     for (Field field :
         Optional.ofNullable(environment.getMergedField())
             .map(MergedField::getFields)
             .orElse(ImmutableList.of())) {
       for (Selection<?> selection : field.getSelectionSet().getSelections()) {
-        maskFromSelectionBuilder.addAllPaths(
-            getPathsForProto("", selection, descriptor, fragmentsByName));
+        addPathsForProto(
+            maskFromSelectionBuilder,
+            false,
+            selection,
+            fragmentsByName,
+            environment.getGraphQLSchema());
       }
     }
-    return maskFromSelectionBuilder;
+    return maskFromSelectionBuilder.build();
   }
 
-  private static ImmutableSet<String> getPathsForProto(
-      String prefix,
+  private static void addPathsForProto(
+      FieldMaskTrie.Builder builder,
+      boolean nested,
       Selection<?> node,
-      Descriptor descriptor,
-      Map<String, FragmentDefinition> fragmentsByName) {
-    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+      Map<String, FragmentDefinition> fragmentsByName,
+      @Nullable GraphQLSchema schema) {
+    Descriptor descriptor = builder.descriptor();
     if (node instanceof Field) {
       Field field = ((Field) node);
-      String name = FIELD_TO_PROTO.convert(field.getName());
-      if (descriptor.findFieldByName(name) == null) {
-        if (!prefix.isEmpty()) {
-          builder.add(prefix + "*");
+      FieldDescriptor fieldDescriptor =
+          descriptor.findFieldByName(FIELD_TO_PROTO.convert(field.getName()));
+      if (fieldDescriptor == null) {
+        // Fields added by a schema modification may read fields of the proto, such as join keys.
+        ImmutableList<String> sourceFields = getSourceFields(schema, descriptor, field.getName());
+        if (!sourceFields.isEmpty()) {
+          sourceFields.forEach(builder::addPath);
+        } else if (nested) {
+          builder.addWildcard();
         }
-        return builder.build();
+        return;
       }
 
-      if (field.getSelectionSet() != null) {
+      if (field.getSelectionSet() != null
+          && fieldDescriptor.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+        FieldMaskTrie.Builder subMask = builder.subMask(fieldDescriptor);
         for (Selection<?> selection : field.getSelectionSet().getSelections()) {
-          builder.addAll(
-              getPathsForProto(
-                  prefix + name + ".",
-                  selection,
-                  descriptor.findFieldByName(name).getMessageType(),
-                  fragmentsByName));
+          addPathsForProto(subMask, true, selection, fragmentsByName, schema);
         }
       } else {
-        builder.add(prefix + name);
+        builder.addField(fieldDescriptor);
       }
     } else if (node instanceof FragmentSpread) {
       FragmentSpread fragmentSpread = (FragmentSpread) node;
-      String name = fragmentSpread.getName();
-      FragmentDefinition field = fragmentsByName.get(fragmentSpread.getName());
-      if (field.getSelectionSet() != null) {
-        for (Selection<?> selection : field.getSelectionSet().getSelections()) {
-          builder.addAll(getPathsForProto(prefix, selection, descriptor, fragmentsByName));
+      FragmentDefinition fragment = fragmentsByName.get(fragmentSpread.getName());
+      if (fragment != null && fragment.getSelectionSet() != null) {
+        for (Selection<?> selection : fragment.getSelectionSet().getSelections()) {
+          addPathsForProto(builder, nested, selection, fragmentsByName, schema);
         }
-      } else {
-        builder.add(prefix + name);
       }
-    } else {
-      // "not a Field"
+    } else if (node instanceof InlineFragment) {
+      InlineFragment fragment = (InlineFragment) node;
+      if (fragment.getSelectionSet() != null) {
+        for (Selection<?> selection : fragment.getSelectionSet().getSelections()) {
+          addPathsForProto(builder, nested, selection, fragmentsByName, schema);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the source fields of the GraphQL field {@code fieldName} on the type for the proto, or
+   * an empty list if its data fetcher isn't a {@link SourceFieldsReader}.
+   */
+  private static ImmutableList<String> getSourceFields(
+      @Nullable GraphQLSchema schema, Descriptor descriptor, String fieldName) {
+    if (schema == null) {
+      return ImmutableList.of();
+    }
+    // Proto types are named after their full name, see ProtoToGql.
+    GraphQLType type = schema.getType(descriptor.getFullName().replace('.', '_'));
+    if (!(type instanceof GraphQLObjectType)) {
+      return ImmutableList.of();
+    }
+    GraphQLObjectType objectType = (GraphQLObjectType) type;
+    GraphQLFieldDefinition fieldDefinition = objectType.getFieldDefinition(fieldName);
+    if (fieldDefinition == null) {
+      return ImmutableList.of();
     }
-    return builder.build();
+    DataFetcher<?> dataFetcher =
+        schema.getCodeRegistry().getDataFetcher(objectType, fieldDefinition);
+    return dataFetcher instanceof SourceFieldsReader
+        ? ((SourceFieldsReader) dataFetcher).sourceFields()
+        : ImmutableList.of();
   }
 }
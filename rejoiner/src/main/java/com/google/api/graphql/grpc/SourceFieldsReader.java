@@ -0,0 +1,32 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.api.graphql.grpc;
+
+import com.google.common.collect.ImmutableList;
+import graphql.schema.DataFetcher;
+
+/**
+ * A {@link DataFetcher} of a field added to a proto type, which reads fields of its source proto,
+ * such as the keys of a join.
+ *
+ * <p>{@link SelectorToFieldMask} adds the source fields to the mask of the source proto whenever
+ * the field is selected, so the data needed by the fetcher is not projected away by the backend.
+ */
+public interface SourceFieldsReader {
+
+  /** Paths of the fields read from the source proto. */
+  ImmutableList<String> sourceFields();
+}
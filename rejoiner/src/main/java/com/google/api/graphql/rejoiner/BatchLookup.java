@@ -0,0 +1,53 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that marks a method calling a list-by-IDs RPC as a batch lookup.
+ *
+ * <p>A DataLoader named {@link #value} is registered for the lookup. It fills the repeated {@link
+ * #requestKeyField} of the request with the unique keys of a batch, calls the method, and matches
+ * the returned messages to the keys by {@link #responseKeyField}. Keys without a returned message
+ * load as null.
+ *
+ * <p>For example, a method calling {@code ListBooks} annotated with {@code @BatchLookup(value =
+ * "books", requestKeyField = "ids", responseKeyField = "books.id")} loads books by ID.
+ *
+ * <p>The method takes the request and, in a Guice SchemaModule, injected parameters. It returns
+ * the response, or a {@code ListenableFuture} or {@code CompletionStage} of it.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BatchLookup {
+  /** Name of the DataLoader. */
+  String value();
+
+  /** Name of the repeated field of the request that holds the keys. */
+  String requestKeyField();
+
+  /**
+   * Dot separated path of the key field of the returned messages, starting with the repeated field
+   * of the response that holds them.
+   */
+  String responseKeyField();
+
+  /** Maximum number of keys per request, or 0 for no limit. */
+  int maxBatchSize() default 0;
+}
@@ -0,0 +1,45 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the responses of a {@link Query} method by arguments, see {@link
+ * com.google.api.graphql.execution.ResponseCache}.
+ *
+ * <p>Arguments are compared like those of {@link Idempotent} methods, so only use it for methods
+ * whose response depends on nothing else, such as reference data.
+ *
+ * <p>See {@link RpcOptions#cacheTtl} for the equivalent options used by generated RPC fields.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+  /** Seconds a response is fresh for. */
+  long ttlSeconds();
+
+  /** Seconds after the time to live that a stale response is returned while it's refreshed. */
+  long staleWhileRevalidateSeconds() default 0;
+
+  /** Maximum number of cached responses. */
+  long maximumSize() default 1000;
+
+  /** Seconds loading a response may take, regardless of the deadline of the request. */
+  long loadTimeoutSeconds() default 30;
+}
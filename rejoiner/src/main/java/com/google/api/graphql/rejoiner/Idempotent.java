@@ -0,0 +1,35 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Query} method as idempotent, so concurrent calls with the same arguments share a
+ * single in-flight call, see {@link com.google.api.graphql.execution.SingleFlight}.
+ *
+ * <p>Protos are compared by their deterministically serialized bytes, other arguments by their
+ * values, and injected parameters, such as clients, by identity. Methods taking a {@link
+ * graphql.schema.DataFetchingEnvironment} or a {@link org.dataloader.DataLoader} can't be
+ * idempotent.
+ *
+ * <p>See {@link RpcOptions#idempotent} for the equivalent option used by generated RPC fields.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {}
@@ -0,0 +1,195 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import graphql.schema.DataFetchingEnvironment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.dataloader.DataLoader;
+
+/**
+ * Key of a call to an {@link Idempotent} or {@link Cached} method, by which calls are shared and
+ * responses cached.
+ *
+ * <p>Protos are compared by their deterministically serialized bytes, and arguments by their
+ * values, written with their type and with map entries in key order. Injected parameters, such as
+ * clients, are compared by identity, so calls are only shared when they get the same instance.
+ * Methods taking a {@link DataFetchingEnvironment} or a {@link DataLoader}, which belong to a
+ * single GraphQL request, are rejected when the schema is built.
+ */
+final class MethodRequestKey {
+
+  private enum ParameterKind {
+    PROTO,
+    ARGUMENT,
+    INJECTED
+  }
+
+  private final ImmutableList<ParameterKind> parameterKinds;
+  /** Ids of the injected values, held weakly and compared by identity. */
+  private final ConcurrentMap<Object, Long> injectedIds = new MapMaker().weakKeys().makeMap();
+
+  private final AtomicLong nextInjectedId = new AtomicLong();
+
+  private MethodRequestKey(ImmutableList<ParameterKind> parameterKinds) {
+    this.parameterKinds = parameterKinds;
+  }
+
+  /** Returns the key of calls to the method, rejecting parameters that can't be part of it. */
+  static MethodRequestKey forMethod(Method method) {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    ImmutableList.Builder<ParameterKind> parameterKinds = ImmutableList.builder();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      Class<?> parameterType = parameterTypes[i];
+      Preconditions.checkArgument(
+          !DataFetchingEnvironment.class.isAssignableFrom(parameterType)
+              && !DataLoader.class.equals(parameterType),
+          "Idempotent or cached method %s can't take a %s",
+          method,
+          parameterType.getSimpleName());
+      if (Message.class.isAssignableFrom(parameterType)) {
+        parameterKinds.add(ParameterKind.PROTO);
+      } else if (SchemaDefinitionReader.isArg(method.getParameterAnnotations()[i])) {
+        parameterKinds.add(ParameterKind.ARGUMENT);
+      } else {
+        parameterKinds.add(ParameterKind.INJECTED);
+      }
+    }
+    return new MethodRequestKey(parameterKinds.build());
+  }
+
+  /** Returns the key of a call with the parameter values, each written to its own field. */
+  ByteString of(Object[] parameterValues) {
+    ByteString.Output key = ByteString.newOutput();
+    CodedOutputStream output = CodedOutputStream.newInstance(key);
+    output.useDeterministicSerialization();
+    try {
+      for (int i = 0; i < parameterValues.length; i++) {
+        Object value = parameterValues[i];
+        if (value == null) {
+          continue;
+        }
+        switch (parameterKinds.get(i)) {
+          case PROTO:
+            output.writeMessage(i + 1, (Message) value);
+            break;
+          case ARGUMENT:
+            output.writeBytes(i + 1, encodeArgument(value));
+            break;
+          case INJECTED:
+            output.writeUInt64(
+                i + 1, injectedIds.computeIfAbsent(value, v -> nextInjectedId.incrementAndGet()));
+            break;
+        }
+      }
+      output.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return key.toByteString();
+  }
+
+  /**
+   * Returns the canonical encoding of an argument value: a single field whose number is the type
+   * of the value, holding it length delimited, so that values of different types or structure
+   * never share an encoding.
+   */
+  private static ByteString encodeArgument(@Nullable Object value) throws IOException {
+    ByteString.Output bytes = ByteString.newOutput();
+    CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+    output.useDeterministicSerialization();
+    if (value == null) {
+      output.writeBool(ArgumentType.NULL.fieldNumber, true);
+    } else if (value instanceof String) {
+      output.writeString(ArgumentType.STRING.fieldNumber, (String) value);
+    } else if (value instanceof Boolean) {
+      output.writeBool(ArgumentType.BOOLEAN.fieldNumber, (Boolean) value);
+    } else if (value instanceof Integer
+        || value instanceof Long
+        || value instanceof Short
+        || value instanceof Byte) {
+      output.writeSInt64(ArgumentType.INTEGER.fieldNumber, ((Number) value).longValue());
+    } else if (value instanceof Float || value instanceof Double) {
+      output.writeDouble(ArgumentType.FLOATING_POINT.fieldNumber, ((Number) value).doubleValue());
+    } else if (value instanceof BigInteger || value instanceof BigDecimal) {
+      output.writeString(ArgumentType.DECIMAL.fieldNumber, value.toString());
+    } else if (value instanceof Enum) {
+      output.writeString(ArgumentType.ENUM.fieldNumber, ((Enum<?>) value).name());
+    } else if (value instanceof Message) {
+      output.writeMessage(ArgumentType.PROTO.fieldNumber, (Message) value);
+    } else if (value instanceof Map) {
+      ByteString.Output entries = ByteString.newOutput();
+      CodedOutputStream entriesOutput = CodedOutputStream.newInstance(entries);
+      Map<String, Object> sorted = new TreeMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+      for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+        entriesOutput.writeString(1, entry.getKey());
+        entriesOutput.writeBytes(2, encodeArgument(entry.getValue()));
+      }
+      entriesOutput.flush();
+      output.writeBytes(ArgumentType.MAP.fieldNumber, entries.toByteString());
+    } else if (value instanceof List) {
+      ByteString.Output elements = ByteString.newOutput();
+      CodedOutputStream elementsOutput = CodedOutputStream.newInstance(elements);
+      for (Object element : (List<?>) value) {
+        elementsOutput.writeBytes(1, encodeArgument(element));
+      }
+      elementsOutput.flush();
+      output.writeBytes(ArgumentType.LIST.fieldNumber, elements.toByteString());
+    } else {
+      throw new IllegalArgumentException(
+          "Unsupported argument of type " + value.getClass().getName());
+    }
+    output.flush();
+    return bytes.toByteString();
+  }
+
+  /** Types of argument values, by the field number their encoding uses. */
+  private enum ArgumentType {
+    NULL(1),
+    STRING(2),
+    BOOLEAN(3),
+    INTEGER(4),
+    FLOATING_POINT(5),
+    DECIMAL(6),
+    ENUM(7),
+    PROTO(8),
+    MAP(9),
+    LIST(10);
+
+    final int fieldNumber;
+
+    ArgumentType(int fieldNumber) {
+      this.fieldNumber = fieldNumber;
+    }
+  }
+}
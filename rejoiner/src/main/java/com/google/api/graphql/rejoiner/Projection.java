@@ -0,0 +1,42 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures how the GraphQL selection is propagated to the RPC made by a {@link Query} method.
+ *
+ * <p>See {@link RpcOptions} for the equivalent options used by generated RPC fields.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Projection {
+
+  /**
+   * Name of the {@link com.google.protobuf.FieldMask} field in the request proto, such as {@code
+   * read_mask}, that is populated from the GraphQL selection.
+   */
+  String fieldMask() default "";
+
+  /**
+   * Prunes the response to the selected fields as soon as it arrives, for backends that ignore the
+   * field mask.
+   */
+  boolean pruneResponse() default false;
+}
@@ -0,0 +1,195 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.api.graphql.execution.Hedger;
+import com.google.api.graphql.execution.ResponseCache;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import javax.annotation.Nullable;
+
+/** Options for GraphQL fields that are backed by an RPC. */
+@AutoValue
+public abstract class RpcOptions {
+  public static RpcOptions defaultOptions() {
+    return RpcOptions.builder().build();
+  }
+
+  public static RpcOptions.Builder builder() {
+    return new AutoValue_RpcOptions.Builder()
+        .fieldMaskName("")
+        .pruneResponses(false)
+        .idempotent(false)
+        .cacheTtl(Duration.ZERO)
+        .cacheStaleWhileRevalidate(Duration.ZERO)
+        .cacheMaximumSize(1000)
+        .cacheLoadTimeout(Duration.ofSeconds(30))
+        .hedgingPercentile(0)
+        .hedgingMinDelay(Duration.ZERO)
+        .hedgingBudget(0.1)
+        .maxPages(10);
+  }
+
+  /**
+   * Returns the options configured by annotations, such as {@link Projection}, {@link Idempotent}
+   * and {@link Cached}, on a {@link Query} or {@link Mutation}.
+   */
+  static RpcOptions forMethod(Method method) {
+    RpcOptions.Builder builder = builder();
+    Projection projection = method.getAnnotation(Projection.class);
+    if (projection != null) {
+      builder.fieldMaskName(projection.fieldMask()).pruneResponses(projection.pruneResponse());
+    }
+    builder.idempotent(method.isAnnotationPresent(Idempotent.class));
+    Cached cached = method.getAnnotation(Cached.class);
+    if (cached != null) {
+      builder
+          .cacheTtl(Duration.ofSeconds(cached.ttlSeconds()))
+          .cacheStaleWhileRevalidate(Duration.ofSeconds(cached.staleWhileRevalidateSeconds()))
+          .cacheMaximumSize(cached.maximumSize())
+          .cacheLoadTimeout(Duration.ofSeconds(cached.loadTimeoutSeconds()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Name of the {@link com.google.protobuf.FieldMask} field in the request proto that is populated
+   * from the GraphQL selection, or an empty string if no field mask is set.
+   */
+  public abstract String fieldMaskName();
+
+  public boolean hasFieldMask() {
+    return !fieldMaskName().isEmpty();
+  }
+
+  /**
+   * Whether responses are pruned to the selected fields as soon as they arrive, see {@link
+   * com.google.api.graphql.grpc.ResponseProjection}.
+   */
+  public abstract boolean pruneResponses();
+
+  /**
+   * Whether the RPC is idempotent, so concurrent calls with the same request share a single
+   * in-flight call, see {@link com.google.api.graphql.execution.SingleFlight}.
+   */
+  public abstract boolean idempotent();
+
+  /**
+   * How long responses are cached by request, or zero if they aren't, see {@link ResponseCache}.
+   */
+  public abstract Duration cacheTtl();
+
+  /** How long after {@link #cacheTtl} a stale response is returned while it's refreshed. */
+  public abstract Duration cacheStaleWhileRevalidate();
+
+  /** Maximum number of cached responses. */
+  public abstract long cacheMaximumSize();
+
+  /** How long loading a response to cache may take, 30 seconds by default. */
+  public abstract Duration cacheLoadTimeout();
+
+  public boolean hasCache() {
+    return !cacheTtl().isZero();
+  }
+
+  /** Returns a new cache for the responses of a field, or null if they aren't cached. */
+  @Nullable
+  <T> ResponseCache<T> newResponseCache() {
+    if (!hasCache()) {
+      return null;
+    }
+    return ResponseCache.newBuilder()
+        .ttl(cacheTtl())
+        .staleWhileRevalidate(cacheStaleWhileRevalidate())
+        .maximumSize(cacheMaximumSize())
+        .loadTimeout(cacheLoadTimeout())
+        .build();
+  }
+
+  /**
+   * Percentile of the latencies of recent calls after which a call is hedged with a second
+   * attempt, or zero if calls aren't hedged, see {@link Hedger}. Only idempotent RPCs can be
+   * hedged.
+   */
+  public abstract double hedgingPercentile();
+
+  /** Shortest delay after which a call is hedged. */
+  public abstract Duration hedgingMinDelay();
+
+  /** Most hedges sent per call, on average, 0.1 by default. */
+  public abstract double hedgingBudget();
+
+  public boolean hasHedging() {
+    return hedgingPercentile() > 0;
+  }
+
+  /**
+   * Most pages fetched by a paged field of a {@code GaxSchemaModule}, 10 by default. Fetching
+   * starts at the page token of the request and stops after this many pages, even if there are
+   * more.
+   */
+  public abstract int maxPages();
+
+  /** Returns a new hedger for the calls of a field, or null if they aren't hedged. */
+  @Nullable
+  Hedger newHedger() {
+    if (!hasHedging()) {
+      return null;
+    }
+    return Hedger.newBuilder()
+        .percentile(hedgingPercentile())
+        .minDelay(hedgingMinDelay())
+        .budget(hedgingBudget())
+        .build();
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder fieldMaskName(String fieldMaskName);
+
+    public abstract Builder pruneResponses(boolean pruneResponses);
+
+    public abstract Builder idempotent(boolean idempotent);
+
+    public abstract Builder cacheTtl(Duration cacheTtl);
+
+    public abstract Builder cacheStaleWhileRevalidate(Duration cacheStaleWhileRevalidate);
+
+    public abstract Builder cacheMaximumSize(long cacheMaximumSize);
+
+    public abstract Builder cacheLoadTimeout(Duration cacheLoadTimeout);
+
+    public abstract Builder hedgingPercentile(double hedgingPercentile);
+
+    public abstract Builder hedgingMinDelay(Duration hedgingMinDelay);
+
+    public abstract Builder hedgingBudget(double hedgingBudget);
+
+    public abstract Builder maxPages(int maxPages);
+
+    abstract RpcOptions autoBuild();
+
+    public RpcOptions build() {
+      RpcOptions rpcOptions = autoBuild();
+      Preconditions.checkState(
+          !rpcOptions.hasHedging() || rpcOptions.idempotent(),
+          "Only idempotent RPCs can be hedged");
+      Preconditions.checkState(rpcOptions.maxPages() > 0, "maxPages must be positive");
+      return rpcOptions;
+    }
+  }
+}
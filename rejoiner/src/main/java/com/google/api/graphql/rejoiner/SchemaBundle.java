@@ -2,10 +2,13 @@ package com.google.api.graphql.rejoiner;
 
 import static graphql.schema.GraphQLObjectType.newObject;
 
+import com.google.api.graphql.execution.ResponseCache;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.Descriptors;
+import graphql.Directives;
 import graphql.relay.Relay;
 import graphql.schema.GraphQLFieldDefinition;
 import graphql.schema.GraphQLObjectType;
@@ -15,6 +18,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
 
 @AutoValue
 public abstract class SchemaBundle {
@@ -53,33 +59,52 @@ public abstract class SchemaBundle {
                   }));
     }
 
-    if (mutationFields().isEmpty()) {
-      return GraphQLSchema.newSchema()
-          .query(queryType)
-          .additionalTypes(protoRegistry.listTypes())
-          .build();
+    GraphQLSchema.Builder schema =
+        GraphQLSchema.newSchema()
+            .query(queryType)
+            .additionalTypes(protoRegistry.listTypes())
+            .additionalDirective(Directives.DeferDirective);
+    if (!mutationFields().isEmpty()) {
+      schema.mutation(newObject().name("MutationType").fields(mutationFields()).build());
     }
-    GraphQLObjectType mutationType =
-        newObject().name("MutationType").fields(mutationFields()).build();
-    return GraphQLSchema.newSchema()
-        .query(queryType)
-        .mutation(mutationType)
-        .additionalTypes(protoRegistry.listTypes())
-        .build();
+    if (!subscriptionFields().isEmpty()) {
+      schema.subscription(
+          newObject().name("SubscriptionType").fields(subscriptionFields()).build());
+    }
+    return schema.build();
   }
 
   public abstract ImmutableList<GraphQLFieldDefinition> queryFields();
 
   public abstract ImmutableList<GraphQLFieldDefinition> mutationFields();
 
+  public abstract ImmutableList<GraphQLFieldDefinition> subscriptionFields();
+
   public abstract ImmutableList<TypeModification> modifications();
 
   public abstract ImmutableSet<Descriptors.FileDescriptor> fileDescriptors();
 
   public abstract ImmutableList<NodeDataFetcher> nodeDataFetchers();
 
+  /** Batch loaders by DataLoader name, such as those of {@link BatchLookup} methods. */
+  public abstract ImmutableMap<String, BatchLoader<?, ?>> batchLoaders();
+
+  /** Response caches of fields, by module and field name, such as those of {@link Cached}. */
+  public abstract ImmutableMap<String, ResponseCache<?>> responseCaches();
+
   public abstract SchemaOptions schemaOptions();
 
+  /** Returns a registry with a new DataLoader for each batch loader, for a single request. */
+  public DataLoaderRegistry newDataLoaderRegistry() {
+    DataLoaderRegistry registry = new DataLoaderRegistry();
+    batchLoaders().forEach((name, loader) -> registry.register(name, newDataLoader(loader)));
+    return registry;
+  }
+
+  private static <K, V> DataLoader<K, V> newDataLoader(BatchLoader<K, V> batchLoader) {
+    return DataLoader.newDataLoader(batchLoader);
+  }
+
   public static Builder builder() {
     return new AutoValue_SchemaBundle.Builder().schemaOptions(SchemaOptions.defaultOptions());
   }
@@ -92,9 +117,12 @@ public abstract class SchemaBundle {
         schemaBundle -> {
           builder.queryFieldsBuilder().addAll(schemaBundle.queryFields());
           builder.mutationFieldsBuilder().addAll(schemaBundle.mutationFields());
+          builder.subscriptionFieldsBuilder().addAll(schemaBundle.subscriptionFields());
           builder.modificationsBuilder().addAll(schemaBundle.modifications());
           builder.fileDescriptorsBuilder().addAll(schemaBundle.fileDescriptors());
           builder.nodeDataFetchersBuilder().addAll(schemaBundle.nodeDataFetchers());
+          builder.batchLoadersBuilder().putAll(schemaBundle.batchLoaders());
+          builder.responseCachesBuilder().putAll(schemaBundle.responseCaches());
           allComments.putAll(schemaBundle.schemaOptions().commentsMap());
           if (schemaBundle.schemaOptions().useProtoScalarTypes()) {
             // if one bundle has useProtoScalarTypes set then set it when combining.
@@ -112,12 +140,18 @@ public abstract class SchemaBundle {
 
     public abstract ImmutableList.Builder<GraphQLFieldDefinition> mutationFieldsBuilder();
 
+    public abstract ImmutableList.Builder<GraphQLFieldDefinition> subscriptionFieldsBuilder();
+
     public abstract ImmutableList.Builder<TypeModification> modificationsBuilder();
 
     public abstract ImmutableSet.Builder<Descriptors.FileDescriptor> fileDescriptorsBuilder();
 
     public abstract ImmutableList.Builder<NodeDataFetcher> nodeDataFetchersBuilder();
 
+    public abstract ImmutableMap.Builder<String, BatchLoader<?, ?>> batchLoadersBuilder();
+
+    public abstract ImmutableMap.Builder<String, ResponseCache<?>> responseCachesBuilder();
+
     public abstract Builder schemaOptions(SchemaOptions schemaOptions);
 
     public abstract SchemaBundle build();
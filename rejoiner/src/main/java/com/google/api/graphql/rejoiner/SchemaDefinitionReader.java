@@ -14,18 +14,29 @@
 
 package com.google.api.graphql.rejoiner;
 
+import com.google.api.graphql.execution.GuavaListenableFutureSupport;
+import com.google.api.graphql.execution.ResponseCache;
+import com.google.api.graphql.execution.RpcBatchLoader;
+import com.google.api.graphql.execution.SingleFlight;
+import com.google.api.graphql.grpc.FieldMaskInjector;
+import com.google.api.graphql.grpc.ResponseProjection;
+import com.google.api.graphql.grpc.SelectorToFieldMask;
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Converter;
 import com.google.common.base.Enums;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.FieldMask;
 import com.google.protobuf.Message;
 import com.google.protobuf.ProtocolMessageEnum;
 import graphql.Scalars;
@@ -47,14 +58,21 @@ import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
+import org.dataloader.DataLoader;
+import org.reactivestreams.Publisher;
 
 /**
  * Utility class that inspects fields and methods on a "schema definition" object. This results in a
  * {@link SchemaBundle} which can then be turned into a schema.
  *
- * <p>Any public fields of type {@link GraphQLFieldDefinition} annotated with {@link Query} or
- * {@link Mutation} will be added to the top level query or mutation. Fields of type {@link
+ * <p>Any public fields of type {@link GraphQLFieldDefinition} annotated with {@link Query}, {@link
+ * Mutation} or {@link Subscription} will be added to the top level query, mutation or
+ * subscription. Subscriptions are never namespaced, since only root fields of the subscription
+ * type can return a {@link Publisher}. Fields of type {@link
  * TypeModification} annotated with {@link SchemaModification} will be applied to the generated
  * schema in order to add, remove, or replace fields on a GraphQL type. Fields of type {@link
  * FileDescriptor} annotated with {@link ExtraType} will be available to GraphQL when creating the
@@ -65,6 +83,7 @@ public class SchemaDefinitionReader {
   private final ImmutableSet.Builder<Descriptor> referencedDescriptors = ImmutableSet.builder();
   private final List<GraphQLFieldDefinition> allQueriesInModule = new ArrayList<>();
   private final List<GraphQLFieldDefinition> allMutationsInModule = new ArrayList<>();
+  private final List<GraphQLFieldDefinition> allSubscriptionsInModule = new ArrayList<>();
   private final SchemaBundle.Builder schemaBundleBuilder = SchemaBundle.builder();
   private final Class<?> moduleClass;
   private final Object schemaDefinition;
@@ -103,6 +122,10 @@ public class SchemaDefinitionReader {
     allMutationsInModule.add(mutation);
   }
 
+  protected void addSubscription(GraphQLFieldDefinition subscription) {
+    allSubscriptionsInModule.add(subscription);
+  }
+
   protected void addQueryList(List<GraphQLFieldDefinition> queries) {
     allQueriesInModule.addAll(queries);
   }
@@ -111,6 +134,13 @@ public class SchemaDefinitionReader {
     allMutationsInModule.addAll(mutations);
   }
 
+  /** Adds the response cache of a field, so its statistics are available from the bundle. */
+  void addResponseCache(String fieldName, ResponseCache<?> responseCache) {
+    schemaBundleBuilder
+        .responseCachesBuilder()
+        .put(moduleClass.getSimpleName() + "." + fieldName, responseCache);
+  }
+
   public void readMembers() {
 
     for (Method method : findMethods(moduleClass, Query.class)) {
@@ -130,6 +160,28 @@ public class SchemaDefinitionReader {
               null,
               schemaOptions));
     }
+    for (Method method : findMethods(moduleClass, Subscription.class)) {
+      Preconditions.checkArgument(
+          Publisher.class.isAssignableFrom(method.getReturnType()),
+          "Subscription %s must return a Publisher",
+          method);
+      Subscription subscription = method.getAnnotationsByType(Subscription.class)[0];
+      allSubscriptionsInModule.add(
+          methodToFieldDefinition(
+              schemaDefinition,
+              method,
+              subscription.value(),
+              subscription.fullName(),
+              null,
+              schemaOptions));
+    }
+
+    for (Method method : findMethods(moduleClass, BatchLookup.class)) {
+      BatchLookup batchLookup = method.getAnnotationsByType(BatchLookup.class)[0];
+      schemaBundleBuilder
+          .batchLoadersBuilder()
+          .put(batchLookup.value(), methodToBatchLoader(schemaDefinition, method, batchLookup));
+    }
 
     final List<NodeDataFetcher> nodeDataFetchers = new ArrayList<>();
     final List<TypeModification> schemaModifications = new ArrayList<>();
@@ -188,6 +240,11 @@ public class SchemaDefinitionReader {
         allMutationsInModule.add((GraphQLFieldDefinition) field.get(schemaDefinition));
       }
 
+      for (Field field : findSubscriptionFields(moduleClass)) {
+        field.setAccessible(true);
+        allSubscriptionsInModule.add((GraphQLFieldDefinition) field.get(schemaDefinition));
+      }
+
       for (Field field : findTypeModificationFields(moduleClass)) {
         field.setAccessible(true);
         schemaBundleBuilder
@@ -248,6 +305,8 @@ public class SchemaDefinitionReader {
       }
     }
 
+    schemaBundleBuilder.subscriptionFieldsBuilder().addAll(allSubscriptionsInModule);
+
     referencedDescriptors
         .build()
         .forEach(
@@ -284,6 +343,14 @@ public class SchemaDefinitionReader {
     return findFields(moduleClass, Mutation.class, GraphQLFieldDefinition.class);
   }
 
+  /**
+   * Returns an {@link ImmutableSet} of all the fields in {@code moduleClass} or its super classes
+   * that are annotated with {@link Subscription}.
+   */
+  private static ImmutableSet<Field> findSubscriptionFields(Class<?> moduleClass) {
+    return findFields(moduleClass, Subscription.class, GraphQLFieldDefinition.class);
+  }
+
   /**
    * Returns an {@link ImmutableSet} of all the methods in {@code moduleClass} or its super classes
    * that are annotated with {@link Query}.
@@ -404,26 +471,53 @@ public class SchemaDefinitionReader {
       SchemaOptions schemaOptions) {
     method.setAccessible(true);
     try {
-      ImmutableList<MethodMetadata> methodParameters = getMethodMetadata(method, descriptor);
-      DataFetcher<?> dataFetcher =
+      RpcOptions rpcOptions = RpcOptions.forMethod(method);
+      ImmutableList<MethodMetadata> methodParameters =
+          getMethodMetadata(method, descriptor, rpcOptions);
+      @Nullable
+      ResponseProjection projection =
+          rpcOptions.pruneResponses() ? createResponseProjection(method) : null;
+      boolean shared = rpcOptions.idempotent() || rpcOptions.hasCache();
+      @Nullable
+      MethodRequestKey requestKey = shared ? MethodRequestKey.forMethod(method) : null;
+      @Nullable
+      SingleFlight<Object> singleFlight = rpcOptions.idempotent() ? new SingleFlight<>() : null;
+      @Nullable
+      ResponseCache<Object> responseCache = rpcOptions.newResponseCache();
+      if (responseCache != null) {
+        addResponseCache(
+            descriptor == null ? name : descriptor.getName() + "." + name, responseCache);
+      }
+      DataFetcher<?> methodDataFetcher =
           (DataFetchingEnvironment environment) -> {
             Object[] methodParameterValues = new Object[methodParameters.size()];
             for (int i = 0; i < methodParameters.size(); i++) {
               methodParameterValues[i] = methodParameters.get(i).getParameterValue(environment);
             }
-            try {
-              return method.invoke(module, methodParameterValues);
-            } catch (InvocationTargetException e) {
-              Throwable cause = e.getCause();
-              if (cause instanceof RuntimeException) {
-                throw (RuntimeException) cause;
-              }
-              throw new RuntimeException(cause);
-            } catch (Exception e) {
-              throw new RuntimeException(e);
+            if (!shared) {
+              Object response = invoke(module, method, methodParameterValues);
+              return projection == null ? response : projection.project(response, environment);
             }
+            ByteString key = requestKey.of(methodParameterValues);
+            Supplier<CompletableFuture<Object>> call =
+                () -> toCompletableFuture(invoke(module, method, methodParameterValues));
+            // The cache shares loads itself.
+            Object response =
+                responseCache != null
+                    ? responseCache.get(key, call)
+                    : singleFlight.execute(key, call);
+            return projection == null ? response : projection.project(response, environment);
           };
 
+      DataFetcher<?> dataFetcher = methodDataFetcher;
+      SchemaModification modification = method.getAnnotation(SchemaModification.class);
+      if (descriptor != null && modification != null && modification.sourceFields().length > 0) {
+        for (String sourceField : modification.sourceFields()) {
+          checkFieldPath(descriptor, sourceField);
+        }
+        dataFetcher = SourceFieldsDataFetcher.create(dataFetcher, modification.sourceFields());
+      }
+
       GraphQLOutputType returnType = getReturnType(method);
 
       // Create GraphQL Field Definition
@@ -443,6 +537,118 @@ public class SchemaDefinitionReader {
     }
   }
 
+  private RpcBatchLoader<?, ?> methodToBatchLoader(
+      Object module, Method method, BatchLookup batchLookup) {
+    method.setAccessible(true);
+    try {
+      Descriptor responseDescriptor = getResponseDescriptor(method);
+      Preconditions.checkArgument(
+          responseDescriptor != null, "Batch lookup %s must return a proto", method);
+
+      // The request is passed at its index, other parameters are injected.
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      int requestIndex = -1;
+      List<Function<DataFetchingEnvironment, ?>> parameters = new ArrayList<>();
+      for (int i = 0; i < parameterTypes.length; i++) {
+        if (requestIndex == -1 && Message.class.isAssignableFrom(parameterTypes[i])) {
+          requestIndex = i;
+          parameters.add(null);
+        } else {
+          Function<DataFetchingEnvironment, ?> parameter = handleParameter(method, i);
+          Preconditions.checkArgument(
+              parameter != null, "Unsupported parameter %s of batch lookup %s", i, method);
+          parameters.add(parameter);
+        }
+      }
+      Preconditions.checkArgument(requestIndex != -1, "Batch lookup %s takes no request", method);
+      Message requestPrototype =
+          ((Message.Builder) parameterTypes[requestIndex].getMethod("newBuilder").invoke(null))
+              .build();
+      int requestParameter = requestIndex;
+
+      return RpcBatchLoader.newBuilder()
+          .requestPrototype(requestPrototype)
+          .requestKeyField(batchLookup.requestKeyField())
+          .responseDescriptor(responseDescriptor)
+          .responseKeyField(batchLookup.responseKeyField())
+          .maxBatchSize(batchLookup.maxBatchSize())
+          .rpc(
+              request -> {
+                Object[] methodParameterValues = new Object[parameters.size()];
+                for (int i = 0; i < methodParameterValues.length; i++) {
+                  methodParameterValues[i] =
+                      i == requestParameter ? request : parameters.get(i).apply(null);
+                }
+                try {
+                  return toCompletableFuture(invoke(module, method, methodParameterValues));
+                } catch (RuntimeException e) {
+                  return failedFuture(e);
+                }
+              })
+          .build();
+    } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Invokes a method of the module, rethrowing what it throws. */
+  private static Object invoke(Object module, Method method, Object[] methodParameterValues) {
+    try {
+      return method.invoke(module, methodParameterValues);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Adapts a response, or a future of one, to a {@link CompletableFuture}. */
+  @SuppressWarnings("unchecked")
+  private static <T> CompletableFuture<T> toCompletableFuture(Object response) {
+    if (response instanceof CompletionStage) {
+      return ((CompletionStage<T>) response).toCompletableFuture();
+    }
+    if (response instanceof ListenableFuture) {
+      return GuavaListenableFutureSupport.toCompletableFuture((ListenableFuture<T>) response);
+    }
+    return CompletableFuture.completedFuture((T) response);
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(t);
+    return future;
+  }
+
+  private static ResponseProjection createResponseProjection(Method method)
+      throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    Descriptor responseDescriptor = getResponseDescriptor(method);
+    Preconditions.checkArgument(
+        responseDescriptor != null, "%s must return a proto to prune the response", method);
+    return ResponseProjection.create(responseDescriptor);
+  }
+
+  /** Checks that the dot separated path refers to a field of the proto. */
+  private static void checkFieldPath(Descriptor descriptor, String path) {
+    Descriptor current = descriptor;
+    for (String name : Splitter.on('.').split(path)) {
+      Preconditions.checkArgument(
+          current != null && current.findFieldByName(name) != null,
+          "Source field %s not found in %s",
+          path,
+          descriptor.getFullName());
+      Descriptors.FieldDescriptor field = current.findFieldByName(name);
+      current =
+          field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+              ? field.getMessageType()
+              : null;
+    }
+  }
+
   ImmutableMap<java.lang.reflect.Type, GraphQLScalarType> javaTypeToScalarMap =
       ImmutableMap.of(
           String.class, Scalars.GraphQLString,
@@ -454,8 +660,8 @@ public class SchemaDefinitionReader {
   private GraphQLOutputType getReturnType(Method method)
       throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
     // Currently it's assumed the response is of type Message, ListenableFuture<? extends
-    // Message>, ImmutableList<Message>, ListenableFuture<ImmutableList<? extend Message>>, oe
-    // any Scalar type.
+    // Message>, ImmutableList<Message>, ListenableFuture<ImmutableList<? extend Message>>,
+    // Publisher<? extends Message>, or any Scalar type.
 
     // Assume Message or Scalar
     if (!(method.getGenericReturnType() instanceof ParameterizedType)) {
@@ -500,7 +706,7 @@ public class SchemaDefinitionReader {
       return new GraphQLList(new GraphQLNonNull(ProtoToGql.getReference(responseDescriptor)));
     }
 
-    // ListenableFuture<? extends Message>
+    // ListenableFuture<? extends Message> or Publisher<? extends Message>
     @SuppressWarnings("unchecked")
     Class<? extends Message> responseClass =
         (Class<? extends Message>) genericReturnType.getActualTypeArguments()[0];
@@ -510,16 +716,48 @@ public class SchemaDefinitionReader {
     return ProtoToGql.getReference(responseDescriptor);
   }
 
+  /**
+   * Returns the descriptor of the proto returned by the method, or null if the method doesn't
+   * return a proto.
+   */
+  @Nullable
+  private static Descriptor getResponseDescriptor(Method method)
+      throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    java.lang.reflect.Type responseType = method.getGenericReturnType();
+    if (responseType instanceof ParameterizedType) {
+      // ListenableFuture<? extends Message>, ImmutableList<? extends Message> or
+      // ListenableFuture<ImmutableList<? extends Message>>
+      responseType = ((ParameterizedType) responseType).getActualTypeArguments()[0];
+      if (responseType instanceof ParameterizedType) {
+        responseType = ((ParameterizedType) responseType).getActualTypeArguments()[0];
+      }
+    }
+    if (!(responseType instanceof Class)
+        || !Message.class.isAssignableFrom((Class<?>) responseType)) {
+      return null;
+    }
+    return (Descriptor) ((Class<?>) responseType).getMethod("getDescriptor").invoke(null);
+  }
+
   private ImmutableList<MethodMetadata> getMethodMetadata(
-      Method method, @Nullable Descriptor sourceDescriptor)
+      Method method, @Nullable Descriptor sourceDescriptor, RpcOptions rpcOptions)
       throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
     final Class<?>[] parameterTypes = method.getParameterTypes();
+    @Nullable Descriptor responseDescriptor = getResponseDescriptor(method);
+    boolean fieldMaskInjected = false;
 
     ImmutableList.Builder<MethodMetadata> listBuilder = ImmutableList.builder();
     for (int i = 0; i < parameterTypes.length; i++) {
 
       Class<?> parameterType = parameterTypes[i];
-      if (Message.class.isAssignableFrom(parameterType)) {
+      if (FieldMask.class.equals(parameterType) && !isArg(method.getParameterAnnotations()[i])) {
+        Preconditions.checkArgument(
+            responseDescriptor != null, "%s must return a proto to inject a FieldMask", method);
+        Function<DataFetchingEnvironment, ?> function =
+            environment ->
+                SelectorToFieldMask.getFieldMaskForProto(environment, responseDescriptor).build();
+        listBuilder.add(MethodMetadata.create(function));
+      } else if (Message.class.isAssignableFrom(parameterType)) {
         @SuppressWarnings("unchecked")
         Class<? extends Message> requestClass = (Class<? extends Message>) parameterType;
         Descriptor requestDescriptor =
@@ -535,12 +773,16 @@ public class SchemaDefinitionReader {
           Message message =
               ((Message.Builder) requestClass.getMethod("newBuilder").invoke(null)).build();
           String argName = getArgName(method.getParameterAnnotations()[i]);
+          @Nullable
+          FieldMaskInjector fieldMaskInjector =
+              createFieldMaskInjector(requestDescriptor, responseDescriptor, rpcOptions);
+          fieldMaskInjected |= fieldMaskInjector != null;
           Function<DataFetchingEnvironment, ?> function =
               environment -> {
                 Message req =
                     inputConverter.createProtoBuf(
                         requestDescriptor, message.toBuilder(), environment.getArgument(argName));
-                return req;
+                return fieldMaskInjector == null ? req : fieldMaskInjector.inject(req, environment);
               };
           GraphQLArgument argument = GqlInputConverter.createArgument(requestDescriptor, argName);
           listBuilder.add(MethodMetadata.create(function, argument));
@@ -577,14 +819,47 @@ public class SchemaDefinitionReader {
 
       } else if (DataFetchingEnvironment.class.isAssignableFrom(parameterType)) {
         listBuilder.add(MethodMetadata.create(Functions.identity()));
+      } else if (DataLoader.class.equals(parameterType)) {
+        Loader loader = method.getParameters()[i].getAnnotation(Loader.class);
+        Preconditions.checkArgument(
+            loader != null, "DataLoader parameter %s of %s must have a @Loader name", i, method);
+        String loaderName = loader.value();
+        Function<DataFetchingEnvironment, ?> function =
+            environment -> {
+              DataLoader<?, ?> dataLoader = environment.getDataLoader(loaderName);
+              Preconditions.checkState(
+                  dataLoader != null, "DataLoader %s is not registered", loaderName);
+              return dataLoader;
+            };
+        listBuilder.add(MethodMetadata.create(function));
       } else {
         listBuilder.add(MethodMetadata.create(handleParameter(method, i)));
       }
     }
+    Preconditions.checkArgument(
+        !rpcOptions.hasFieldMask() || fieldMaskInjected,
+        "%s has no request with a FieldMask field named %s",
+        method,
+        rpcOptions.fieldMaskName());
     return listBuilder.build();
   }
 
-  private static boolean isArg(Annotation[] annotations) {
+  /** Returns an injector if the request has the FieldMask field configured in the options. */
+  @Nullable
+  private static FieldMaskInjector createFieldMaskInjector(
+      Descriptor requestDescriptor,
+      @Nullable Descriptor responseDescriptor,
+      RpcOptions rpcOptions) {
+    if (!rpcOptions.hasFieldMask()
+        || responseDescriptor == null
+        || !FieldMaskInjector.hasFieldMask(requestDescriptor, rpcOptions.fieldMaskName())) {
+      return null;
+    }
+    return FieldMaskInjector.create(
+        requestDescriptor, rpcOptions.fieldMaskName(), responseDescriptor);
+  }
+
+  static boolean isArg(Annotation[] annotations) {
     for (Annotation annotation : annotations) {
       if (annotation.annotationType().isAssignableFrom(Arg.class)) {
         return true;
@@ -26,4 +26,11 @@ public @interface SchemaModification {
 
   /** Proto reference for the type to modify, only used when annotating a method. */
   Class<?> onType() default SchemaModification.class;
+
+  /**
+   * Paths of the fields on the {@link #onType()} proto that are read by the method, such as the
+   * keys of a join. They are added to the {@link com.google.protobuf.FieldMask} for the source
+   * proto whenever the new field is selected. Only used when annotating a method.
+   */
+  String[] sourceFields() default {};
 }
@@ -0,0 +1,48 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import com.google.api.graphql.grpc.SourceFieldsReader;
+import com.google.common.collect.ImmutableList;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+
+/** A {@link DataFetcher} that reads fields of its source proto, see {@link SourceFieldsReader}. */
+public final class SourceFieldsDataFetcher<T> implements DataFetcher<T>, SourceFieldsReader {
+
+  private final DataFetcher<T> delegate;
+  private final ImmutableList<String> sourceFields;
+
+  private SourceFieldsDataFetcher(DataFetcher<T> delegate, ImmutableList<String> sourceFields) {
+    this.delegate = delegate;
+    this.sourceFields = sourceFields;
+  }
+
+  /** Wraps the data fetcher, which reads the supplied field paths of the source proto. */
+  public static <T> SourceFieldsDataFetcher<T> create(
+      DataFetcher<T> delegate, String... sourceFields) {
+    return new SourceFieldsDataFetcher<>(delegate, ImmutableList.copyOf(sourceFields));
+  }
+
+  @Override
+  public ImmutableList<String> sourceFields() {
+    return sourceFields;
+  }
+
+  @Override
+  public T get(DataFetchingEnvironment environment) throws Exception {
+    return delegate.get(environment);
+  }
+}
@@ -0,0 +1,247 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import graphql.DeferredExecutionResult;
+import graphql.Directives;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.Scalars;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/** Unit tests for {@link DeadlineSupport}. */
+@RunWith(JUnit4.class)
+public final class DeadlineSupportTest {
+
+  private final AtomicReference<Deadline> fetchDeadline = new AtomicReference<>();
+  private final AtomicReference<Context> fetchContext = new AtomicReference<>();
+  private final CompletableFuture<String> pending = new CompletableFuture<>();
+
+  private final GraphQLSchema schema =
+      GraphQLSchema.newSchema()
+          .query(
+              GraphQLObjectType.newObject()
+                  .name("Query")
+                  .field(
+                      GraphQLFieldDefinition.newFieldDefinition()
+                          .name("hello")
+                          .type(Scalars.GraphQLString)
+                          .dataFetcher(
+                              env -> {
+                                fetchDeadline.set(Context.current().getDeadline());
+                                fetchContext.set(Context.current());
+                                return "world";
+                              }))
+                  .field(
+                      GraphQLFieldDefinition.newFieldDefinition()
+                          .name("slow")
+                          .type(Scalars.GraphQLString)
+                          .dataFetcher(env -> pending)))
+          .additionalDirective(Directives.DeferDirective)
+          .build();
+
+  private ExecutionResult execute(Instrumentation instrumentation, String query) {
+    return GraphQL.newGraphQL(schema)
+        .instrumentation(instrumentation)
+        .build()
+        .executeAsync(builder -> builder.query(query))
+        .join();
+  }
+
+  @Test
+  public void fieldsShouldBeFetchedWithDeadline() {
+    ExecutionResult result =
+        execute(DeadlineSupport.deadlineInstrumentation(Duration.ofMinutes(1)), "{ hello }");
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(fetchDeadline.get()).isNotNull();
+    assertThat(fetchDeadline.get().timeRemaining(TimeUnit.SECONDS)).isAtMost(60);
+  }
+
+  @Test
+  public void contextDeadlineShouldApplyWhenSooner() {
+    Deadline deadline = Deadline.after(10, TimeUnit.SECONDS);
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    Context.CancellableContext context = Context.current().withDeadline(deadline, scheduler);
+    try {
+      context.run(
+          () ->
+              execute(
+                  DeadlineSupport.deadlineInstrumentation(Duration.ofMinutes(1)), "{ hello }"));
+    } finally {
+      context.cancel(null);
+      scheduler.shutdown();
+    }
+
+    assertThat(fetchDeadline.get()).isEqualTo(deadline);
+  }
+
+  @Test
+  public void pendingFieldShouldFailAtDeadline() {
+    ExecutionResult result =
+        execute(
+            DeadlineSupport.deadlineInstrumentation(Duration.ofMillis(50)), "{ hello slow }");
+
+    Map<String, Object> data = result.getData();
+    assertThat(data.get("hello")).isEqualTo("world");
+    assertThat(data.get("slow")).isNull();
+    assertThat(result.getErrors()).hasSize(1);
+    assertThat(result.getErrors().get(0).getMessage()).contains("DEADLINE_EXCEEDED");
+  }
+
+  @Test
+  public void cancellingContextShouldCancelPendingField() throws Exception {
+    Context.CancellableContext context = Context.current().withCancellation();
+    CompletableFuture<ExecutionResult> result =
+        context.call(
+            () ->
+                GraphQL.newGraphQL(schema)
+                    .instrumentation(DeadlineSupport.deadlineInstrumentation())
+                    .build()
+                    .executeAsync(builder -> builder.query("{ hello slow }")));
+    assertThat(result.isDone()).isFalse();
+
+    context.cancel(null);
+
+    assertThat(pending.isCancelled()).isTrue();
+    assertThat(result.join().getErrors().get(0).getMessage()).contains("CANCELLED");
+  }
+
+  @Test
+  public void cancellingFieldShouldCancelFetchedFuture() {
+    GraphQLSchema cancellingSchema =
+        GraphQLSchema.newSchema()
+            .query(
+                GraphQLObjectType.newObject()
+                    .name("Query")
+                    .field(
+                        GraphQLFieldDefinition.newFieldDefinition()
+                            .name("slow")
+                            .type(Scalars.GraphQLString)
+                            .dataFetcher(env -> pending)))
+            .build();
+    Instrumentation instrumentation =
+        new ChainedInstrumentation(
+            Arrays.asList(
+                DeadlineSupport.deadlineInstrumentation(),
+                new SimpleInstrumentation() {
+                  @Override
+                  public DataFetcher<?> instrumentDataFetcher(
+                      DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters) {
+                    return env -> {
+                      CompletableFuture<?> future = (CompletableFuture<?>) dataFetcher.get(env);
+                      future.cancel(false);
+                      return future;
+                    };
+                  }
+                }));
+
+    GraphQL.newGraphQL(cancellingSchema)
+        .instrumentation(instrumentation)
+        .build()
+        .execute("{ slow }");
+
+    assertThat(pending.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void fieldsShouldFailOnceDeadlineHasPassed() {
+    ExecutionResult result =
+        execute(DeadlineSupport.deadlineInstrumentation(Duration.ofNanos(1)), "{ hello }");
+
+    assertThat(fetchDeadline.get()).isNull();
+    assertThat(result.getErrors()).hasSize(1);
+  }
+
+  @Test
+  public void withoutDeadlineFieldsShouldBeFetchedAsIs() {
+    ExecutionResult result = execute(DeadlineSupport.deadlineInstrumentation(), "{ hello }");
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(fetchDeadline.get()).isNull();
+  }
+
+  @Test
+  public void contextShouldBeClosedOnceExecutionCompletes() {
+    ExecutionResult result =
+        execute(DeadlineSupport.deadlineInstrumentation(Duration.ofMinutes(1)), "{ hello }");
+
+    assertThat(result.getErrors()).isEmpty();
+    assertThat(fetchContext.get().isCancelled()).isTrue();
+  }
+
+  @Test
+  public void contextShouldBeClosedOnceDeferredResultsAreDelivered() {
+    ExecutionResult result =
+        execute(
+            DeadlineSupport.deadlineInstrumentation(Duration.ofMinutes(1)),
+            "{ hello slow @defer }");
+    assertThat(fetchContext.get().isCancelled()).isFalse();
+
+    @SuppressWarnings("unchecked")
+    Publisher<DeferredExecutionResult> deferredResults =
+        (Publisher<DeferredExecutionResult>) result.getExtensions().get(GraphQL.DEFERRED_RESULTS);
+    CompletableFuture<Void> delivered = new CompletableFuture<>();
+    deferredResults.subscribe(
+        new Subscriber<DeferredExecutionResult>() {
+          @Override
+          public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+          }
+
+          @Override
+          public void onNext(DeferredExecutionResult deferredResult) {}
+
+          @Override
+          public void onError(Throwable t) {
+            delivered.completeExceptionally(t);
+          }
+
+          @Override
+          public void onComplete() {
+            delivered.complete(null);
+          }
+        });
+    pending.complete("done");
+
+    delivered.join();
+    assertThat(fetchContext.get().isCancelled()).isTrue();
+  }
+}
@@ -0,0 +1,165 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.api.graphql.execution;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Ticker;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link Hedger}. */
+@RunWith(JUnit4.class)
+public final class HedgerTest {
+
+  private static final Duration MIN_DELAY = Duration.ofMillis(10);
+
+  private static Hedger.Builder hedger() {
+    return Hedger.newBuilder().percentile(95).minDelay(MIN_DELAY);
+  }
+
+  private static void warmUp(Hedger hedger) {
+    for (int i = 0; i < 100; i++) {
+      hedger.call(() -> CompletableFuture.completedFuture("response"));
+    }
+  }
+
+  @Test
+  public void callShouldHedgeSlowAttempt() throws Exception {
+    Hedger hedger = hedger().build();
+    warmUp(hedger);
+    assertThat(hedger.delay()).isEqualTo(MIN_DELAY);
+
+    CompletableFuture<String> slow = new CompletableFuture<>();
+    CompletableFuture<String> result =
+        hedger.call(
+            () -> hedger.hedgeCount() == 0 ? slow : CompletableFuture.completedFuture("hedge"));
+    assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("hedge");
+    assertThat(slow.isCancelled()).isTrue();
+    assertThat(hedger.hedgeCount()).isEqualTo(1);
+    assertThat(hedger.hedgeWinCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void delayShouldIncludeTheWaitForTheHedge() throws Exception {
+    AtomicLong nanos = new AtomicLong();
+    Ticker ticker =
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos.get();
+          }
+        };
+    Hedger hedger = Hedger.newBuilder().percentile(95).budget(1).ticker(ticker).build();
+    long latency = TimeUnit.MILLISECONDS.toNanos(1);
+    for (int i = 0; i < 100; i++) {
+      hedger.call(
+          () -> {
+            nanos.addAndGet(latency);
+            return CompletableFuture.completedFuture("response");
+          });
+    }
+    assertThat(hedger.delay()).isEqualTo(Duration.ofNanos(latency));
+
+    // The primaries stay slow and the hedges respond at once: every call still takes the delay.
+    for (int i = 0; i < 1024; i++) {
+      AtomicBoolean sent = new AtomicBoolean();
+      CompletableFuture<String> result =
+          hedger.call(
+              () -> {
+                if (sent.compareAndSet(false, true)) {
+                  nanos.addAndGet(latency);
+                  return new CompletableFuture<>();
+                }
+                return CompletableFuture.completedFuture("hedge");
+              });
+      assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("hedge");
+    }
+    assertThat(hedger.hedgeWinCount()).isEqualTo(1024);
+    assertThat(hedger.delay()).isAtLeast(Duration.ofNanos(latency));
+  }
+
+  @Test
+  public void callShouldNotHedgeBeforeWarmUp() throws Exception {
+    Hedger hedger = hedger().build();
+    CompletableFuture<String> slow = new CompletableFuture<>();
+    CompletableFuture<String> result = hedger.call(() -> slow);
+    Thread.sleep(MIN_DELAY.toMillis() * 5);
+    assertThat(hedger.delay()).isNull();
+    assertThat(hedger.hedgeCount()).isEqualTo(0);
+
+    slow.complete("response");
+    assertThat(result.get()).isEqualTo("response");
+  }
+
+  @Test
+  public void callShouldNotHedgeWithoutBudget() throws Exception {
+    Hedger hedger = hedger().budget(0).build();
+    warmUp(hedger);
+    CompletableFuture<String> slow = new CompletableFuture<>();
+    CompletableFuture<String> result = hedger.call(() -> slow);
+    Thread.sleep(MIN_DELAY.toMillis() * 5);
+    assertThat(hedger.hedgeCount()).isEqualTo(0);
+    assertThat(result.isDone()).isFalse();
+  }
+
+  @Test
+  public void callShouldFailWhenAllAttemptsFail() throws Exception {
+    Hedger hedger = hedger().build();
+    warmUp(hedger);
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> second = new CompletableFuture<>();
+    CountDownLatch hedged = new CountDownLatch(1);
+    CompletableFuture<String> result =
+        hedger.call(
+            () -> {
+              if (hedger.hedgeCount() == 0) {
+                return first;
+              }
+              hedged.countDown();
+              return second;
+            });
+    assertThat(hedged.await(5, TimeUnit.SECONDS)).isTrue();
+    first.completeExceptionally(new IllegalStateException("unavailable"));
+    assertThat(result.isDone()).isFalse();
+
+    IllegalStateException failure = new IllegalStateException("deadline exceeded");
+    second.completeExceptionally(failure);
+    try {
+      result.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e).hasCauseThat().isSameInstanceAs(failure);
+    }
+  }
+
+  @Test
+  public void cancelShouldCancelAttempts() throws Exception {
+    Hedger hedger = hedger().build();
+    CompletableFuture<String> slow = new CompletableFuture<>();
+    hedger.call(() -> slow).cancel(false);
+    assertThat(slow.isCancelled()).isTrue();
+  }
+}
@@ -0,0 +1,208 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.common.base.Ticker;
+import io.grpc.Context;
+import io.grpc.Status;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ResponseCache}. */
+@RunWith(JUnit4.class)
+public final class ResponseCacheTest {
+
+  private static final Person ADA = Person.newBuilder().setUsername("ada").build();
+  private static final Person GRACE = Person.newBuilder().setUsername("grace").build();
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return nanos.get();
+        }
+      };
+  private final List<CompletableFuture<String>> calls = new ArrayList<>();
+
+  private CompletableFuture<String> call() {
+    CompletableFuture<String> call = new CompletableFuture<>();
+    calls.add(call);
+    return call;
+  }
+
+  private ResponseCache<String> createCache(Duration staleWhileRevalidate, long maximumSize) {
+    return ResponseCache.newBuilder()
+        .ttl(Duration.ofSeconds(10))
+        .staleWhileRevalidate(staleWhileRevalidate)
+        .maximumSize(maximumSize)
+        .ticker(ticker)
+        .build();
+  }
+
+  private void advance(long seconds) {
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+
+  @Test
+  public void getShouldReturnCachedResponse() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ZERO, 10);
+    CompletableFuture<String> first = cache.get(ADA, this::call);
+    CompletableFuture<String> second = cache.get(ADA, this::call);
+    calls.get(0).complete("ada");
+    advance(5);
+    CompletableFuture<String> third = cache.get(ADA, this::call);
+
+    assertThat(calls).hasSize(1);
+    assertThat(first.get()).isEqualTo("ada");
+    assertThat(second.get()).isEqualTo("ada");
+    assertThat(third.get()).isEqualTo("ada");
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+    assertThat(cache.stats().hitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void getShouldLoadExpiredResponse() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ZERO, 10);
+    cache.get(ADA, this::call);
+    calls.get(0).complete("ada");
+    advance(10);
+    CompletableFuture<String> response = cache.get(ADA, this::call);
+
+    assertThat(calls).hasSize(2);
+    assertThat(response.isDone()).isFalse();
+    calls.get(1).complete("ada again");
+    assertThat(response.get()).isEqualTo("ada again");
+    assertThat(cache.stats().missCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void getShouldReturnStaleResponseWhileRevalidating() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ofSeconds(30), 10);
+    cache.get(ADA, this::call);
+    calls.get(0).complete("ada");
+    advance(15);
+
+    assertThat(cache.get(ADA, this::call).get()).isEqualTo("ada");
+    assertThat(cache.get(ADA, this::call).get()).isEqualTo("ada");
+    assertThat(calls).hasSize(2);
+    calls.get(1).complete("ada again");
+    assertThat(cache.get(ADA, this::call).get()).isEqualTo("ada again");
+    assertThat(cache.stats().staleHitCount()).isEqualTo(2);
+    assertThat(cache.stats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void getShouldNotCacheFailure() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ZERO, 10);
+    CompletableFuture<String> failed = cache.get(ADA, this::call);
+    calls.get(0).completeExceptionally(new IllegalStateException("unavailable"));
+    CompletableFuture<String> response = cache.get(ADA, this::call);
+    calls.get(1).complete("ada");
+
+    assertThat(failed.isCompletedExceptionally()).isTrue();
+    assertThat(response.get()).isEqualTo("ada");
+    assertThat(cache.stats().loadFailureCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void getShouldKeepStaleResponseWhenRevalidationFails() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ofSeconds(30), 10);
+    cache.get(ADA, this::call);
+    calls.get(0).complete("ada");
+    advance(15);
+    cache.get(ADA, this::call);
+    calls.get(1).completeExceptionally(new IllegalStateException("unavailable"));
+
+    assertThat(cache.get(ADA, this::call).get()).isEqualTo("ada");
+    assertThat(calls).hasSize(3);
+  }
+
+  @Test
+  public void getShouldEvictBeyondMaximumSize() {
+    ResponseCache<String> cache = createCache(Duration.ZERO, 1);
+    cache.get(ADA, this::call);
+    cache.get(GRACE, this::call);
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.stats().evictionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void cancelShouldNotAffectCachedResponse() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ZERO, 10);
+    cache.get(ADA, this::call).cancel(true);
+    calls.get(0).complete("ada");
+
+    assertThat(cache.get(ADA, this::call).get()).isEqualTo("ada");
+    assertThat(calls).hasSize(1);
+  }
+
+  @Test
+  public void loadShouldNotRunInContextOfRequest() throws Exception {
+    ResponseCache<String> cache = createCache(Duration.ZERO, 10);
+    Context.CancellableContext request = Context.current().withCancellation();
+    AtomicReference<Context> loadContext = new AtomicReference<>();
+    CompletableFuture<String> first =
+        request.call(
+            () ->
+                cache.get(
+                    ADA,
+                    () -> {
+                      loadContext.set(Context.current());
+                      return call();
+                    }));
+    request.cancel(null);
+
+    assertThat(loadContext.get().isCancelled()).isFalse();
+    assertThat(loadContext.get().getDeadline()).isNotNull();
+    calls.get(0).complete("ada");
+    assertThat(first.get()).isEqualTo("ada");
+    assertThat(loadContext.get().isCancelled()).isTrue();
+  }
+
+  @Test
+  public void loadShouldFailAfterLoadTimeout() throws Exception {
+    ResponseCache<String> cache =
+        ResponseCache.newBuilder()
+            .ttl(Duration.ofSeconds(10))
+            .loadTimeout(Duration.ofMillis(1))
+            .ticker(ticker)
+            .build();
+    CompletableFuture<String> response = cache.get(ADA, this::call);
+    try {
+      response.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(Status.fromThrowable(e.getCause()).getCode())
+          .isEqualTo(Status.Code.DEADLINE_EXCEEDED);
+    }
+    assertThat(calls.get(0).isCancelled()).isTrue();
+    assertThat(cache.stats().loadFailureCount()).isEqualTo(1);
+  }
+}
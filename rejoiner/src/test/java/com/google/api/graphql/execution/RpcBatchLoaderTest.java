@@ -0,0 +1,121 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.graphql.rejoiner.PersonOuterClass.ListPeopleRequest;
+import com.google.api.graphql.rejoiner.PersonOuterClass.ListPeopleResponse;
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Message;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.dataloader.DataLoader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RpcBatchLoader}. */
+@RunWith(JUnit4.class)
+public final class RpcBatchLoaderTest {
+
+  private final List<ListPeopleRequest> requests = new ArrayList<>();
+
+  private RpcBatchLoader<String, Person> createLoader(int maxBatchSize) {
+    return RpcBatchLoader.newBuilder()
+        .requestPrototype(ListPeopleRequest.getDefaultInstance())
+        .requestKeyField("usernames")
+        .responseDescriptor(ListPeopleResponse.getDescriptor())
+        .responseKeyField("people.username")
+        .maxBatchSize(maxBatchSize)
+        .rpc(this::listPeople)
+        .build();
+  }
+
+  /** Returns the people in reverse order, leaving out unknown usernames. */
+  private CompletableFuture<Message> listPeople(Message message) {
+    ListPeopleRequest request = (ListPeopleRequest) message;
+    requests.add(request);
+    ListPeopleResponse.Builder response = ListPeopleResponse.newBuilder();
+    for (String username : request.getUsernamesList()) {
+      if (!username.equals("unknown")) {
+        response.addPeople(0, Person.newBuilder().setUsername(username).setFirstName(username));
+      }
+    }
+    return CompletableFuture.completedFuture(response.build());
+  }
+
+  @Test
+  public void loadShouldMatchResponsesToKeys() throws Exception {
+    List<Person> people =
+        createLoader(0).load(Arrays.asList("a", "unknown", "b")).toCompletableFuture().get();
+
+    assertThat(people)
+        .containsExactly(
+            Person.newBuilder().setUsername("a").setFirstName("a").build(),
+            null,
+            Person.newBuilder().setUsername("b").setFirstName("b").build())
+        .inOrder();
+  }
+
+  @Test
+  public void loadShouldDeduplicateKeys() throws Exception {
+    List<Person> people =
+        createLoader(0).load(Arrays.asList("a", "b", "a")).toCompletableFuture().get();
+
+    assertThat(people).hasSize(3);
+    assertThat(people.get(2)).isEqualTo(people.get(0));
+    assertThat(requests)
+        .containsExactly(
+            ListPeopleRequest.newBuilder().addAllUsernames(ImmutableList.of("a", "b")).build());
+  }
+
+  @Test
+  public void loadShouldSplitBatches() throws Exception {
+    createLoader(2).load(Arrays.asList("a", "b", "c")).toCompletableFuture().get();
+
+    assertThat(requests)
+        .containsExactly(
+            ListPeopleRequest.newBuilder().addAllUsernames(ImmutableList.of("a", "b")).build(),
+            ListPeopleRequest.newBuilder().addUsernames("c").build())
+        .inOrder();
+  }
+
+  @Test
+  public void dataLoaderShouldBatchLoads() throws Exception {
+    DataLoader<String, Person> dataLoader = createLoader(0).newDataLoader();
+    CompletableFuture<Person> a = dataLoader.load("a");
+    CompletableFuture<List<Person>> many = dataLoader.loadMany(ImmutableList.of("a", "b"));
+    dataLoader.dispatch();
+
+    assertThat(a.get().getUsername()).isEqualTo("a");
+    assertThat(many.get()).hasSize(2);
+    assertThat(requests).hasSize(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void buildShouldRejectMismatchedKeyFields() {
+    RpcBatchLoader.newBuilder()
+        .requestPrototype(ListPeopleRequest.getDefaultInstance())
+        .requestKeyField("usernames")
+        .responseDescriptor(ListPeopleResponse.getDescriptor())
+        .responseKeyField("people.birthday")
+        .rpc(this::listPeople)
+        .build();
+  }
+}
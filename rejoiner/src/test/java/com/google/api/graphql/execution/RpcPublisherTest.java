@@ -0,0 +1,180 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/** Unit tests for {@link RpcPublisher}. */
+@RunWith(JUnit4.class)
+public final class RpcPublisherTest {
+
+  private final FakeCall call = new FakeCall();
+  private final AtomicReference<StreamObserver<String>> responses = new AtomicReference<>();
+  private final RecordingSubscriber subscriber = new RecordingSubscriber();
+
+  @SuppressWarnings("unchecked")
+  private void subscribe() {
+    RpcPublisher.<String>create(
+            observer -> {
+              ((ClientResponseObserver<Object, String>) observer).beforeStart(call);
+              responses.set(observer);
+            })
+        .subscribe(subscriber);
+  }
+
+  @Test
+  public void subscribeShouldDisableAutomaticFlowControl() {
+    subscribe();
+    assertThat(call.autoFlowControlDisabled).isTrue();
+    assertThat(call.requested).isEqualTo(0);
+  }
+
+  @Test
+  public void requestShouldAccountForTheInitialRequest() {
+    subscribe();
+
+    subscriber.subscription.request(1);
+    assertThat(call.requested).isEqualTo(0);
+    subscriber.subscription.request(2);
+    assertThat(call.requested).isEqualTo(2);
+  }
+
+  @Test
+  public void responsesShouldBeDeliveredOnDemand() {
+    subscribe();
+    responses.get().onNext("first");
+    responses.get().onCompleted();
+    assertThat(subscriber.values).isEmpty();
+    assertThat(subscriber.completed).isFalse();
+
+    subscriber.subscription.request(1);
+
+    assertThat(subscriber.values).containsExactly("first");
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void errorsShouldBeDeliveredAfterResponses() {
+    subscribe();
+    subscriber.subscription.request(5);
+    RuntimeException error = new RuntimeException("failed");
+
+    responses.get().onNext("first");
+    responses.get().onError(error);
+
+    assertThat(subscriber.values).containsExactly("first");
+    assertThat(subscriber.error).isSameInstanceAs(error);
+  }
+
+  @Test
+  public void cancelShouldCancelTheCall() {
+    subscribe();
+    subscriber.subscription.cancel();
+    assertThat(call.cancelled).isTrue();
+  }
+
+  @Test
+  public void failedCallShouldSignalError() {
+    RuntimeException error = new RuntimeException("failed");
+    RpcPublisher.<String>create(
+            observer -> {
+              throw error;
+            })
+        .subscribe(subscriber);
+
+    assertThat(subscriber.subscription).isNotNull();
+    assertThat(subscriber.error).isSameInstanceAs(error);
+  }
+
+  private static final class RecordingSubscriber implements Subscriber<String> {
+    Subscription subscription;
+    final List<String> values = new ArrayList<>();
+    Throwable error;
+    boolean completed;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(String value) {
+      values.add(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+  private static final class FakeCall extends ClientCallStreamObserver<Object> {
+    boolean autoFlowControlDisabled;
+    int requested;
+    boolean cancelled;
+
+    @Override
+    public void cancel(String message, Throwable cause) {
+      cancelled = true;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {}
+
+    @Override
+    public void disableAutoInboundFlowControl() {
+      autoFlowControlDisabled = true;
+    }
+
+    @Override
+    public void request(int count) {
+      requested += count;
+    }
+
+    @Override
+    public void setMessageCompression(boolean enable) {}
+
+    @Override
+    public void onNext(Object value) {}
+
+    @Override
+    public void onError(Throwable t) {}
+
+    @Override
+    public void onCompleted() {}
+  }
+}
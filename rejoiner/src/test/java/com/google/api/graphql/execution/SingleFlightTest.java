@@ -0,0 +1,169 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.execution;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.common.collect.ImmutableList;
+import io.grpc.Context;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SingleFlight}. */
+@RunWith(JUnit4.class)
+public final class SingleFlightTest {
+
+  private static final Person REQUEST = Person.newBuilder().setUsername("ada").build();
+
+  private final SingleFlight<String> singleFlight = new SingleFlight<>();
+  private final AtomicInteger calls = new AtomicInteger();
+  private final CompletableFuture<String> backend = new CompletableFuture<>();
+
+  private CompletableFuture<String> call() {
+    calls.incrementAndGet();
+    return backend;
+  }
+
+  @Test
+  public void executeShouldShareInFlightCall() throws Exception {
+    CompletableFuture<String> first = singleFlight.execute(REQUEST, this::call);
+    CompletableFuture<String> second = singleFlight.execute(REQUEST, this::call);
+    assertThat(calls.get()).isEqualTo(1);
+    assertThat(singleFlight.inFlightCount()).isEqualTo(1);
+
+    backend.complete("response");
+    assertThat(first.get()).isEqualTo("response");
+    assertThat(second.get()).isEqualTo("response");
+    assertThat(singleFlight.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void executeShouldNotShareCallsOfDifferentRequests() throws Exception {
+    singleFlight.execute(REQUEST, this::call);
+    singleFlight.execute(REQUEST.toBuilder().setUsername("grace").build(), this::call);
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void executeShouldStartNewCallAfterCompletion() throws Exception {
+    backend.complete("response");
+    assertThat(singleFlight.execute(REQUEST, this::call).get()).isEqualTo("response");
+    assertThat(singleFlight.execute(REQUEST, this::call).get()).isEqualTo("response");
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void executeShouldPropagateFailure() throws Exception {
+    CompletableFuture<String> first = singleFlight.execute(REQUEST, this::call);
+    CompletableFuture<String> second = singleFlight.execute(REQUEST, this::call);
+    IllegalStateException failure = new IllegalStateException("unavailable");
+    backend.completeExceptionally(failure);
+    for (CompletableFuture<String> future : ImmutableList.of(first, second)) {
+      try {
+        future.get();
+        fail();
+      } catch (ExecutionException e) {
+        assertThat(e).hasCauseThat().isSameInstanceAs(failure);
+      }
+    }
+    assertThat(singleFlight.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void executeShouldNotShareCallThatFailedToStart() {
+    CompletableFuture<String> future =
+        singleFlight.execute(
+            REQUEST,
+            () -> {
+              throw new IllegalStateException("unavailable");
+            });
+    assertThat(future.isCompletedExceptionally()).isTrue();
+    assertThat(singleFlight.inFlightCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void cancelShouldNotAffectOtherCallers() throws Exception {
+    CompletableFuture<String> first = singleFlight.execute(REQUEST, this::call);
+    CompletableFuture<String> second = singleFlight.execute(REQUEST, this::call);
+    first.cancel(true);
+    backend.complete("response");
+    assertThat(second.get()).isEqualTo("response");
+    assertThat(backend.isCancelled()).isFalse();
+  }
+
+  @Test
+  public void cancelByAllCallersShouldCancelCall() {
+    CompletableFuture<String> first = singleFlight.execute(REQUEST, this::call);
+    CompletableFuture<String> second = singleFlight.execute(REQUEST, this::call);
+    first.cancel(true);
+    second.cancel(true);
+
+    assertThat(backend.isCancelled()).isTrue();
+    assertThat(singleFlight.inFlightCount()).isEqualTo(0);
+    singleFlight.execute(REQUEST, this::call);
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void callShouldNotRunInContextOfFirstCaller() throws Exception {
+    Context.CancellableContext request = Context.current().withCancellation();
+    AtomicReference<Context> callContext = new AtomicReference<>();
+    CompletableFuture<String> first =
+        request.call(
+            () ->
+                singleFlight.execute(
+                    REQUEST,
+                    () -> {
+                      callContext.set(Context.current());
+                      return call();
+                    }));
+    CompletableFuture<String> second = singleFlight.execute(REQUEST, this::call);
+    request.cancel(null);
+
+    assertThat(first.isCancelled()).isTrue();
+    assertThat(callContext.get().isCancelled()).isFalse();
+    backend.complete("response");
+    assertThat(second.get()).isEqualTo("response");
+  }
+
+  @Test
+  public void cancelOfAllCallerContextsShouldCancelCall() throws Exception {
+    Context.CancellableContext firstRequest = Context.current().withCancellation();
+    Context.CancellableContext secondRequest = Context.current().withCancellation();
+    AtomicReference<Context> callContext = new AtomicReference<>();
+    firstRequest.call(
+        () ->
+            singleFlight.execute(
+                REQUEST,
+                () -> {
+                  callContext.set(Context.current());
+                  return call();
+                }));
+    secondRequest.call(() -> singleFlight.execute(REQUEST, this::call));
+    firstRequest.cancel(null);
+    secondRequest.cancel(null);
+
+    assertThat(backend.isCancelled()).isTrue();
+    assertThat(callContext.get().isCancelled()).isTrue();
+    assertThat(singleFlight.inFlightCount()).isEqualTo(0);
+  }
+}
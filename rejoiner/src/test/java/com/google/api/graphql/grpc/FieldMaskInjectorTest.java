@@ -0,0 +1,129 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.graphql.rejoiner.GqlInputConverter;
+import com.google.api.graphql.rejoiner.PersonOuterClass.GetPersonRequest;
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+import graphql.execution.MergedField;
+import graphql.language.Field;
+import graphql.language.SelectionSet;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link FieldMaskInjector}. */
+@RunWith(JUnit4.class)
+public final class FieldMaskInjectorTest {
+
+  private static final DataFetchingEnvironment ENVIRONMENT =
+      DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+          .mergedField(
+              MergedField.newMergedField()
+                  .addField(
+                      new Field(
+                          "getPerson",
+                          new SelectionSet(
+                              ImmutableList.of(
+                                  new Field("username"),
+                                  new Field(
+                                      "birthday",
+                                      new SelectionSet(ImmutableList.of(new Field("year"))))))))
+                  .build())
+          .build();
+
+  private static final FieldMaskInjector INJECTOR =
+      FieldMaskInjector.create(
+          GetPersonRequest.getDescriptor(), "read_mask", Person.getDescriptor());
+
+  @Test
+  public void hasFieldMaskShouldOnlyMatchFieldMaskFields() {
+    assertThat(FieldMaskInjector.hasFieldMask(GetPersonRequest.getDescriptor(), "read_mask"))
+        .isTrue();
+    assertThat(FieldMaskInjector.hasFieldMask(GetPersonRequest.getDescriptor(), "username"))
+        .isFalse();
+    assertThat(FieldMaskInjector.hasFieldMask(GetPersonRequest.getDescriptor(), "missing"))
+        .isFalse();
+  }
+
+  @Test
+  public void createShouldRejectMissingField() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            FieldMaskInjector.create(
+                GetPersonRequest.getDescriptor(), "update_mask", Person.getDescriptor()));
+  }
+
+  @Test
+  public void injectShouldSetFieldMaskFromSelection() {
+    assertThat(INJECTOR.inject(GetPersonRequest.getDefaultInstance(), ENVIRONMENT))
+        .isEqualTo(
+            GetPersonRequest.newBuilder()
+                .setReadMask(
+                    FieldMask.newBuilder().addPaths("username").addPaths("birthday.year"))
+                .build());
+  }
+
+  @Test
+  public void injectShouldKeepExistingFieldMask() {
+    GetPersonRequest request =
+        GetPersonRequest.newBuilder()
+            .setReadMask(FieldMask.newBuilder().addPaths("first_name"))
+            .build();
+    assertThat(INJECTOR.inject(request, ENVIRONMENT)).isEqualTo(request);
+  }
+
+  @Test
+  public void injectShouldKeepFieldMaskFromArguments() {
+    Message request =
+        GqlInputConverter.newBuilder()
+            .add(GetPersonRequest.getDescriptor().getFile())
+            .build()
+            .createProtoBuf(
+                GetPersonRequest.getDescriptor(),
+                GetPersonRequest.newBuilder(),
+                ImmutableMap.of(
+                    "username",
+                    "ada",
+                    "readMask",
+                    ImmutableMap.of("paths", ImmutableList.of("first_name"))));
+    assertThat(INJECTOR.inject(request, ENVIRONMENT))
+        .isEqualTo(
+            GetPersonRequest.newBuilder()
+                .setUsername("ada")
+                .setReadMask(FieldMask.newBuilder().addPaths("first_name"))
+                .build());
+  }
+
+  @Test
+  public void injectShouldNotSetEmptyFieldMask() {
+    assertThat(
+            INJECTOR.inject(
+                GetPersonRequest.getDefaultInstance(),
+                DataFetchingEnvironmentImpl.newDataFetchingEnvironment().build()))
+        .isEqualToDefaultInstance();
+  }
+}
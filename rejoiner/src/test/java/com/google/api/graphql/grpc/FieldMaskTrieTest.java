@@ -0,0 +1,93 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.protobuf.FieldMask;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link FieldMaskTrie}. */
+@RunWith(JUnit4.class)
+public final class FieldMaskTrieTest {
+
+  @Test
+  public void pathsShouldBeDeduplicatedAndOrderedByFieldNumber() {
+    FieldMaskTrie trie =
+        FieldMaskTrie.newBuilder(Person.getDescriptor())
+            .addPath("first_name")
+            .addPath("birthday.day")
+            .addPath("username")
+            .addPath("birthday.month")
+            .addPath("birthday.day")
+            .build();
+    assertThat(trie.paths())
+        .containsExactly("username", "birthday.month", "birthday.day", "first_name")
+        .inOrder();
+  }
+
+  @Test
+  public void wholeFieldShouldSubsumeSubFields() {
+    FieldMaskTrie trie =
+        FieldMaskTrie.newBuilder(Person.getDescriptor())
+            .addPath("birthday.day")
+            .addPath("birthday")
+            .build();
+    assertThat(trie.paths()).containsExactly("birthday");
+  }
+
+  @Test
+  public void wildcardShouldSubsumeSubFields() {
+    FieldMaskTrie trie =
+        FieldMaskTrie.newBuilder(Person.getDescriptor())
+            .addPath("birthday.day")
+            .addPath("birthday.*")
+            .build();
+    assertThat(trie.paths()).containsExactly("birthday.*");
+  }
+
+  @Test
+  public void unknownPathsShouldBeIgnored() {
+    assertThat(
+            FieldMaskTrie.newBuilder(Person.getDescriptor())
+                .addPath("unknown")
+                .addPath("birthday.unknown")
+                .build()
+                .isEmpty())
+        .isTrue();
+  }
+
+  @Test
+  public void mergedTriesShouldEqualTriesWithTheSamePaths() {
+    FieldMaskTrie first =
+        FieldMaskTrie.fromFieldMask(
+            Person.getDescriptor(),
+            FieldMask.newBuilder().addPaths("username").addPaths("birthday.year").build());
+    FieldMaskTrie second =
+        FieldMaskTrie.fromFieldMask(
+            Person.getDescriptor(), FieldMask.newBuilder().addPaths("birthday.year").build());
+    FieldMaskTrie merged =
+        FieldMaskTrie.newBuilder(Person.getDescriptor()).merge(second).merge(first).build();
+
+    assertThat(merged).isEqualTo(first);
+    assertThat(merged.hashCode()).isEqualTo(first.hashCode());
+    assertThat(merged.toFieldMask().getPathsList())
+        .containsExactly("username", "birthday.year")
+        .inOrder();
+  }
+}
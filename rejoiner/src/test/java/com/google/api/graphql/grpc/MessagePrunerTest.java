@@ -0,0 +1,80 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
+
+import com.google.api.graphql.rejoiner.PersonOuterClass.Birthday;
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.protobuf.FieldMask;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MessagePruner}. */
+@RunWith(JUnit4.class)
+public final class MessagePrunerTest {
+
+  private static final Person PERSON =
+      Person.newBuilder()
+          .setUsername("alice")
+          .setFirstName("Alice")
+          .setBirthday(Birthday.newBuilder().setYear(1990).setMonth(5).setDay(17))
+          .build();
+
+  @Test
+  public void pruneShouldKeepTopLevelFields() {
+    assertThat(prune(FieldMask.newBuilder().addPaths("username").build()))
+        .isEqualTo(Person.newBuilder().setUsername("alice").build());
+  }
+
+  @Test
+  public void pruneShouldKeepNestedFields() {
+    assertThat(
+            prune(
+                FieldMask.newBuilder().addPaths("birthday.month").addPaths("first_name").build()))
+        .isEqualTo(
+            Person.newBuilder()
+                .setFirstName("Alice")
+                .setBirthday(Birthday.newBuilder().setMonth(5))
+                .build());
+  }
+
+  @Test
+  public void pruneShouldKeepWholeFieldForWildcards() {
+    assertThat(
+            prune(FieldMask.newBuilder().addPaths("birthday.*").addPaths("birthday.day").build()))
+        .isEqualTo(Person.newBuilder().setBirthday(PERSON.getBirthday()).build());
+  }
+
+  @Test
+  public void pruneShouldIgnoreUnknownFields() {
+    assertThat(prune(FieldMask.newBuilder().addPaths("unknown").build()))
+        .isEqualToDefaultInstance();
+  }
+
+  @Test
+  public void forFieldMaskShouldReuseCompiledPruners() {
+    FieldMask fieldMask = FieldMask.newBuilder().addPaths("username").build();
+    assertThat(MessagePruner.forFieldMask(Person.getDescriptor(), fieldMask))
+        .isSameInstanceAs(
+            MessagePruner.forFieldMask(Person.getDescriptor(), fieldMask.toBuilder().build()));
+  }
+
+  private static Person prune(FieldMask fieldMask) {
+    return MessagePruner.forFieldMask(Person.getDescriptor(), fieldMask).prune(PERSON);
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertThrows;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import graphql.Scalars;
+import graphql.schema.GraphQLArgument;
+import graphql.schema.GraphQLEnumType;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLNonNull;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link OperationToProto}. */
+@RunWith(JUnit4.class)
+public final class OperationToProtoTest {
+
+  private static final GraphQLEnumType GENRE =
+      GraphQLEnumType.newEnum().name("Genre").value("FICTION").value("HISTORY").build();
+
+  private static final GraphQLObjectType AUTHOR =
+      GraphQLObjectType.newObject()
+          .name("Author")
+          .field(
+              GraphQLFieldDefinition.newFieldDefinition().name("name").type(Scalars.GraphQLString))
+          .build();
+
+  private static final GraphQLObjectType BOOK =
+      GraphQLObjectType.newObject()
+          .name("Book")
+          .field(GraphQLFieldDefinition.newFieldDefinition().name("id").type(Scalars.GraphQLID))
+          .field(
+              GraphQLFieldDefinition.newFieldDefinition().name("title").type(Scalars.GraphQLString))
+          .field(GraphQLFieldDefinition.newFieldDefinition().name("pages").type(Scalars.GraphQLInt))
+          .field(
+              GraphQLFieldDefinition.newFieldDefinition()
+                  .name("genres")
+                  .type(GraphQLList.list(GENRE)))
+          .field(GraphQLFieldDefinition.newFieldDefinition().name("author").type(AUTHOR))
+          .build();
+
+  private static final GraphQLSchema SCHEMA =
+      GraphQLSchema.newSchema()
+          .query(
+              GraphQLObjectType.newObject()
+                  .name("Query")
+                  .field(
+                      GraphQLFieldDefinition.newFieldDefinition()
+                          .name("book")
+                          .argument(
+                              GraphQLArgument.newArgument()
+                                  .name("id")
+                                  .type(GraphQLNonNull.nonNull(Scalars.GraphQLID)))
+                          .type(BOOK)))
+          .build();
+
+  private static final String QUERY_V1 =
+      "query GetBook($id: ID!) { book(id: $id) { id title genres author { name } } }";
+
+  private static final String QUERY_V2 =
+      "query GetBook($id: ID!) { book(id: $id) { ...BookFields pages } }\n"
+          + "fragment BookFields on Book { title writer: author { name } }";
+
+  @Test
+  public void responseShouldContainSelectedFields() {
+    FileDescriptor file =
+        OperationToProto.toFileDescriptor(
+            OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V1, "GetBook"));
+
+    Descriptor book = file.findMessageTypeByName("GetBookResponse").findNestedTypeByName("Book");
+    assertThat(book.getFields().stream().map(FieldDescriptor::getJsonName).collect(toList()))
+        .containsExactly("id", "title", "genres", "author")
+        .inOrder();
+    assertThat(book.findFieldByName("genres").isRepeated()).isTrue();
+    assertThat(book.findFieldByName("genres").getEnumType().getFullName())
+        .isEqualTo("google.api.graphql.rejoiner.operations.GetBook.Genre.Enum");
+    assertThat(book.findFieldByName("author").getMessageType().getFields()).hasSize(1);
+  }
+
+  @Test
+  public void requestShouldContainVariables() {
+    FileDescriptor file =
+        OperationToProto.toFileDescriptor(
+            OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V1, "GetBook"));
+
+    Descriptor request = file.findMessageTypeByName("GetBookRequest");
+    assertThat(request.getFields()).hasSize(1);
+    assertThat(request.findFieldByName("id").getType()).isEqualTo(FieldDescriptor.Type.STRING);
+  }
+
+  @Test
+  public void fieldNumbersShouldBeStableAcrossVersions() {
+    FileDescriptorProto v1 = OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V1, "GetBook");
+    FileDescriptorProto v2 =
+        OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V2, "GetBook", v1);
+
+    Descriptor book =
+        OperationToProto.toFileDescriptor(v2)
+            .findMessageTypeByName("GetBookResponse")
+            .findNestedTypeByName("Book");
+    assertThat(book.findFieldByName("title").getNumber()).isEqualTo(2);
+    assertThat(book.findFieldByName("writer").getNumber()).isEqualTo(5);
+    assertThat(book.findFieldByName("pages").getNumber()).isEqualTo(6);
+
+    DescriptorProto bookProto = v2.getMessageType(1).getNestedType(0);
+    assertThat(bookProto.getReservedNameList()).containsExactly("id", "genres", "author");
+    assertThat(bookProto.getReservedRangeCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void fieldsSelectedAgainShouldNotBeReservedByName() {
+    FileDescriptorProto v1 = OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V1, "GetBook");
+    FileDescriptorProto v2 =
+        OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V2, "GetBook", v1);
+    FileDescriptorProto v3 =
+        OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V1, "GetBook", v2);
+
+    Descriptor book =
+        OperationToProto.toFileDescriptor(v3)
+            .findMessageTypeByName("GetBookResponse")
+            .findNestedTypeByName("Book");
+    assertThat(book.findFieldByName("title").getNumber()).isEqualTo(2);
+    assertThat(book.findFieldByName("id").getNumber()).isEqualTo(7);
+    assertThat(book.findFieldByName("genres").getNumber()).isEqualTo(8);
+    assertThat(book.findFieldByName("author").getNumber()).isEqualTo(9);
+
+    DescriptorProto bookProto = v3.getMessageType(1).getNestedType(0);
+    assertThat(bookProto.getReservedNameList()).containsExactly("writer", "pages");
+    assertThat(bookProto.getReservedRangeCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void fieldsWhoseTypeChangedShouldBeRenumbered() {
+    FileDescriptorProto v2 = OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V2, "GetBook");
+    FileDescriptorProto v3 =
+        OperationToProto.toFileDescriptorProto(
+            SCHEMA,
+            "query GetBook($id: ID!) { book(id: $id) { title pages: id } }",
+            "GetBook",
+            v2);
+
+    Descriptor book =
+        OperationToProto.toFileDescriptor(v3)
+            .findMessageTypeByName("GetBookResponse")
+            .findNestedTypeByName("Book");
+    assertThat(book.findFieldByName("pages").getType()).isEqualTo(FieldDescriptor.Type.STRING);
+    assertThat(book.findFieldByName("pages").getNumber()).isEqualTo(4);
+
+    DescriptorProto bookProto = v3.getMessageType(1).getNestedType(0);
+    assertThat(bookProto.getReservedNameList()).containsExactly("writer");
+    assertThat(bookProto.getReservedRangeList())
+        .contains(
+            DescriptorProto.ReservedRange.newBuilder()
+                .setStart(3)
+                .setEnd(4)
+                .build());
+  }
+
+  @Test
+  public void unknownOperationShouldFail() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> OperationToProto.toFileDescriptorProto(SCHEMA, QUERY_V1, "GetAuthor"));
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.grpc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.graphql.rejoiner.PersonOuterClass.Person;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import graphql.execution.MergedField;
+import graphql.language.Field;
+import graphql.language.SelectionSet;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ResponseProjection}. */
+@RunWith(JUnit4.class)
+public final class ResponseProjectionTest {
+
+  private static final ResponseProjection PROJECTION =
+      ResponseProjection.create(Person.getDescriptor());
+
+  private static final DataFetchingEnvironment ENVIRONMENT =
+      DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+          .mergedField(
+              MergedField.newMergedField()
+                  .addField(
+                      new Field(
+                          "person", new SelectionSet(ImmutableList.of(new Field("username")))))
+                  .build())
+          .build();
+
+  @Test
+  public void projectShouldPruneCompletionStage() throws Exception {
+    CompletableFuture<Person> response = new CompletableFuture<>();
+    CompletableFuture<?> projected =
+        (CompletableFuture<?>) PROJECTION.project(response, ENVIRONMENT);
+    response.complete(Person.newBuilder().setUsername("ada").setFirstName("Ada").build());
+
+    assertThat(projected.get()).isEqualTo(Person.newBuilder().setUsername("ada").build());
+  }
+
+  @Test
+  public void projectShouldPropagateCancellationToCompletionStage() {
+    CompletableFuture<Person> response = new CompletableFuture<>();
+    CompletableFuture<?> projected =
+        (CompletableFuture<?>) PROJECTION.project(response, ENVIRONMENT);
+    projected.cancel(true);
+
+    assertThat(response.isCancelled()).isTrue();
+  }
+
+  @Test
+  public void projectShouldPropagateCancellationToListenableFuture() {
+    SettableFuture<Person> response = SettableFuture.create();
+    ListenableFuture<?> projected = (ListenableFuture<?>) PROJECTION.project(response, ENVIRONMENT);
+    projected.cancel(true);
+
+    assertThat(response.isCancelled()).isTrue();
+  }
+}
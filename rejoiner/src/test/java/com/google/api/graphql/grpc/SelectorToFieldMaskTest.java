@@ -17,12 +17,19 @@ package com.google.api.graphql.grpc;
 import static com.google.common.truth.extensions.proto.ProtoTruth.assertThat;
 
 import com.google.api.graphql.rejoiner.PersonOuterClass;
+import com.google.api.graphql.rejoiner.SchemaBundle;
+import com.google.api.graphql.rejoiner.SourceFieldsDataFetcher;
+import com.google.api.graphql.rejoiner.Type;
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.FieldMask;
+import graphql.Scalars;
 import graphql.execution.MergedField;
 import graphql.language.Field;
+import graphql.language.InlineFragment;
 import graphql.language.SelectionSet;
+import graphql.language.TypeName;
 import graphql.schema.DataFetchingEnvironmentImpl;
+import graphql.schema.GraphQLFieldDefinition;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -126,7 +133,7 @@ public final class SelectorToFieldMaskTest {
                    PersonOuterClass.Person.getDescriptor())
                 .build())
         .isEqualTo(
-            FieldMask.newBuilder().addPaths("birthday.day").addPaths("birthday.month").build());
+            FieldMask.newBuilder().addPaths("birthday.month").addPaths("birthday.day").build());
   }
 
   @Test
@@ -152,6 +159,35 @@ public final class SelectorToFieldMaskTest {
         .isEqualTo(FieldMask.newBuilder().addPaths("birthday.*").build());
   }
 
+  @Test
+  public void getFieldMaskForProtoShouldIncludeFieldsOfInlineFragments() {
+    assertThat(
+            SelectorToFieldMask.getFieldMaskForProto(
+                    DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+                        .mergedField(
+                            MergedField.newMergedField()
+                                .addField(
+                                    new Field(
+                                        "top_level_field",
+                                        new SelectionSet(
+                                            ImmutableList.of(
+                                                new Field("username"),
+                                                new InlineFragment(
+                                                    new TypeName("Person"),
+                                                    new SelectionSet(
+                                                        ImmutableList.of(
+                                                            new Field(
+                                                                "birthday",
+                                                                new SelectionSet(
+                                                                    ImmutableList.of(
+                                                                        new Field("year")))))))))))
+                                .build())
+                        .build(),
+                    PersonOuterClass.Person.getDescriptor())
+                .build())
+        .isEqualTo(FieldMask.newBuilder().addPaths("username").addPaths("birthday.year").build());
+  }
+
   @Test
   public void getFieldMaskForChildProto() {
     assertThat(
@@ -180,4 +216,46 @@ public final class SelectorToFieldMaskTest {
                 .build())
         .isEqualTo(FieldMask.newBuilder().addPaths("birthday.month").build());
   }
+
+  @Test
+  public void getFieldMaskForProtoShouldIncludeSourceFieldsOfAddedFields() {
+    SchemaBundle.Builder schemaBundle = SchemaBundle.builder();
+    schemaBundle.fileDescriptorsBuilder().add(PersonOuterClass.getDescriptor());
+    schemaBundle
+        .queryFieldsBuilder()
+        .add(
+            GraphQLFieldDefinition.newFieldDefinition()
+                .name("version")
+                .type(Scalars.GraphQLString)
+                .build());
+    schemaBundle
+        .modificationsBuilder()
+        .add(
+            Type.find(PersonOuterClass.Person.getDescriptor())
+                .addField(
+                    GraphQLFieldDefinition.newFieldDefinition()
+                        .name("greeting")
+                        .type(Scalars.GraphQLString)
+                        .dataFetcher(
+                            SourceFieldsDataFetcher.create(environment -> "Hi", "first_name"))
+                        .build()));
+
+    assertThat(
+            SelectorToFieldMask.getFieldMaskForProto(
+                    DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+                        .graphQLSchema(schemaBundle.build().toSchema())
+                        .mergedField(
+                            MergedField.newMergedField()
+                                .addField(
+                                    new Field(
+                                        "top_level_field",
+                                        new SelectionSet(
+                                            ImmutableList.of(
+                                                new Field("username"), new Field("greeting")))))
+                                .build())
+                        .build(),
+                    PersonOuterClass.Person.getDescriptor())
+                .build())
+        .isEqualTo(FieldMask.newBuilder().addPaths("username").addPaths("first_name").build());
+  }
 }
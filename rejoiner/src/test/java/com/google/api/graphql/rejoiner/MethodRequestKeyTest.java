@@ -0,0 +1,115 @@
+// Copyright 2017 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.graphql.rejoiner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.api.graphql.rejoiner.TestProto.Proto1;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.lang.reflect.Method;
+import java.util.Map;
+import org.dataloader.DataLoader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MethodRequestKey}. */
+@RunWith(JUnit4.class)
+public final class MethodRequestKeyTest {
+
+  @SuppressWarnings("unused")
+  private static final class Methods {
+    Proto1 get(Proto1 request, @Arg("name") String name, Object client) {
+      return request;
+    }
+
+    Proto1 find(@Arg("filter") Object filter) {
+      return Proto1.getDefaultInstance();
+    }
+
+    Proto1 load(Proto1 request, @Loader("proto1") DataLoader<String, Proto1> loader) {
+      return request;
+    }
+  }
+
+  private static Method method(String name) {
+    for (Method method : Methods.class.getDeclaredMethods()) {
+      if (method.getName().equals(name)) {
+        return method;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  @Test
+  public void ofShouldNotDependOnTheOrderOfMapEntries() {
+    MethodRequestKey key = MethodRequestKey.forMethod(method("get"));
+    Object client = new Object();
+    Proto1 first = Proto1.newBuilder().putMapField("a", "1").putMapField("b", "2").build();
+    Proto1 second = Proto1.newBuilder().putMapField("b", "2").putMapField("a", "1").build();
+
+    assertThat(key.of(new Object[] {first, "name", client}))
+        .isEqualTo(key.of(new Object[] {second, "name", client}));
+  }
+
+  @Test
+  public void ofShouldCompareArguments() {
+    MethodRequestKey key = MethodRequestKey.forMethod(method("get"));
+    Object client = new Object();
+    Proto1 request = Proto1.getDefaultInstance();
+
+    assertThat(key.of(new Object[] {request, "ada", client}))
+        .isNotEqualTo(key.of(new Object[] {request, "grace", client}));
+  }
+
+  @Test
+  public void ofShouldNotConfuseArgumentsWithEqualStrings() {
+    MethodRequestKey key = MethodRequestKey.forMethod(method("find"));
+    Map<String, Object> first = ImmutableMap.of("a", "1, b=2");
+    Map<String, Object> second = ImmutableMap.of("a", 1, "b", 2);
+    assertThat(first.toString()).isEqualTo(second.toString());
+
+    assertThat(key.of(new Object[] {first})).isNotEqualTo(key.of(new Object[] {second}));
+    assertThat(key.of(new Object[] {ImmutableList.of("1")}))
+        .isNotEqualTo(key.of(new Object[] {ImmutableList.of(1)}));
+  }
+
+  @Test
+  public void ofShouldNotDependOnTheOrderOfArgumentFields() {
+    MethodRequestKey key = MethodRequestKey.forMethod(method("find"));
+
+    assertThat(key.of(new Object[] {ImmutableMap.of("a", 1, "b", ImmutableList.of("x"))}))
+        .isEqualTo(key.of(new Object[] {ImmutableMap.of("b", ImmutableList.of("x"), "a", 1)}));
+  }
+
+  @Test
+  public void ofShouldCompareInjectedValuesByIdentity() {
+    MethodRequestKey key = MethodRequestKey.forMethod(method("get"));
+    Object client = new Object();
+    Proto1 request = Proto1.getDefaultInstance();
+
+    assertThat(key.of(new Object[] {request, "ada", client}))
+        .isEqualTo(key.of(new Object[] {request, "ada", client}));
+    assertThat(key.of(new Object[] {request, "ada", client}))
+        .isNotEqualTo(key.of(new Object[] {request, "ada", new Object()}));
+  }
+
+  @Test
+  public void forMethodShouldRejectDataLoader() {
+    assertThrows(IllegalArgumentException.class, () -> MethodRequestKey.forMethod(method("load")));
+  }
+}